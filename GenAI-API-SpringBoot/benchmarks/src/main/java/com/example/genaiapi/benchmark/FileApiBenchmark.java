@@ -0,0 +1,113 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * The same large image analyzed with many prompts, sent inline every time
+ * versus uploaded once through the File API and referenced by URI.
+ *
+ * The stub checks fileData references like the real API, and halfway through
+ * each run all uploaded files are deleted, so the "stale reference, upload
+ * again" path is exercised as well. Reported per mode: mean and p99 latency,
+ * request body bytes that reached the upstream, and the number of uploads.
+ * Image preprocessing is switched off so the payload size stays fixed.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.FileApiBenchmark [imageMb] [prompts]
+ */
+public class FileApiBenchmark {
+
+    private static final String BOUNDARY = "----file-api-benchmark";
+
+    public static void main(String[] args) throws Exception {
+        int imageMb = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int prompts = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        byte[] image = new byte[imageMb * 1024 * 1024];
+        new Random(7).nextBytes(image);
+
+        try (GeminiStubServer stub = GeminiStubServer.start()
+                .withLatency(Duration.ofMillis(100))
+                .withFileReferenceChecking(true)) {
+            System.out.printf("%-8s %10s %10s %16s %8s%n", "mode", "mean ms", "p99 ms", "upstream MB", "uploads");
+            for (boolean files : new boolean[] { false, true }) {
+                stub.resetCounters();
+                stub.deleteFiles();
+                List<Long> latencies = run(stub, files, image, prompts);
+                latencies.sort(null);
+                double mean = latencies.stream().mapToLong(Long::longValue).average().orElse(Double.NaN);
+                System.out.printf("%-8s %10.1f %10.1f %16.1f %8d%n", files ? "file" : "inline",
+                        mean / 1_000_000, percentile(latencies, 0.99), stub.bytesReceived() / (1024.0 * 1024),
+                        stub.uploadCount());
+            }
+        }
+    }
+
+    private static List<Long> run(GeminiStubServer stub, boolean files, byte[] image, int prompts)
+            throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "gemini.api.base-url=" + stub.baseUrl(),
+                        "gemini.api.upload-base-url=" + stub.uploadBaseUrl(),
+                        "gemini.api.key=benchmark",
+                        "gemini.files.enabled=" + files,
+                        "gemini.image-preprocessing.enabled=false",
+                        "spring.servlet.multipart.max-file-size=64MB",
+                        "spring.servlet.multipart.max-request-size=64MB")
+                .run()) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            URI uri = URI.create("http://127.0.0.1:" + port + "/api/gemini/analyze-image");
+            HttpClient client = HttpClient.newHttpClient();
+            List<Long> latencies = new ArrayList<>(prompts);
+            for (int i = 0; i < prompts; i++) {
+                if (i == prompts / 2) {
+                    stub.deleteFiles();
+                }
+                HttpRequest request = HttpRequest.newBuilder(uri)
+                        .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(multipart("Question " + i, image)))
+                        .build();
+                long start = System.nanoTime();
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    latencies.add(System.nanoTime() - start);
+                }
+            }
+            return latencies;
+        }
+    }
+
+    private static byte[] multipart(String prompt, byte[] image) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(image.length + 512);
+        String promptPart = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"prompt\"\r\n\r\n"
+                + prompt + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"image\"; filename=\"photo.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n";
+        body.writeBytes(promptPart.getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(image);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        return sorted.get(Math.max(0, (int) Math.ceil(p * sorted.size()) - 1)) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.service.GeminiRequestBuilder;
+import com.example.genaiapi.service.RequestTemplates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+/*
+ * Heap allocated per image request, from the uploaded file to the bytes on the
+ * wire, for the old and the streaming /api/gemini/analyze-image paths.
+ *
+ * - "buffered": getBytes() + Base64.encodeToString() into InlineData.data,
+ * then Jackson writes the request (what GeminiController used to do)
+ * - "streamed": InlineData carries the file as an InputStreamSource and
+ * InlineDataSerializer base64-encodes it while the request is written
+ *
+ * The image is a temp file, like a multipart upload spooled to disk by Tomcat,
+ * and the JSON goes to a null OutputStream, like RestTemplate streaming the
+ * body to the socket. Allocation is measured with the per-thread counter of
+ * com.sun.management.ThreadMXBean, so GC activity does not blur the numbers.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.ImageIngestionBenchmark [iterations]
+ */
+public class ImageIngestionBenchmark {
+
+    private static final int[] SIZES_MB = { 1, 5, 20 };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        ObjectMapper objectMapper = new ObjectMapper();
+        GeminiRequestBuilder requestBuilder = new GeminiRequestBuilder(new RequestTemplates(objectMapper));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        System.out.printf("%8s %10s %18s %12s%n", "size MB", "path", "allocated MB/req", "ms/req");
+        for (int sizeMb : SIZES_MB) {
+            Path image = Files.createTempFile("image-ingestion", ".jpg");
+            try {
+                byte[] random = new byte[sizeMb * 1024 * 1024];
+                new Random(sizeMb).nextBytes(random);
+                Files.write(image, random);
+                random = null;
+
+                for (String path : new String[] { "buffered", "streamed" }) {
+                    // Warm up, then measure
+                    for (int i = 0; i < 3; i++) {
+                        send(objectMapper, requestBuilder, image, path);
+                    }
+                    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        send(objectMapper, requestBuilder, image, path);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                    System.out.printf("%8d %10s %18.2f %12.2f%n", sizeMb, path,
+                            allocated / (double) iterations / (1024 * 1024),
+                            elapsed / (double) iterations / 1_000_000);
+                }
+            } finally {
+                Files.deleteIfExists(image);
+            }
+        }
+    }
+
+    private static void send(ObjectMapper objectMapper, GeminiRequestBuilder requestBuilder, Path image,
+            String path) throws Exception {
+        GenerateContentRequest request;
+        if ("buffered".equals(path)) {
+            byte[] imageBytes = Files.readAllBytes(image);
+            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+            request = requestBuilder.analyzeImage("Describe this image", base64Image, "image/jpeg");
+        } else {
+            request = requestBuilder.analyzeImage("Describe this image", new FileSystemResource(image),
+                    Files.size(image), "image/jpeg");
+        }
+        objectMapper.writeValue(OutputStream.nullOutputStream(), request);
+    }
+}
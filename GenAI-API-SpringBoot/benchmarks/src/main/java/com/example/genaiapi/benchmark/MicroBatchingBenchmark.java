@@ -0,0 +1,122 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Throughput of /api/gemini/generate-text against the micro-batching window.
+ *
+ * The stub charges a fixed cost per upstream call plus a small cost per prompt,
+ * and the application is limited to a handful of upstream connections, so
+ * the connection count is the bottleneck just like a quota would be. Each run
+ * drives CLIENTS concurrent clients with distinct prompts (so neither the
+ * caches nor request coalescing kick in) and reports requests/s, p99 latency
+ * and the average number of prompts carried per upstream call. Window 0 is
+ * batching disabled.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.MicroBatchingBenchmark [stepSeconds]
+ */
+public class MicroBatchingBenchmark {
+
+    private static final int[] WINDOWS_MS = { 0, 2, 5, 10, 20, 50 };
+
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private static final int CLIENTS = 256;
+
+    private static final int UPSTREAM_CONNECTIONS = 8;
+
+    public static void main(String[] args) throws Exception {
+        Duration step = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 10);
+        try (GeminiStubServer stub = GeminiStubServer.start()
+                .withLatency(Duration.ofMillis(100))
+                .withPerItemLatency(Duration.ofMillis(2))) {
+            System.out.printf("%10s %12s %12s %12s %14s%n", "window ms", "req/s", "p50 ms", "p99 ms",
+                    "prompts/call");
+            for (int windowMs : WINDOWS_MS) {
+                stub.resetCounters();
+                Result result = run(stub, windowMs, step);
+                double promptsPerCall = stub.requestCount() == 0 ? 0
+                        : (double) stub.itemCount() / stub.requestCount();
+                System.out.printf("%10d %12.1f %12.1f %12.1f %14.2f%n", windowMs, result.throughput,
+                        result.p50Millis, result.p99Millis, promptsPerCall);
+            }
+        }
+    }
+
+    private static Result run(GeminiStubServer stub, int windowMs, Duration step) throws Exception {
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "gemini.api.base-url=" + stub.baseUrl(),
+                        "gemini.api.key=benchmark",
+                        "gemini.virtual-threads.enabled=true",
+                        "gemini.http.max-total-connections=" + UPSTREAM_CONNECTIONS,
+                        "gemini.http.max-connections-per-route=" + UPSTREAM_CONNECTIONS,
+                        "gemini.upstream.max-concurrent-requests=" + UPSTREAM_CONNECTIONS,
+                        "gemini.batching.enabled=" + (windowMs > 0),
+                        "gemini.batching.url=" + stub.baseUrl() + "/models/{model}:batchGenerateContent",
+                        "gemini.batching.max-wait=" + windowMs + "ms",
+                        "gemini.batching.max-batch-size=" + MAX_BATCH_SIZE,
+                        "gemini.batching.max-in-flight-batches=" + UPSTREAM_CONNECTIONS)
+                .run()) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            URI uri = URI.create("http://127.0.0.1:" + port + "/api/gemini/generate-text");
+            HttpClient client = HttpClient.newHttpClient();
+            AtomicLong sequence = new AtomicLong();
+            long deadline = System.nanoTime() + step.toNanos();
+
+            List<Future<List<Long>>> workers = new ArrayList<>(CLIENTS);
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < CLIENTS; i++) {
+                    workers.add(clients.submit(() -> {
+                        List<Long> latencies = new ArrayList<>();
+                        while (System.nanoTime() < deadline) {
+                            String body = "{\"prompt\":\"prompt " + sequence.incrementAndGet() + "\"}";
+                            HttpRequest request = HttpRequest.newBuilder(uri)
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                                    .build();
+                            long start = System.nanoTime();
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() == 200) {
+                                latencies.add(System.nanoTime() - start);
+                            }
+                        }
+                        return latencies;
+                    }));
+                }
+            }
+            List<Long> all = new ArrayList<>();
+            for (Future<List<Long>> worker : workers) {
+                all.addAll(worker.get());
+            }
+            all.sort(null);
+            return new Result(all.size() / (double) step.toSeconds(), percentile(all, 0.50), percentile(all, 0.99));
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        return sorted.get(Math.max(0, (int) Math.ceil(p * sorted.size()) - 1)) / 1_000_000.0;
+    }
+
+    private record Result(double throughput, double p50Millis, double p99Millis) {
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.service.GeminiRequestBuilder;
+import com.example.genaiapi.service.RequestTemplates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Build + serialize cost of the fixed-schema requests, per call.
+ *
+ * "rebuilt" is what GeminiRequestBuilder did before request templates: nested
+ * Map.of schemas, FunctionDeclaration and Tool objects created for every call
+ * and the whole graph serialized by Jackson. "templated" goes through
+ * RequestTemplates, where only the prompt Content is built and serialized.
+ * Output goes to a null stream so only the JSON encoding is measured.
+ *
+ * The GC profiler reports gc.alloc.rate.norm, the bytes allocated per call.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.RequestTemplateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestTemplateBenchmark {
+
+    private static final String PROMPT = "List three easy weeknight pasta recipes";
+
+    private ObjectWriter writer;
+
+    private GeminiRequestBuilder requestBuilder;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        writer = objectMapper.writer();
+        requestBuilder = new GeminiRequestBuilder(new RequestTemplates(objectMapper));
+    }
+
+    @Benchmark
+    public void structuredJsonRebuilt() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), rebuiltStructuredJson(PROMPT));
+    }
+
+    @Benchmark
+    public void structuredJsonTemplated() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), requestBuilder.structuredJson(PROMPT));
+    }
+
+    @Benchmark
+    public void functionCallingRebuilt() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), rebuiltFunctionCalling(PROMPT));
+    }
+
+    @Benchmark
+    public void functionCallingTemplated() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), requestBuilder.functionCalling(PROMPT));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(RequestTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    private static GenerateContentRequest rebuiltStructuredJson(String prompt) {
+        GenerateContentRequest request = new GenerateContentRequest(List.of(userContent(prompt)));
+        Map<String, Object> schema = Map.of(
+                "type", "ARRAY",
+                "items", Map.of(
+                        "type", "OBJECT",
+                        "properties", Map.of(
+                                "recipeName", Map.of("type", "STRING"),
+                                "ingredients", Map.of(
+                                        "type", "ARRAY",
+                                        "items", Map.of("type", "STRING"))),
+                        "propertyOrdering", List.of("recipeName", "ingredients")));
+        GenerateContentRequest.GenerationConfig config = new GenerateContentRequest.GenerationConfig();
+        config.setResponseMimeType("application/json");
+        config.setResponseSchema(schema);
+        request.setGenerationConfig(config);
+        return request;
+    }
+
+    private static GenerateContentRequest rebuiltFunctionCalling(String prompt) {
+        GenerateContentRequest request = new GenerateContentRequest(List.of(userContent(prompt)));
+        Map<String, Object> functionParams = Map.of(
+                "type", "object",
+                "properties", Map.of(
+                        "location", Map.of(
+                                "type", "string",
+                                "description", "The city and state, e.g. San Francisco, CA"),
+                        "unit", Map.of(
+                                "type", "string",
+                                "enum", List.of("celsius", "fahrenheit"),
+                                "description", "Temperature unit")),
+                "required", List.of("location"));
+        GenerateContentRequest.FunctionDeclaration function = new GenerateContentRequest.FunctionDeclaration(
+                "get_current_weather", "Get the current weather in a given location", functionParams);
+        GenerateContentRequest.Tool tool = new GenerateContentRequest.Tool();
+        tool.setFunctionDeclarations(List.of(function));
+        request.setTools(List.of(tool));
+        return request;
+    }
+
+    private static GenerateContentRequest.Content userContent(String prompt) {
+        return new GenerateContentRequest.Content("user", List.of(new GenerateContentRequest.Part(prompt)));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+ * Success rate and tail latency of /api/gemini/generate-text under injected
+ * upstream faults, for each combination of resilience policies.
+ *
+ * For every fault scenario (503s, 429s with Retry-After, a slow tail, and a
+ * near-outage) the application is started once per policy set and driven by
+ * CLIENTS closed-loop clients with distinct prompts, so caching and coalescing
+ * stay out of the picture. "upstream/req" shows how much extra load retries
+ * and hedges put on the upstream for the latency they buy.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.ResilienceBenchmark [stepSeconds]
+ */
+public class ResilienceBenchmark {
+
+    private static final int CLIENTS = 64;
+
+    private record Scenario(String name, Consumer<GeminiStubServer> faults) {
+    }
+
+    private record Policy(String name, String... properties) {
+    }
+
+    private static final List<Scenario> SCENARIOS = List.of(
+            new Scenario("healthy", stub -> {
+            }),
+            new Scenario("5% 503", stub -> stub.withErrorRate(0.05)),
+            new Scenario("5% 429 (1s)", stub -> stub.withRateLimiting(0.05, Duration.ofSeconds(1))),
+            new Scenario("5% slow +2s", stub -> stub.withSlowTail(0.05, Duration.ofSeconds(2))),
+            new Scenario("80% 503", stub -> stub.withErrorRate(0.80)));
+
+    private static final List<Policy> POLICIES = List.of(
+            new Policy("none",
+                    "gemini.resilience.retry.enabled=false",
+                    "gemini.resilience.circuit-breaker.enabled=false"),
+            new Policy("retry",
+                    "gemini.resilience.circuit-breaker.enabled=false"),
+            new Policy("retry+hedge",
+                    "gemini.resilience.circuit-breaker.enabled=false",
+                    "gemini.resilience.hedging.enabled=true",
+                    "gemini.resilience.hedging.min-samples=50"),
+            new Policy("all",
+                    "gemini.resilience.hedging.enabled=true",
+                    "gemini.resilience.hedging.min-samples=50",
+                    "gemini.resilience.circuit-breaker.open-duration=2s"));
+
+    public static void main(String[] args) throws Exception {
+        Duration step = Duration.ofSeconds(args.length > 0 ? Long.parseLong(args[0]) : 10);
+        try (GeminiStubServer stub = GeminiStubServer.start().withLatency(Duration.ofMillis(100))) {
+            System.out.printf("%-14s %-12s %10s %10s %10s %10s %14s%n", "scenario", "policy", "success %",
+                    "p50 ms", "p99 ms", "p99.9 ms", "upstream/req");
+            for (Scenario scenario : SCENARIOS) {
+                stub.withErrorRate(0).withRateLimiting(0, Duration.ofSeconds(1)).withSlowTail(0, Duration.ZERO);
+                scenario.faults().accept(stub);
+                for (Policy policy : POLICIES) {
+                    stub.resetCounters();
+                    Result result = run(stub, policy, step);
+                    double upstreamPerRequest = result.requests == 0 ? 0
+                            : (double) stub.requestCount() / result.requests;
+                    System.out.printf("%-14s %-12s %10.2f %10.1f %10.1f %10.1f %14.2f%n", scenario.name(),
+                            policy.name(), 100.0 * result.successes / Math.max(1, result.requests),
+                            result.p50Millis, result.p99Millis, result.p999Millis, upstreamPerRequest);
+                }
+            }
+        }
+    }
+
+    private static Result run(GeminiStubServer stub, Policy policy, Duration step) throws Exception {
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0",
+                "gemini.api.base-url=" + stub.baseUrl(),
+                "gemini.api.key=benchmark",
+                "gemini.virtual-threads.enabled=true",
+                "gemini.resilience.retry.initial-backoff=50ms"));
+        properties.addAll(List.of(policy.properties()));
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                .properties(properties.toArray(String[]::new))
+                .run()) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            URI uri = URI.create("http://127.0.0.1:" + port + "/api/gemini/generate-text");
+            HttpClient client = HttpClient.newHttpClient();
+            AtomicLong sequence = new AtomicLong();
+            LongAdder requests = new LongAdder();
+            long deadline = System.nanoTime() + step.toNanos();
+
+            List<Future<List<Long>>> workers = new ArrayList<>(CLIENTS);
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < CLIENTS; i++) {
+                    workers.add(clients.submit(() -> {
+                        List<Long> latencies = new ArrayList<>();
+                        while (System.nanoTime() < deadline) {
+                            String body = "{\"prompt\":\"prompt " + sequence.incrementAndGet() + "\"}";
+                            HttpRequest request = HttpRequest.newBuilder(uri)
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                                    .build();
+                            long start = System.nanoTime();
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            requests.increment();
+                            if (response.statusCode() == 200) {
+                                latencies.add(System.nanoTime() - start);
+                            }
+                        }
+                        return latencies;
+                    }));
+                }
+            }
+            List<Long> all = new ArrayList<>();
+            for (Future<List<Long>> worker : workers) {
+                all.addAll(worker.get());
+            }
+            all.sort(null);
+            return new Result(requests.sum(), all.size(), percentile(all, 0.50), percentile(all, 0.99),
+                    percentile(all, 0.999));
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return Double.NaN;
+        }
+        return sorted.get(Math.max(0, (int) Math.ceil(p * sorted.size()) - 1)) / 1_000_000.0;
+    }
+
+    private record Result(long requests, long successes, double p50Millis, double p99Millis, double p999Millis) {
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.genaiapi.benchmark;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Compares the blocking request path on platform threads (the default Tomcat
+ * pool) with the opt-in virtual-thread mode (gemini.virtual-threads.enabled).
+ *
+ * For each mode the application is started against GeminiStubServer, then
+ * POST /api/gemini/generate-text is driven by a closed loop of N concurrent
+ * clients for a fixed window, with N doubling each step. A step is
+ * "sustainable" when it has no errors and its p99 stays within
+ * SLO_FACTOR x the stub latency; the report lists throughput and p99 per step
+ * and the highest sustainable N per mode.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.VirtualThreadBenchmark [stubLatencyMs] [stepSeconds]
+ */
+public class VirtualThreadBenchmark {
+
+    private static final int[] CONCURRENCY_STEPS = { 50, 100, 200, 400, 800, 1600, 3200 };
+
+    private static final double SLO_FACTOR = 1.5;
+
+    private static final String BODY = "{\"prompt\":\"Tell me a joke.\"}";
+
+    public static void main(String[] args) throws Exception {
+        Duration stubLatency = Duration.ofMillis(args.length > 0 ? Long.parseLong(args[0]) : 500);
+        Duration step = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 10);
+
+        try (GeminiStubServer stub = GeminiStubServer.start().withLatency(stubLatency)) {
+            int platform = runMode(stub, false, stubLatency, step);
+            int virtual = runMode(stub, true, stubLatency, step);
+            System.out.printf("%nmax sustainable concurrency: platform=%d virtual=%d%n", platform, virtual);
+        }
+    }
+
+    private static int runMode(GeminiStubServer stub, boolean virtualThreads, Duration stubLatency, Duration step)
+            throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        try (ConfigurableApplicationContext app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "gemini.api.base-url=" + stub.baseUrl(),
+                        "gemini.api.key=benchmark",
+                        "gemini.virtual-threads.enabled=" + virtualThreads,
+                        "gemini.upstream.max-concurrent-requests=4096",
+                        "gemini.http.max-total-connections=4096",
+                        "gemini.http.max-connections-per-route=4096")
+                .run()) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            URI uri = URI.create("http://127.0.0.1:" + port + "/api/gemini/generate-text");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            System.out.printf("%n[%s threads]%n%12s %12s %12s %12s %8s%n", mode,
+                    "concurrency", "req/s", "p50 ms", "p99 ms", "errors");
+            int maxSustainable = 0;
+            for (int concurrency : CONCURRENCY_STEPS) {
+                StepResult result = runStep(client, uri, concurrency, step);
+                boolean sustainable = result.errors == 0
+                        && result.p99Millis <= stubLatency.toMillis() * SLO_FACTOR;
+                System.out.printf("%12d %12.1f %12.1f %12.1f %8d%s%n", concurrency, result.throughput,
+                        result.p50Millis, result.p99Millis, result.errors, sustainable ? "" : "  (over SLO)");
+                if (!sustainable) {
+                    break;
+                }
+                maxSustainable = concurrency;
+            }
+            return maxSustainable;
+        }
+    }
+
+    private static StepResult runStep(HttpClient client, URI uri, int concurrency, Duration step)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(BODY))
+                .build();
+        long deadline = System.nanoTime() + step.toNanos();
+        List<Future<long[]>> workers = new ArrayList<>(concurrency);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(clients.submit(() -> {
+                    long[] latencies = new long[64];
+                    int count = 0;
+                    long errors = 0;
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors++;
+                                continue;
+                            }
+                        } catch (Exception e) {
+                            errors++;
+                            continue;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    long[] result = Arrays.copyOf(latencies, count + 1);
+                    result[count] = errors;
+                    return result;
+                }));
+            }
+        }
+
+        long errors = 0;
+        List<long[]> perWorker = new ArrayList<>(concurrency);
+        int total = 0;
+        for (Future<long[]> worker : workers) {
+            long[] result = worker.get();
+            errors += result[result.length - 1];
+            perWorker.add(result);
+            total += result.length - 1;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] result : perWorker) {
+            System.arraycopy(result, 0, all, offset, result.length - 1);
+            offset += result.length - 1;
+        }
+        Arrays.sort(all);
+        return new StepResult(total / (double) step.toSeconds(), percentileMillis(all, 0.50),
+                percentileMillis(all, 0.99), errors);
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private record StepResult(double throughput, double p50Millis, double p99Millis, long errors) {
+    }
+}
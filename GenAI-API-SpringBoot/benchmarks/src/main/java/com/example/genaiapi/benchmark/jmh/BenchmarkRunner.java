@@ -0,0 +1,35 @@
+package com.example.genaiapi.benchmark.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the JMH benchmarks with the GC profiler, so every result carries ops/s
+ * next to gc.alloc.rate and gc.alloc.rate.norm (bytes allocated per op), and
+ * writes them as JSON. Compare that file against the one from the previous
+ * release (e.g. with jmh.morethan.io) to catch throughput or allocation
+ * regressions.
+ *
+ * The default include covers RequestSerializationBenchmark,
+ * ResponseDeserializationBenchmark, ImageBase64Benchmark,
+ * RequestTemplateBenchmark and service.GeminiServiceBenchmark.
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.jmh.BenchmarkRunner [include regex] [result.json]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : "com\\.example\\.genaiapi\\..*Benchmark";
+        String result = args.length > 1 ? args[1] : "jmh-result.json";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.genaiapi.benchmark.jmh;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.service.GeminiRequestBuilder;
+import com.example.genaiapi.service.RequestTemplates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The base64 path of analyzeImage, from image bytes to JSON on the wire.
+ *
+ * - "encodeOnly": Base64.encodeToString alone, the floor of the String path
+ * - "stringPath": encode to a String, build the request and serialize it, as
+ * analyzeImage(prompt, base64Image, mimeType) callers do
+ * - "streamedPath": InlineDataSerializer encodes from the bytes while the
+ * request is written, as the multipart controller does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBase64Benchmark {
+
+    @Param({ "64", "1024", "8192" })
+    private int imageKb;
+
+    private ObjectWriter writer;
+
+    private GeminiRequestBuilder requestBuilder;
+
+    private byte[] image;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        writer = objectMapper.writer();
+        requestBuilder = new GeminiRequestBuilder(new RequestTemplates(objectMapper));
+        image = new byte[imageKb * 1024];
+        new Random(imageKb).nextBytes(image);
+    }
+
+    @Benchmark
+    public String encodeOnly() {
+        return Base64.getEncoder().encodeToString(image);
+    }
+
+    @Benchmark
+    public void stringPath() throws Exception {
+        GenerateContentRequest request = requestBuilder.analyzeImage("Describe this image",
+                Base64.getEncoder().encodeToString(image), "image/jpeg");
+        writer.writeValue(OutputStream.nullOutputStream(), request);
+    }
+
+    @Benchmark
+    public void streamedPath() throws Exception {
+        GenerateContentRequest request = requestBuilder.analyzeImage("Describe this image",
+                new ByteArrayResource(image), image.length, "image/jpeg");
+        writer.writeValue(OutputStream.nullOutputStream(), request);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.genaiapi.benchmark.jmh;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.service.GeminiRequestBuilder;
+import com.example.genaiapi.service.RequestTemplates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Jackson serialization of the GenerateContentRequest shapes the service sends:
+ * a single text prompt, a multi-turn conversation and a prompt with an inline
+ * image (pre-encoded base64 String, and streamed from bytes by
+ * InlineDataSerializer). Requests are built once in setup, so only the writing
+ * is measured; the JSON goes to a null stream, like RestTemplate streaming the
+ * body to the socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+    @Param({ "4", "32" })
+    private int turns;
+
+    @Param({ "64", "1024" })
+    private int imageKb;
+
+    private ObjectWriter writer;
+
+    private GenerateContentRequest text;
+
+    private GenerateContentRequest multiTurn;
+
+    private GenerateContentRequest inlineImage;
+
+    private GenerateContentRequest streamedImage;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        writer = objectMapper.writer();
+        GeminiRequestBuilder requestBuilder = new GeminiRequestBuilder(new RequestTemplates(objectMapper));
+
+        text = requestBuilder.text("Explain how a hash map handles collisions, in three sentences");
+
+        List<Map<String, String>> history = new ArrayList<>(turns);
+        for (int i = 0; i < turns; i++) {
+            history.add(Map.of(
+                    "role", i % 2 == 0 ? "user" : "model",
+                    "text", "Turn " + i + ": " + "a sentence of ordinary conversation text. ".repeat(8)));
+        }
+        multiTurn = requestBuilder.multiTurnConversation(history);
+
+        byte[] image = new byte[imageKb * 1024];
+        new Random(imageKb).nextBytes(image);
+        inlineImage = requestBuilder.analyzeImage("Describe this image",
+                Base64.getEncoder().encodeToString(image), "image/jpeg");
+        streamedImage = requestBuilder.analyzeImage("Describe this image", new ByteArrayResource(image),
+                image.length, "image/jpeg");
+    }
+
+    @Benchmark
+    public void text() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), text);
+    }
+
+    @Benchmark
+    public void multiTurn() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), multiTurn);
+    }
+
+    @Benchmark
+    public void inlineImage() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), inlineImage);
+    }
+
+    @Benchmark
+    public void streamedImage() throws Exception {
+        writer.writeValue(OutputStream.nullOutputStream(), streamedImage);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.genaiapi.benchmark.jmh;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Jackson deserialization of large GenerateContentResponse payloads, as
+ * RestTemplate reads them from the upstream connection: several candidates,
+ * each with many text parts, safety ratings and usage metadata. payloadKb is
+ * the approximate size of the JSON body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseDeserializationBenchmark {
+
+    private static final int CANDIDATES = 4;
+
+    private static final String PARAGRAPH = "The model produced this paragraph of ordinary prose, "
+            + "with \"quoted\" words, unicode like café and a line break\n. ";
+
+    @Param({ "16", "256", "2048" })
+    private int payloadKb;
+
+    private ObjectReader reader;
+
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        reader = objectMapper.readerFor(GenerateContentResponse.class);
+
+        int partsPerCandidate = Math.max(1, payloadKb * 1024 / CANDIDATES / (PARAGRAPH.length() * 8));
+        List<GenerateContentResponse.Candidate> candidates = new ArrayList<>(CANDIDATES);
+        for (int c = 0; c < CANDIDATES; c++) {
+            List<GenerateContentResponse.Part> parts = new ArrayList<>(partsPerCandidate);
+            for (int p = 0; p < partsPerCandidate; p++) {
+                GenerateContentResponse.Part part = new GenerateContentResponse.Part();
+                part.setText(PARAGRAPH.repeat(8));
+                parts.add(part);
+            }
+            candidates.add(new GenerateContentResponse.Candidate(
+                    new GenerateContentResponse.Content(parts, "model"), "STOP", c,
+                    List.of(new GenerateContentResponse.SafetyRating("HARM_CATEGORY_HARASSMENT", "NEGLIGIBLE"),
+                            new GenerateContentResponse.SafetyRating("HARM_CATEGORY_HATE_SPEECH", "NEGLIGIBLE"))));
+        }
+        json = objectMapper.writeValueAsBytes(new GenerateContentResponse(candidates,
+                new GenerateContentResponse.UsageMetadata(120, payloadKb * 256, 120 + payloadKb * 256, null)));
+    }
+
+    @Benchmark
+    public GenerateContentResponse deserialize() throws Exception {
+        return reader.readValue(json);
+    }
+}
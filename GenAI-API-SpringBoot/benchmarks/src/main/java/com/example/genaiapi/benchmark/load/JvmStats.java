@@ -0,0 +1,60 @@
+package com.example.genaiapi.benchmark.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Point-in-time JVM counters; two snapshots give the activity of one step
+ */
+public record JvmStats(long uptimeMillis, long gcCount, long gcTimeMillis, Map<String, Long> gcCountByCollector,
+        long heapUsedBytes, long heapCommittedBytes, long allocatedBytes, int threadCount, long processCpuNanos) {
+
+    public static JvmStats snapshot() {
+        long gcCount = 0;
+        long gcTime = 0;
+        Map<String, Long> byCollector = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+            byCollector.put(gc.getName(), gc.getCollectionCount());
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long allocated = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                ? threads.getTotalThreadAllocatedBytes()
+                : -1;
+        long cpu = ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+                ? os.getProcessCpuTime()
+                : -1;
+        return new JvmStats(ManagementFactory.getRuntimeMXBean().getUptime(), gcCount, gcTime, byCollector,
+                heap.getUsed(), heap.getCommitted(), allocated, ManagementFactory.getThreadMXBean().getThreadCount(),
+                cpu);
+    }
+
+    /**
+     * What happened between an earlier snapshot and this one
+     */
+    public Map<String, Object> since(JvmStats before) {
+        long elapsedMillis = Math.max(1, uptimeMillis - before.uptimeMillis);
+        Map<String, Long> collections = new LinkedHashMap<>();
+        gcCountByCollector.forEach((name, count) -> collections.put(name,
+                count - before.gcCountByCollector.getOrDefault(name, 0L)));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("gcCount", gcCount - before.gcCount);
+        result.put("gcTimeMillis", gcTimeMillis - before.gcTimeMillis);
+        result.put("gcTimeFraction", (double) (gcTimeMillis - before.gcTimeMillis) / elapsedMillis);
+        result.put("gcCountByCollector", collections);
+        result.put("allocationRateMbPerSec", allocatedBytes < 0 ? null
+                : (allocatedBytes - before.allocatedBytes) / 1048576.0 / (elapsedMillis / 1000.0));
+        result.put("cpuUtilization", processCpuNanos < 0 ? null
+                : (processCpuNanos - before.processCpuNanos) / 1_000_000.0 / elapsedMillis
+                        / Runtime.getRuntime().availableProcessors());
+        result.put("heapUsedMb", heapUsedBytes / 1048576.0);
+        result.put("heapCommittedMb", heapCommittedBytes / 1048576.0);
+        result.put("threads", threadCount);
+        return result;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.genaiapi.benchmark.load;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import com.example.genaiapi.benchmark.stub.LatencyDistribution;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Capacity test of the /api/gemini endpoints, runnable offline and before
+ * every release.
+ *
+ * Starts a GeminiStubServer with the configured latency distribution, fault
+ * rates and answer size, starts the application against it, and drives the
+ * default Scenario mix with an OpenLoadGenerator: a warm-up step whose
+ * results are discarded, then one step per target rate. Each step reports
+ * throughput, HDR latency percentiles per scenario (and time to first event
+ * for streaming), error and drop rates, and the JVM's GC, allocation and CPU
+ * activity. The report is written as JSON for comparison between releases,
+ * and a summary table is printed.
+ *
+ * The generator, the application and the stub share one JVM, so the JVM
+ * figures cover all three; the stub and generator are cheap next to the
+ * application, but compare reports from the same machine only.
+ *
+ * Arguments are key=value, all optional:
+ *
+ * rates=50,100,200 target requests/s, one step each
+ * step=30s / warmup=10s step and warm-up durations
+ * latency=lognormal:400ms-3s stub latency (see LatencyDistribution.parse)
+ * errorRate=0.0 / rateLimitRate=0.0 stub 503 and 429 fractions
+ * responseChars=1000 answer size
+ * streamChunks=8 / chunkInterval=20ms SSE chunking of streamed answers
+ * maxOutstanding=10000 / timeout=60s generator queue cap and request timeout
+ * report=load-report.json output file
+ * app.<property>=<value> passed to the application, e.g.
+ * app.gemini.rate-limit.enabled=true
+ *
+ * Run with: java ... com.example.genaiapi.benchmark.load.LoadTest rates=100,200,400 step=60s
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new TreeMap<>();
+        List<String> appProperties = new ArrayList<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = arg.substring(0, equals);
+            if (key.startsWith("app.")) {
+                appProperties.add(arg.substring(4));
+            } else {
+                options.put(key, arg.substring(equals + 1));
+            }
+        }
+
+        List<Double> rates = new ArrayList<>();
+        for (String rate : options.getOrDefault("rates", "50,100,200").split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        Duration step = parseDuration(options.getOrDefault("step", "30s"));
+        Duration warmup = parseDuration(options.getOrDefault("warmup", "10s"));
+        Duration timeout = parseDuration(options.getOrDefault("timeout", "60s"));
+        int maxOutstanding = Integer.parseInt(options.getOrDefault("maxOutstanding", "10000"));
+        String reportFile = options.getOrDefault("report", "load-report.json");
+
+        try (GeminiStubServer stub = GeminiStubServer.start()
+                .withLatency(LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:400ms-3s")))
+                .withErrorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")))
+                .withRateLimiting(Double.parseDouble(options.getOrDefault("rateLimitRate", "0")),
+                        Duration.ofSeconds(1))
+                .withResponseSize(Integer.parseInt(options.getOrDefault("responseChars", "1000")))
+                .withStreaming(Integer.parseInt(options.getOrDefault("streamChunks", "8")),
+                        parseDuration(options.getOrDefault("chunkInterval", "20ms")))) {
+            List<String> properties = new ArrayList<>(List.of(
+                    "server.port=0",
+                    "gemini.api.base-url=" + stub.baseUrl(),
+                    "gemini.api.upload-base-url=" + stub.uploadBaseUrl(),
+                    "gemini.api.key=load-test"));
+            properties.addAll(appProperties);
+
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                    .properties(properties.toArray(String[]::new))
+                    .run()) {
+                int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+                OpenLoadGenerator generator = new OpenLoadGenerator("http://127.0.0.1:" + port,
+                        Scenario.defaultMix(), maxOutstanding, timeout);
+
+                if (!warmup.isZero()) {
+                    generator.run(rates.get(0), warmup);
+                }
+
+                List<Map<String, Object>> steps = new ArrayList<>();
+                System.out.printf("%10s %10s %10s %10s %10s %10s %10s %8s%n", "target/s", "achieved/s", "p50 ms",
+                        "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+                for (double rate : rates) {
+                    stub.resetCounters();
+                    JvmStats before = JvmStats.snapshot();
+                    OpenLoadGenerator.StepResult result = generator.run(rate, step);
+                    JvmStats after = JvmStats.snapshot();
+                    Map<String, Object> stepReport = stepReport(result, after.since(before), stub);
+                    steps.add(stepReport);
+                    printSummary(result);
+                }
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("startedAt", Instant.now().toString());
+                report.put("javaVersion", Runtime.version().toString());
+                report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+                report.put("options", options);
+                report.put("applicationProperties", appProperties);
+                report.put("steps", steps);
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(reportFile), report);
+                System.out.println("Report written to " + reportFile);
+            }
+        }
+    }
+
+    private static Map<String, Object> stepReport(OpenLoadGenerator.StepResult result, Map<String, Object> jvm,
+            GeminiStubServer stub) {
+        Histogram all = null;
+        long errors = 0;
+        Map<String, Object> scenarios = new LinkedHashMap<>();
+        for (Map.Entry<String, OpenLoadGenerator.ScenarioResult> entry : result.scenarios().entrySet()) {
+            OpenLoadGenerator.ScenarioResult scenario = entry.getValue();
+            errors += scenario.errors();
+            if (all == null) {
+                all = scenario.latency().copy();
+            } else {
+                all.add(scenario.latency());
+            }
+
+            Map<String, Object> scenarioReport = new LinkedHashMap<>();
+            scenarioReport.put("completed", scenario.completed());
+            scenarioReport.put("errors", scenario.errors());
+            scenarioReport.put("dropped", scenario.dropped());
+            scenarioReport.put("statusCounts", scenario.statusCounts());
+            scenarioReport.put("responseBytes", scenario.responseBytes());
+            scenarioReport.put("latencyMillis", percentiles(scenario.latency()));
+            if (scenario.firstEvent().getTotalCount() > 0) {
+                scenarioReport.put("firstEventMillis", percentiles(scenario.firstEvent()));
+            }
+            scenarios.put(entry.getKey(), scenarioReport);
+        }
+
+        long completed = all == null ? 0 : all.getTotalCount();
+        double seconds = result.elapsedNanos() / 1e9;
+        Map<String, Object> step = new LinkedHashMap<>();
+        step.put("targetRate", result.targetRate());
+        step.put("durationSeconds", seconds);
+        step.put("scheduled", result.scheduled());
+        step.put("completed", completed);
+        step.put("throughput", completed / seconds);
+        step.put("goodput", (completed - errors) / seconds);
+        step.put("errors", errors);
+        step.put("errorRate", completed == 0 ? 0.0 : (double) errors / completed);
+        step.put("dropped", result.dropped());
+        step.put("latencyMillis", all == null ? Map.of() : percentiles(all));
+        step.put("scenarios", scenarios);
+        step.put("jvm", jvm);
+        Map<String, Object> upstream = new LinkedHashMap<>();
+        upstream.put("requests", stub.requestCount());
+        upstream.put("maxInFlight", stub.maxInFlight());
+        upstream.put("injectedFaults", stub.injectedFaults());
+        step.put("upstream", upstream);
+        return step;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", histogram.getTotalCount());
+        result.put("mean", histogram.getMean() / 1e6);
+        result.put("p50", histogram.getValueAtPercentile(50) / 1e6);
+        result.put("p90", histogram.getValueAtPercentile(90) / 1e6);
+        result.put("p99", histogram.getValueAtPercentile(99) / 1e6);
+        result.put("p99.9", histogram.getValueAtPercentile(99.9) / 1e6);
+        result.put("max", histogram.getMaxValue() / 1e6);
+        return result;
+    }
+
+    private static void printSummary(OpenLoadGenerator.StepResult result) {
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        for (OpenLoadGenerator.ScenarioResult scenario : result.scenarios().values()) {
+            all.add(scenario.latency());
+            errors += scenario.errors();
+        }
+        System.out.printf("%10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n", result.targetRate(),
+                all.getTotalCount() / (result.elapsedNanos() / 1e9),
+                all.getValueAtPercentile(50) / 1e6, all.getValueAtPercentile(90) / 1e6,
+                all.getValueAtPercentile(99) / 1e6, all.getValueAtPercentile(99.9) / 1e6,
+                all.getMaxValue() / 1e6, errors + result.dropped());
+    }
+
+    private static Duration parseDuration(String value) {
+        return DurationStyle.detectAndParse(value);
+    }
+}
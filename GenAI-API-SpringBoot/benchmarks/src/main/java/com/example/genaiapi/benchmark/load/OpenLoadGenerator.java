@@ -0,0 +1,266 @@
+package com.example.genaiapi.benchmark.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Open-model load generator: requests arrive on a Poisson schedule at the
+ * target rate whether or not earlier ones have completed, the way independent
+ * users arrive, so a slow server builds a queue instead of slowing the load
+ * down (which a closed loop of N clients would do, hiding the saturation).
+ *
+ * Latency is measured from each request's intended send time, not from when
+ * it was actually sent, which corrects for coordinated omission if the
+ * generator itself falls behind. Every request runs on its own virtual
+ * thread; maxOutstanding caps the queue so an overloaded run ends in counted
+ * drops rather than in running out of memory.
+ *
+ * For streaming scenarios the latency is to the end of the stream and the
+ * time to the first SSE event is recorded separately. A stream that opened
+ * with 200 but then carried an "error" event is counted under status
+ * STREAM_ERROR rather than as a success.
+ */
+public class OpenLoadGenerator {
+
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    // Status slots for outcomes that have no HTTP status of their own
+    public static final int TRANSPORT_ERROR = -1;
+
+    public static final int STREAM_ERROR = -2;
+
+    private final HttpClient client;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String baseUrl;
+
+    private final List<Scenario> scenarios;
+
+    private final int totalWeight;
+
+    private final int maxOutstanding;
+
+    private final Duration requestTimeout;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, ScenarioStats> stats = new ConcurrentHashMap<>();
+
+    public OpenLoadGenerator(String baseUrl, List<Scenario> scenarios, int maxOutstanding, Duration requestTimeout) {
+        this.baseUrl = baseUrl;
+        this.scenarios = scenarios;
+        this.totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        this.maxOutstanding = maxOutstanding;
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Scenario scenario : scenarios) {
+            stats.put(scenario.name(), new ScenarioStats());
+        }
+    }
+
+    /**
+     * Offers load at ratePerSecond for the duration, then waits (bounded by
+     * the request timeout) for the stragglers. The returned step report
+     * covers only the requests scheduled in this step.
+     */
+    public StepResult run(double ratePerSecond, Duration duration) throws InterruptedException {
+        stats.values().forEach(ScenarioStats::reset);
+        Semaphore outstanding = new Semaphore(maxOutstanding);
+        LongAdder dropped = new LongAdder();
+        long meanGapNanos = (long) (1_000_000_000L / ratePerSecond);
+
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long intended = start;
+        long scheduled = 0;
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                // Exponential gaps give Poisson arrivals at the target rate
+                intended += (long) (-meanGapNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Scenario scenario = pick();
+                scheduled++;
+                if (!outstanding.tryAcquire()) {
+                    dropped.increment();
+                    stats.get(scenario.name()).dropped.increment();
+                    continue;
+                }
+                long intendedStart = intended;
+                requests.execute(() -> {
+                    try {
+                        send(scenario, intendedStart);
+                    } finally {
+                        outstanding.release();
+                    }
+                });
+            }
+            requests.shutdown();
+            if (!requests.awaitTermination(requestTimeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                requests.shutdownNow();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, ScenarioResult> results = new LinkedHashMap<>();
+        for (Scenario scenario : scenarios) {
+            results.put(scenario.name(), stats.get(scenario.name()).result());
+        }
+        return new StepResult(ratePerSecond, scheduled, dropped.sum(), elapsed, results);
+    }
+
+    private Scenario pick() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            roll -= scenario.weight();
+            if (roll < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private void send(Scenario scenario, long intendedStart) {
+        ScenarioStats scenarioStats = stats.get(scenario.name());
+        int status;
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(scenario.body().create(sequence.incrementAndGet()));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + scenario.path()))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .header("Accept", scenario.streaming() ? "text/event-stream" : "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            if (scenario.streaming()) {
+                HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                status = response.statusCode();
+                if (readStream(response.body(), scenarioStats, intendedStart)) {
+                    status = STREAM_ERROR;
+                }
+            } else {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                status = response.statusCode();
+                scenarioStats.responseBytes.add(response.body().length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = TRANSPORT_ERROR;
+        } catch (Exception e) {
+            // Timeouts, resets and refused connections
+            status = TRANSPORT_ERROR;
+        }
+        scenarioStats.record(status, System.nanoTime() - intendedStart);
+    }
+
+    /*
+     * Reads the stream to its end and reports whether the server signalled a
+     * failure in-band: once the response is committed with 200, errors can
+     * only arrive as an "event:error" SSE event.
+     */
+    private boolean readStream(InputStream body, ScenarioStats scenarioStats, long intendedStart) throws Exception {
+        boolean first = true;
+        boolean failed = false;
+        long bytes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bytes += line.length() + 1;
+                if (first && line.startsWith("data:")) {
+                    scenarioStats.firstEvent.recordValue(clamp(System.nanoTime() - intendedStart));
+                    first = false;
+                }
+                if (line.startsWith("event:") && line.substring("event:".length()).trim().equals("error")) {
+                    failed = true;
+                }
+            }
+        }
+        scenarioStats.responseBytes.add(bytes);
+        return failed;
+    }
+
+    private static long clamp(long nanos) {
+        return Math.min(Math.max(nanos, 1), MAX_TRACKABLE_NANOS);
+    }
+
+    /**
+     * Outcome of one load step
+     */
+    public record StepResult(double targetRate, long scheduled, long dropped, long elapsedNanos,
+            Map<String, ScenarioResult> scenarios) {
+    }
+
+    /**
+     * Per-scenario counts and latency histograms of one step
+     */
+    public record ScenarioResult(long completed, long errors, long dropped, Map<Integer, Long> statusCounts,
+            long responseBytes, Histogram latency, Histogram firstEvent) {
+    }
+
+    private static final class ScenarioStats {
+        final Recorder latency = new Recorder(1, MAX_TRACKABLE_NANOS, 3);
+        final Recorder firstEvent = new Recorder(1, MAX_TRACKABLE_NANOS, 3);
+        final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+
+        void record(int status, long nanos) {
+            latency.recordValue(clamp(nanos));
+            statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+
+        void reset() {
+            latency.reset();
+            firstEvent.reset();
+            statusCounts.clear();
+            dropped.reset();
+            responseBytes.reset();
+        }
+
+        ScenarioResult result() {
+            Histogram histogram = latency.getIntervalHistogram();
+            Map<Integer, Long> counts = new LinkedHashMap<>();
+            long errors = 0;
+            for (Map.Entry<Integer, LongAdder> entry : statusCounts.entrySet()) {
+                long count = entry.getValue().sum();
+                counts.put(entry.getKey(), count);
+                if (entry.getKey() < 200 || entry.getKey() >= 300) {
+                    errors += count;
+                }
+            }
+            return new ScenarioResult(histogram.getTotalCount(), errors, dropped.sum(), counts,
+                    responseBytes.sum(), histogram, firstEvent.getIntervalHistogram());
+        }
+    }
+}
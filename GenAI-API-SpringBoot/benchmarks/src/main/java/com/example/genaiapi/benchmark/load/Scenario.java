@@ -0,0 +1,36 @@
+package com.example.genaiapi.benchmark.load;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One kind of call in the load mix: endpoint, body and relative weight
+ */
+public record Scenario(String name, String path, int weight, boolean streaming, BodyFactory body) {
+
+    @FunctionalInterface
+    public interface BodyFactory {
+        /**
+         * Request body for the n-th call; distinct per call so neither the
+         * response caches nor request coalescing hide the upstream
+         */
+        Map<String, Object> create(long sequence);
+    }
+
+    public static List<Scenario> defaultMix() {
+        return List.of(
+                new Scenario("generate-text", "/api/gemini/generate-text", 50, false,
+                        n -> Map.of("prompt", "Load test prompt " + n)),
+                new Scenario("generate-structured-json", "/api/gemini/generate-structured-json", 15, false,
+                        n -> Map.of("prompt", "List recipes for load test " + n)),
+                new Scenario("function-calling", "/api/gemini/function-calling", 10, false,
+                        n -> Map.of("prompt", "What is the weather in city " + n + "?")),
+                new Scenario("multi-turn-conversation", "/api/gemini/multi-turn-conversation", 10, false,
+                        n -> Map.of("conversation", List.of(
+                                Map.of("role", "user", "text", "Hello, this is load test " + n),
+                                Map.of("role", "model", "text", "Hello! How can I help?"),
+                                Map.of("role", "user", "text", "Tell me about request " + n)))),
+                new Scenario("generate-text-stream", "/api/gemini/generate-text/stream", 15, true,
+                        n -> Map.of("prompt", "Stream load test prompt " + n)));
+    }
+}
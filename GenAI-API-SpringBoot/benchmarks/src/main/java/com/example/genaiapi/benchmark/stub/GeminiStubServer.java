@@ -0,0 +1,583 @@
+package com.example.genaiapi.benchmark.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * In-process stand-in for the Gemini REST API, used by the benchmarks so they
+ * can run offline and with controlled upstream behaviour.
+ *
+ * It serves POST {baseUrl}/models/{model}:generateContent with a canned
+ * GenerateContentResponse after a delay drawn from a LatencyDistribution, and
+ * the synchronous :batchGenerateContent contract used by MicroBatcher, where
+ * each call costs the base latency plus a per-item latency. The answer text
+ * has a configurable size.
+ *
+ * :streamGenerateContent?alt=sse answers with the same text split into SSE
+ * chunks: the sampled latency passes before the first chunk (time to first
+ * token), then one chunk per chunk interval, the last carrying finishReason
+ * and usageMetadata. Each exchange runs on its
+ * own virtual thread, so the stub itself never becomes the concurrency
+ * bottleneck of a benchmark.
+ *
+ * Faults can be injected per call at independent rates: 503 errors, 429s
+ * carrying a Retry-After header, and a slow tail where a fraction of calls
+ * take an extra delay before answering normally.
+ *
+ * The File API resumable upload (POST {uploadBaseUrl}/files, then the session
+ * URL) is served too. Uploaded files get a URI under {baseUrl}/files/ and
+ * expire after a configurable TTL; with file reference checking on,
+ * generateContent answers 403 for a fileData URI that is unknown or expired,
+ * like the real API does.
+ *
+ * Context caching is served as well: POST {baseUrl}/cachedContents creates a
+ * cache that expires after its "ttl", PATCH {baseUrl}/cachedContents/{id}
+ * extends it and DELETE removes it. generateContent answers 404 for a
+ * cachedContent name that is unknown or expired.
+ *
+ * Usage:
+ *
+ * try (GeminiStubServer stub = GeminiStubServer.start().withLatency(Duration.ofMillis(500))) {
+ * ... gemini.api.base-url = stub.baseUrl() ...
+ * }
+ */
+public class GeminiStubServer implements AutoCloseable {
+
+    private static final byte[] CACHED_CONTENT_PROPERTY = "\"cachedContent\"".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final LongAdder items = new LongAdder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.fixed(Duration.ofMillis(500));
+
+    private volatile String responseText = "stub response";
+
+    private volatile int streamChunks = 8;
+
+    private volatile Duration streamChunkInterval = Duration.ofMillis(20);
+
+    private volatile Duration perItemLatency = Duration.ZERO;
+
+    private volatile double errorRate;
+
+    private volatile double rateLimitRate;
+
+    private volatile Duration retryAfter = Duration.ofSeconds(1);
+
+    private volatile double slowFraction;
+
+    private volatile Duration slowExtraLatency = Duration.ZERO;
+
+    private final LongAdder injectedErrors = new LongAdder();
+
+    private final LongAdder injectedRateLimits = new LongAdder();
+
+    private final LongAdder injectedSlowCalls = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder uploads = new LongAdder();
+
+    private final AtomicInteger nextFileId = new AtomicInteger();
+
+    // File URI -> expiry
+    private final Map<String, Instant> files = new ConcurrentHashMap<>();
+
+    private volatile Duration fileTtl = Duration.ofHours(48);
+
+    private volatile boolean checkFileReferences;
+
+    private final AtomicInteger nextCacheId = new AtomicInteger();
+
+    // Cached content name -> expiry
+    private final Map<String, Instant> cachedContents = new ConcurrentHashMap<>();
+
+    private final LongAdder cachedContentHits = new LongAdder();
+
+    private GeminiStubServer(HttpServer server) {
+        this.server = server;
+    }
+
+    public static GeminiStubServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        GeminiStubServer stub = new GeminiStubServer(server);
+        server.createContext("/v1beta/models/", stub::handleModels);
+        server.createContext("/upload/v1beta/files", stub::handleUpload);
+        server.createContext("/v1beta/cachedContents", stub::handleCachedContents);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return stub;
+    }
+
+    public GeminiStubServer withLatency(Duration latency) {
+        return withLatency(LatencyDistribution.fixed(latency));
+    }
+
+    public GeminiStubServer withLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Length in characters of the generated answer text
+     */
+    public GeminiStubServer withResponseSize(int characters) {
+        StringBuilder text = new StringBuilder(characters);
+        while (text.length() < characters) {
+            text.append("stub response text ");
+        }
+        text.setLength(characters);
+        this.responseText = text.toString();
+        return this;
+    }
+
+    /**
+     * How streamGenerateContent splits the answer: number of SSE chunks and
+     * the delay between them
+     */
+    public GeminiStubServer withStreaming(int chunks, Duration chunkInterval) {
+        this.streamChunks = Math.max(1, chunks);
+        this.streamChunkInterval = chunkInterval;
+        return this;
+    }
+
+    /**
+     * Extra cost per prompt in a batch call, on top of the per-call latency
+     */
+    public GeminiStubServer withPerItemLatency(Duration perItemLatency) {
+        this.perItemLatency = perItemLatency;
+        return this;
+    }
+
+    /**
+     * Fraction of calls answered with 503 Service Unavailable
+     */
+    public GeminiStubServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Fraction of calls answered with 429 and the given Retry-After
+     */
+    public GeminiStubServer withRateLimiting(double rateLimitRate, Duration retryAfter) {
+        this.rateLimitRate = rateLimitRate;
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * Fraction of calls that take extraLatency on top of the normal latency
+     */
+    public GeminiStubServer withSlowTail(double slowFraction, Duration extraLatency) {
+        this.slowFraction = slowFraction;
+        this.slowExtraLatency = extraLatency;
+        return this;
+    }
+
+    /**
+     * How long uploaded files stay valid
+     */
+    public GeminiStubServer withFileTtl(Duration fileTtl) {
+        this.fileTtl = fileTtl;
+        return this;
+    }
+
+    /**
+     * Reject generateContent calls whose fileData URIs are unknown or expired
+     */
+    public GeminiStubServer withFileReferenceChecking(boolean checkFileReferences) {
+        this.checkFileReferences = checkFileReferences;
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta";
+    }
+
+    public String uploadBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/upload/v1beta";
+    }
+
+    /**
+     * Request body bytes received, across generateContent calls and uploads
+     */
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long uploadCount() {
+        return uploads.sum();
+    }
+
+    /**
+     * Forgets all uploaded files, as if they had been deleted upstream
+     */
+    public void deleteFiles() {
+        files.clear();
+    }
+
+    /**
+     * Cached contents currently alive
+     */
+    public int cachedContentCount() {
+        Instant now = Instant.now();
+        return (int) cachedContents.values().stream().filter(expiresAt -> expiresAt.isAfter(now)).count();
+    }
+
+    /**
+     * generateContent calls that referenced a valid cached content
+     */
+    public long cachedContentHits() {
+        return cachedContentHits.sum();
+    }
+
+    /**
+     * Forgets all cached contents, as if they had expired upstream
+     */
+    public void deleteCachedContents() {
+        cachedContents.clear();
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Prompts answered, counting each element of a batch call
+     */
+    public long itemCount() {
+        return items.sum();
+    }
+
+    /**
+     * Highest number of upstream calls observed in flight at the same time
+     */
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Faults injected so far, keyed by kind
+     */
+    public Map<String, Long> injectedFaults() {
+        return Map.of("errors", injectedErrors.sum(), "rateLimits", injectedRateLimits.sum(),
+                "slowCalls", injectedSlowCalls.sum());
+    }
+
+    public void resetCounters() {
+        requests.reset();
+        items.reset();
+        maxInFlight.set(0);
+        injectedErrors.reset();
+        injectedRateLimits.reset();
+        injectedSlowCalls.reset();
+        bytesReceived.reset();
+        uploads.reset();
+        cachedContentHits.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        requests.increment();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (injectFault(exchange)) {
+                return;
+            }
+            if (path.endsWith(":generateContent")) {
+                int rejection = checkReferences(exchange);
+                if (rejection == 403) {
+                    writeJson(exchange, 403, "{\"error\":{\"code\":403,\"status\":\"PERMISSION_DENIED\"}}");
+                    return;
+                }
+                if (rejection == 404) {
+                    writeJson(exchange, 404, "{\"error\":{\"code\":404,\"status\":\"NOT_FOUND\"}}");
+                    return;
+                }
+                items.increment();
+                sleep(latency.sample());
+                writeJson(exchange, 200, generateContentResponse(responseText));
+            } else if (path.endsWith(":streamGenerateContent")) {
+                bytesReceived.add(drain(exchange));
+                items.increment();
+                handleStream(exchange);
+            } else if (path.endsWith(":batchGenerateContent")) {
+                handleBatch(exchange);
+            } else {
+                drain(exchange);
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        JsonNode body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = objectMapper.readTree(in);
+        }
+        int count = body.path("requests").size();
+        items.add(count);
+        sleep(latency.sample().plus(perItemLatency.multipliedBy(count)));
+        StringBuilder json = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append(generateContentResponse("stub response " + i));
+        }
+        writeJson(exchange, 200, json.append("]}").toString());
+    }
+
+    private void handleStream(HttpExchange exchange) throws IOException {
+        String text = responseText;
+        int chunks = Math.min(streamChunks, Math.max(1, text.length()));
+        sleep(latency.sample());
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < chunks; i++) {
+            if (i > 0) {
+                sleep(streamChunkInterval);
+            }
+            String delta = text.substring(text.length() * i / chunks, text.length() * (i + 1) / chunks);
+            String json = i == chunks - 1
+                    ? generateContentResponse(delta)
+                    : "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + delta
+                            + "\"}],\"role\":\"model\"},\"index\":0}]}";
+            out.write(("data: " + json + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        out.close();
+    }
+
+    /*
+     * Answers the exchange with an injected error and returns true, or adds the
+     * slow-tail delay (if drawn) and returns false so the call proceeds.
+     */
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < errorRate) {
+            injectedErrors.increment();
+            drain(exchange);
+            sleep(latency.sample());
+            writeJson(exchange, 503, "{\"error\":{\"code\":503,\"status\":\"UNAVAILABLE\"}}");
+            return true;
+        }
+        if (random.nextDouble() < rateLimitRate) {
+            injectedRateLimits.increment();
+            drain(exchange);
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfter.toSeconds()));
+            writeJson(exchange, 429, "{\"error\":{\"code\":429,\"status\":\"RESOURCE_EXHAUSTED\"}}");
+            return true;
+        }
+        if (random.nextDouble() < slowFraction) {
+            injectedSlowCalls.increment();
+            sleep(slowExtraLatency);
+        }
+        return false;
+    }
+
+    /*
+     * Resumable upload: "start" returns the session URL, "upload, finalize"
+     * receives the bytes and returns the File resource.
+     */
+    private void handleUpload(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String command = exchange.getRequestHeaders().getFirst("X-Goog-Upload-Command");
+            if ("start".equals(command)) {
+                drain(exchange);
+                String sessionUrl = uploadBaseUrl() + "/files?upload_id=" + nextFileId.incrementAndGet();
+                exchange.getResponseHeaders().set("X-Goog-Upload-URL", sessionUrl);
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (command == null || !command.contains("finalize")) {
+                drain(exchange);
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            long size = drain(exchange);
+            bytesReceived.add(size);
+            uploads.increment();
+            sleep(latency.sample());
+
+            String query = exchange.getRequestURI().getQuery();
+            String id = query != null && query.startsWith("upload_id=") ? query.substring(10) : "unknown";
+            String uri = baseUrl() + "/files/" + id;
+            Instant expiresAt = Instant.now().plus(fileTtl);
+            files.put(uri, expiresAt);
+            writeJson(exchange, 200, "{\"file\":{\"name\":\"files/" + id + "\",\"uri\":\"" + uri
+                    + "\",\"sizeBytes\":\"" + size + "\",\"state\":\"ACTIVE\",\"expirationTime\":\""
+                    + expiresAt + "\"}}");
+        }
+    }
+
+    /*
+     * 0 when the request may proceed, 403 for an unknown or expired fileData
+     * URI (when checking is on), 404 for an unknown or expired cachedContent.
+     */
+    private int checkReferences(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readAllBytes();
+        }
+        bytesReceived.add(bytes.length);
+        boolean cached = indexOf(bytes, CACHED_CONTENT_PROPERTY) >= 0;
+        if (!checkFileReferences && !cached) {
+            return 0;
+        }
+        JsonNode body = objectMapper.readTree(bytes);
+        Instant now = Instant.now();
+        if (checkFileReferences) {
+            for (JsonNode uri : body.findValues("file_uri")) {
+                Instant expiresAt = files.get(uri.asText());
+                if (expiresAt == null || expiresAt.isBefore(now)) {
+                    return 403;
+                }
+            }
+        }
+        if (cached) {
+            Instant expiresAt = cachedContents.get(body.path("cachedContent").asText());
+            if (expiresAt == null || expiresAt.isBefore(now)) {
+                return 404;
+            }
+            cachedContentHits.increment();
+        }
+        return 0;
+    }
+
+    /*
+     * POST /cachedContents creates, PATCH and DELETE /cachedContents/{id}
+     * extend and remove; GET returns the resource.
+     */
+    private void handleCachedContents(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String name = path.substring(path.indexOf("cachedContents"));
+            JsonNode body;
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readAllBytes();
+                bytesReceived.add(bytes.length);
+                body = bytes.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(bytes);
+            }
+            if ("POST".equals(method) && name.equals("cachedContents")) {
+                sleep(latency.sample());
+                String created = "cachedContents/" + nextCacheId.incrementAndGet();
+                Instant expiresAt = Instant.now().plus(parseTtl(body.path("ttl").asText("3600s")));
+                cachedContents.put(created, expiresAt);
+                writeJson(exchange, 200, cachedContentJson(created, expiresAt));
+                return;
+            }
+            Instant expiresAt = cachedContents.get(name);
+            if (expiresAt == null || expiresAt.isBefore(Instant.now())) {
+                cachedContents.remove(name);
+                writeJson(exchange, 404, "{\"error\":{\"code\":404,\"status\":\"NOT_FOUND\"}}");
+                return;
+            }
+            switch (method) {
+                case "PATCH" -> {
+                    expiresAt = Instant.now().plus(parseTtl(body.path("ttl").asText("3600s")));
+                    cachedContents.put(name, expiresAt);
+                    writeJson(exchange, 200, cachedContentJson(name, expiresAt));
+                }
+                case "DELETE" -> {
+                    cachedContents.remove(name);
+                    writeJson(exchange, 200, "{}");
+                }
+                case "GET" -> writeJson(exchange, 200, cachedContentJson(name, expiresAt));
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Duration parseTtl(String ttl) {
+        String seconds = ttl.endsWith("s") ? ttl.substring(0, ttl.length() - 1) : ttl;
+        return Duration.ofMillis((long) (Double.parseDouble(seconds) * 1000));
+    }
+
+    private static String cachedContentJson(String name, Instant expiresAt) {
+        return "{\"name\":\"" + name + "\",\"expireTime\":\"" + expiresAt + "\"}";
+    }
+
+    static long drain(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    static String generateContentResponse(String text) {
+        return "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}],\"role\":\"model\"},"
+                + "\"finishReason\":\"STOP\",\"index\":0}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":8,\"candidatesTokenCount\":4,\"totalTokenCount\":12}}";
+    }
+
+    static void writeJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static void sleep(Duration duration) {
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
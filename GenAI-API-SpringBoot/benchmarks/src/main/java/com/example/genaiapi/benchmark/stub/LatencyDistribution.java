@@ -0,0 +1,74 @@
+package com.example.genaiapi.benchmark.stub;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Upstream latency model for GeminiStubServer: one sample per call
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    Duration sample();
+
+    static LatencyDistribution fixed(Duration latency) {
+        return () -> latency;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = Math.max(minNanos + 1, max.toNanos());
+        return () -> Duration.ofNanos(ThreadLocalRandom.current().nextLong(minNanos, maxNanos));
+    }
+
+    /**
+     * Exponentially distributed around the mean, as seen for queueing
+     * upstreams
+     */
+    static LatencyDistribution exponential(Duration mean) {
+        double meanNanos = mean.toNanos();
+        return () -> Duration.ofNanos((long) (-meanNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble())));
+    }
+
+    /*
+     * Log-normal with the given median and 99th percentile, the usual shape of
+     * model latency: most calls near the median and a long right tail.
+     * sigma follows from p99 = median * e^(2.326 * sigma).
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.max(0, Math.log((double) p99.toNanos() / median.toNanos()) / 2.326);
+        return () -> Duration.ofNanos((long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Parses "500ms", "uniform:100ms-900ms", "exponential:300ms" or
+     * "lognormal:400ms-3s" (median-p99), for command line use
+     */
+    static LatencyDistribution parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            return fixed(parseDuration(spec));
+        }
+        String kind = spec.substring(0, colon);
+        String[] args = spec.substring(colon + 1).split("-");
+        return switch (kind) {
+            case "fixed" -> fixed(parseDuration(args[0]));
+            case "uniform" -> uniform(parseDuration(args[0]), parseDuration(args[1]));
+            case "exponential" -> exponential(parseDuration(args[0]));
+            case "lognormal" -> logNormal(parseDuration(args[0]), parseDuration(args[1]));
+            default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        };
+    }
+
+    private static Duration parseDuration(String value) {
+        String trimmed = value.trim();
+        if (trimmed.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(trimmed.substring(0, trimmed.length() - 2)));
+        }
+        if (trimmed.endsWith("s")) {
+            return Duration.ofMillis((long) (Double.parseDouble(trimmed.substring(0, trimmed.length() - 1)) * 1000));
+        }
+        return Duration.ofMillis(Long.parseLong(trimmed));
+    }
+}
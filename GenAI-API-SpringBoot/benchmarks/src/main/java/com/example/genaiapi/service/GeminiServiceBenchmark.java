@@ -0,0 +1,75 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.GenAiApiApplication;
+import com.example.genaiapi.benchmark.stub.GeminiStubServer;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The request hot path inside GeminiService: ModelRouter.route (rules and
+ * health), and makeRequest end to end (coalescer, resilience, rate limiter,
+ * concurrency limiter, upstream key lease, RestTemplate on the pooled
+ * HttpClient, Jackson both ways) against an in-process
+ * GeminiStubServer that answers with no added latency.
+ *
+ * It lives in GeminiService's package because makeRequest is
+ * package-private. makeRequest sits below the response caches, so every call
+ * reaches the stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeminiServiceBenchmark {
+
+    private GeminiStubServer stub;
+
+    private ConfigurableApplicationContext app;
+
+    private GeminiService geminiService;
+
+    private GenerateContentRequest request;
+
+    private ModelRouter router;
+
+    private ModelRouter.Route route;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = GeminiStubServer.start().withLatency(Duration.ZERO);
+        app = new SpringApplicationBuilder(GenAiApiApplication.class)
+                .properties(
+                        "server.port=0",
+                        "gemini.api.base-url=" + stub.baseUrl(),
+                        "gemini.api.key=benchmark")
+                .run();
+        geminiService = app.getBean(GeminiService.class);
+        request = app.getBean(GeminiRequestBuilder.class).text("Explain how a hash map handles collisions");
+        router = app.getBean(ModelRouter.class);
+        route = router.route(GeminiMetrics.Operation.GENERATE_TEXT, request);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        app.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public ModelRouter.Route route() {
+        return router.route(GeminiMetrics.Operation.GENERATE_TEXT, request);
+    }
+
+    @Benchmark
+    public GenerateContentResponse makeRequest() {
+        return geminiService.makeRequest(route, request);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.controller.GeminiController;
+import com.example.genaiapi.service.GeminiMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/*
+ * Times every GeminiController handler, from dispatch to the committed
+ * response, into gemini.endpoint.requests. The handler Method is the meter
+ * key, so no URI template or tag list is built per request.
+ */
+public class EndpointMetricsInterceptor implements HandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = EndpointMetricsInterceptor.class.getName() + ".start";
+
+    private final GeminiMetrics metrics;
+
+    public EndpointMetricsInterceptor(GeminiMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (isGeminiEndpoint(handler)) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        if (request.getAttribute(START_ATTRIBUTE) instanceof Long start && isGeminiEndpoint(handler)) {
+            // Exceptions resolved by GeminiExceptionHandler have set the status by now
+            int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+            metrics.recordEndpoint(((HandlerMethod) handler).getMethod(), status, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isGeminiEndpoint(Object handler) {
+        return handler instanceof HandlerMethod method && method.getBeanType() == GeminiController.class;
+    }
+}
@@ -3,6 +3,7 @@ package com.example.genaiapi.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 import lombok.Getter;
 
@@ -27,10 +28,20 @@ public class GeminiConfig {
     @Value("${gemini.api.base-url:https://generativelanguage.googleapis.com/v1beta}")
     private String baseUrl;
 
+    // Media uploads (File API) go to a separate /upload path on the same host
+    @Value("${gemini.api.upload-base-url:https://generativelanguage.googleapis.com/upload/v1beta}")
+    private String uploadBaseUrl;
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ClientHttpRequestFactory geminiRequestFactory) {
+        return new RestTemplate(geminiRequestFactory);
     }
+    /*
+     * The request factory comes from HttpClientConfig: a pooled keep-alive client
+     * with connect/read timeouts (or HTTP/2 multiplexing), so repeated
+     * GeminiService calls reuse warm TLS connections instead of handshaking each
+     * time.
+     */
 
     /*
      * What it does: The @Configuration class is a designated place for setting up
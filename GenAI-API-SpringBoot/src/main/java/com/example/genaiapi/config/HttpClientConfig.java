@@ -0,0 +1,173 @@
+package com.example.genaiapi.config;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import com.example.genaiapi.service.GeminiMetrics;
+import com.example.genaiapi.service.UpstreamTracing;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import lombok.Getter;
+
+@Configuration
+@Getter
+/*
+ * Owns the HTTP engine that sits underneath GeminiConfig.restTemplate().
+ *
+ * A plain new RestTemplate() uses SimpleClientHttpRequestFactory, which opens a
+ * fresh HttpURLConnection (and therefore a fresh TCP + TLS handshake) for most
+ * calls, has no timeouts and only speaks HTTP/1.1. Here we build either:
+ *
+ * - a pooled Apache HttpClient 5 (default): keep-alive connections are reused
+ * across GeminiService calls, bounded in total and per route, and idle or
+ * expired connections are evicted by a background thread, or
+ * - the JDK HttpClient in HTTP/2 mode (gemini.http.http2-enabled=true): all
+ * requests to the same host are multiplexed over a single connection, so there
+ * is no pool to size.
+ *
+ * The non-blocking WebClient used by ReactiveGeminiService runs on Reactor
+ * Netty's event loops instead. It gets its own connection provider because an
+ * in-flight reactive call holds a connection but no thread, so it is sized for
+ * thousands of concurrent generations rather than for the servlet pool.
+ */
+public class HttpClientConfig {
+
+    @Value("${gemini.http.max-total-connections:200}")
+    private int maxTotalConnections;
+
+    @Value("${gemini.http.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${gemini.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${gemini.http.read-timeout:120s}")
+    private Duration readTimeout;
+
+    /*
+     * How long a caller may wait for a pooled connection to become free before
+     * the request fails. This is the "pending" queue in the pool statistics.
+     */
+    @Value("${gemini.http.connection-request-timeout:10s}")
+    private Duration connectionRequestTimeout;
+
+    @Value("${gemini.http.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    @Value("${gemini.http.connection-ttl:5m}")
+    private Duration connectionTimeToLive;
+
+    @Value("${gemini.http.validate-after-inactivity:2s}")
+    private Duration validateAfterInactivity;
+
+    @Value("${gemini.http.http2-enabled:false}")
+    private boolean http2Enabled;
+
+    @Value("${gemini.reactive.max-connections:1000}")
+    private int reactiveMaxConnections;
+
+    @Value("${gemini.reactive.pending-acquire-max-count:10000}")
+    private int reactivePendingAcquireMaxCount;
+
+    // Upper bound for a single buffered response body (large JSON completions)
+    @Value("${gemini.reactive.max-in-memory-size:16777216}")
+    private int reactiveMaxInMemorySize;
+
+    @Bean
+    public PoolingHttpClientConnectionManager geminiConnectionManager(UpstreamTracing upstreamTracing) {
+        PoolingHttpClientConnectionManager connectionManager = new TracingConnectionManager(upstreamTracing);
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setTimeToLive(TimeValue.of(connectionTimeToLive))
+                .setValidateAfterInactivity(TimeValue.of(validateAfterInactivity))
+                .build());
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(true)
+                .setSoKeepAlive(true)
+                .build());
+        return connectionManager;
+    }
+
+    @Bean
+    public CloseableHttpClient geminiHttpClient(PoolingHttpClientConnectionManager geminiConnectionManager,
+            GeminiMetrics geminiMetrics, UpstreamTracing upstreamTracing) {
+        return HttpClients.custom()
+                .setConnectionManager(geminiConnectionManager)
+                .addExecInterceptorFirst("body-size-metrics", new UpstreamBodySizeInterceptor(geminiMetrics))
+                // "Last" runs just before the transport, once the connection is leased and open
+                .addExecInterceptorLast("tracing", new UpstreamTracingInterceptor(upstreamTracing))
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.of(idleEviction))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public ClientHttpRequestFactory geminiRequestFactory(CloseableHttpClient geminiHttpClient) {
+        if (http2Enabled) {
+            HttpClient http2Client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(http2Client);
+            factory.setReadTimeout(readTimeout);
+            return factory;
+        }
+        return new HttpComponentsClientHttpRequestFactory(geminiHttpClient);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiReactiveConnectionProvider() {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(reactiveMaxConnections)
+                .pendingAcquireMaxCount(reactivePendingAcquireMaxCount)
+                .pendingAcquireTimeout(connectionRequestTimeout)
+                .maxIdleTime(idleEviction)
+                .maxLifeTime(connectionTimeToLive)
+                .evictInBackground(idleEviction)
+                // reactor.netty.connection.provider.* gauges, via Micrometer's global registry
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient geminiWebClient(WebClient.Builder webClientBuilder,
+            ConnectionProvider geminiReactiveConnectionProvider) {
+        reactor.netty.http.client.HttpClient nettyClient = reactor.netty.http.client.HttpClient
+                .create(geminiReactiveConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        if (http2Enabled) {
+            nettyClient = nettyClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(nettyClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(reactiveMaxInMemorySize))
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.service.GeminiMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.function.ToIntFunction;
+
+/*
+ * Wires GeminiMetrics (and the endpoint pattern the usage ledger keys on)
+ * into the web layer and exposes the upstream connection pool as gauges.
+ *
+ * metrics.properties exposes /actuator/prometheus and turns on Prometheus
+ * histogram buckets for the gemini.* timers; application.properties
+ * overrides any of it.
+ *
+ * Gauges are read at scrape time, so the pool's lock is taken once per scrape
+ * rather than per request.
+ */
+@Configuration
+@PropertySource("classpath:metrics.properties")
+public class MetricsConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private GeminiMetrics geminiMetrics;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestEndpointInterceptor()).addPathPatterns("/api/gemini/**");
+        registry.addInterceptor(new EndpointMetricsInterceptor(geminiMetrics)).addPathPatterns("/api/gemini/**");
+    }
+
+    @Bean
+    public MeterBinder geminiConnectionPoolMetrics(PoolingHttpClientConnectionManager geminiConnectionManager) {
+        return registry -> {
+            poolGauge(registry, geminiConnectionManager, "leased", PoolStats::getLeased);
+            poolGauge(registry, geminiConnectionManager, "pending", PoolStats::getPending);
+            poolGauge(registry, geminiConnectionManager, "available", PoolStats::getAvailable);
+            poolGauge(registry, geminiConnectionManager, "max", PoolStats::getMax);
+        };
+    }
+
+    private static void poolGauge(MeterRegistry registry, PoolingHttpClientConnectionManager connectionManager,
+            String state, ToIntFunction<PoolStats> value) {
+        Gauge.builder("gemini.http.pool.connections", connectionManager,
+                manager -> value.applyAsInt(manager.getTotalStats()))
+                .description("Upstream HttpClient connection pool")
+                .tag("state", state)
+                .register(registry);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.service.GeminiRequestContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/*
+ * Fills RequestOptions.endpoint with the matched handler pattern (e.g.
+ * /api/gemini/sessions/{id}/messages) rather than the raw path, so usage
+ * ledger keys and routing rules see one endpoint per handler, not one per
+ * session id. RequestOptionsFilter runs before handler mapping and cannot know
+ * the pattern; it still clears the options after the request.
+ */
+public class RequestEndpointInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE) instanceof String pattern) {
+            GeminiRequestContext.set(GeminiRequestContext.current().toBuilder().endpoint(pattern).build());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.model.RequestOptions;
+import com.example.genaiapi.service.GeminiRequestContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+@Component
+/*
+ * Translates the X-Gemini-* request headers into RequestOptions for the
+ * duration of the request and always clears them afterwards, so a pooled
+ * thread never leaks one request's options into the next.
+ */
+public class RequestOptionsFilter extends OncePerRequestFilter {
+
+    public static final String CACHE_HEADER = "X-Gemini-Cache";
+
+    public static final String PRIORITY_HEADER = "X-Gemini-Priority";
+
+    public static final String MAX_WAIT_HEADER = "X-Gemini-Max-Wait-Ms";
+
+    public static final String CLIENT_HEADER = "X-Api-Client";
+
+    public static final String TIER_HEADER = "X-Gemini-Tier";
+
+    // Client ids longer than this are cut, so one caller cannot bloat the usage ledger
+    private static final int MAX_CLIENT_ID_LENGTH = 64;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+        RequestOptions options = RequestOptions.builder()
+                .cacheMode(RequestOptions.CacheMode.fromHeader(request.getHeader(CACHE_HEADER)))
+                .priority(RequestOptions.Priority.fromHeader(request.getHeader(PRIORITY_HEADER)))
+                .maxQueueWait(parseMillis(request.getHeader(MAX_WAIT_HEADER)))
+                .clientId(parseClientId(request.getHeader(CLIENT_HEADER)))
+                .tier(parseTier(request.getHeader(TIER_HEADER)))
+                .build();
+        GeminiRequestContext.set(options);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            GeminiRequestContext.clear();
+        }
+    }
+
+    private static String parseClientId(String value) {
+        if (value == null || value.isBlank()) {
+            return RequestOptions.ANONYMOUS_CLIENT;
+        }
+        String clientId = value.trim();
+        return clientId.length() > MAX_CLIENT_ID_LENGTH ? clientId.substring(0, MAX_CLIENT_ID_LENGTH) : clientId;
+    }
+
+    private static String parseTier(String value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (value.trim().toLowerCase()) {
+            case "fast", "standard", "strong" -> value.trim().toLowerCase();
+            default -> null;
+        };
+    }
+
+    private static Duration parseMillis(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.genaiapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+
+/*
+ * gemini.routing.*: which model serves which request (see ModelRouter).
+ * Nested lists and maps need @ConfigurationProperties binding; a flat
+ * @Value cannot express them. Model names contain dots, so map keys go in
+ * brackets. For example:
+ *
+ * gemini.routing.enabled=true
+ * gemini.routing.tiers.fast=gemini-2.0-flash-lite,gemini-2.0-flash
+ * gemini.routing.rules[0].endpoint=/api/gemini/code-execution
+ * gemini.routing.rules[0].tier=strong
+ * gemini.routing.canaries[0].model=gemini-2.0-flash
+ * gemini.routing.canaries[0].canary=gemini-2.5-flash
+ * gemini.routing.canaries[0].weight=0.05
+ * gemini.routing.fallbacks[gemini-2.5-pro]=gemini-2.0-flash
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gemini.routing")
+@Data
+public class RoutingProperties {
+
+    // Off: every request goes to default-model, as before routing existed
+    private boolean enabled = false;
+
+    private String defaultModel = "gemini-2.0-flash";
+
+    // Prompts up to this many estimated tokens go to the fast tier
+    private long shortPromptTokens = 400;
+
+    // Prompts from this many estimated tokens on go to the strong tier
+    private long heavyPromptTokens = 6000;
+
+    /*
+     * Candidate models per tier (fast, standard, strong). The healthy
+     * candidate with the lowest observed latency wins; order breaks ties and
+     * decides while there are no observations yet.
+     */
+    private Map<String, List<String>> tiers = new LinkedHashMap<>(Map.of(
+            "fast", List.of("gemini-2.0-flash-lite", "gemini-2.0-flash"),
+            "standard", List.of("gemini-2.0-flash"),
+            "strong", List.of("gemini-2.5-pro")));
+
+    // Share of a tier's traffic sent to a random healthy candidate rather than the fastest
+    private double exploreFraction = 0.05;
+
+    /*
+     * Checked in order before the prompt-length defaults; the first match
+     * decides. Code execution is kept off the fast tier by default: its
+     * prompts are short, but gemini-2.0-flash-lite has no code-execution
+     * tool, and the 400 it answers with is not a model failure, so nothing
+     * would fail over. Setting gemini.routing.rules replaces this default.
+     */
+    private List<Rule> rules = new ArrayList<>(List.of(Rule.forOperation("codeExecution", "standard")));
+
+    private List<Canary> canaries = new ArrayList<>();
+
+    // Model to use instead when a model is unhealthy or a call to it fails
+    private Map<String, String> fallbacks = new LinkedHashMap<>(Map.of(
+            "gemini-2.5-pro", "gemini-2.0-flash",
+            "gemini-2.0-flash", "gemini-2.0-flash-lite",
+            "gemini-2.0-flash-lite", "gemini-2.0-flash"));
+
+    // Retry a call that failed on a model error once on the fallback model
+    private boolean failoverOnError = true;
+
+    private Health health = new Health();
+
+    @Data
+    public static class Rule {
+        // Handler pattern, e.g. /api/gemini/code-execution or /api/gemini/sessions/{id}/messages
+        private String endpoint;
+
+        // GeminiService operation tag, e.g. codeExecution
+        private String operation;
+
+        private Long minPromptTokens;
+
+        private Long maxPromptTokens;
+
+        // Either a tier or a model; model wins when both are set
+        private String tier;
+
+        private String model;
+
+        static Rule forOperation(String operation, String tier) {
+            Rule rule = new Rule();
+            rule.setOperation(operation);
+            rule.setTier(tier);
+            return rule;
+        }
+    }
+
+    @Data
+    public static class Canary {
+        private String model;
+
+        private String canary;
+
+        // Fraction of the model's traffic sent to the canary, 0..1
+        private double weight;
+    }
+
+    @Data
+    public static class Health {
+        // Smoothing factor of the error-rate and latency moving averages
+        private double alpha = 0.1;
+
+        private long minSamples = 20;
+
+        // Error-rate average above which a model is taken out of rotation
+        private double maxErrorRate = 0.5;
+
+        // Latency average above which a model is taken out of rotation
+        private Duration maxLatency = Duration.ofSeconds(30);
+
+        // How long a degraded model stays out before it is tried again
+        private Duration cooldown = Duration.ofSeconds(30);
+    }
+}
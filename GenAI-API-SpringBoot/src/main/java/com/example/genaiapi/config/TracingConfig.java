@@ -0,0 +1,37 @@
+package com.example.genaiapi.config;
+
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+@PropertySource("classpath:tracing.properties")
+/*
+ * Tracing defaults and exporters. The tracer itself, W3C propagation and the
+ * server span continuing an incoming traceparent come from the actuator
+ * auto-configuration (micrometer-tracing-bridge-otel); this adds:
+ *
+ * - tracing.properties: a low default sampling probability, since the phase
+ * spans are only created for sampled requests
+ * - an OTLP export to a local collector when management.otlp.tracing.endpoint
+ * is set (auto-configured), and/or
+ * - FileSpanExporter when gemini.tracing.file.enabled=true
+ *
+ * Every SpanExporter bean is picked up by the auto-configured batch span
+ * processor.
+ */
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "gemini.tracing.file.enabled", havingValue = "true")
+    public SpanExporter fileSpanExporter(@Value("${gemini.tracing.file.path:logs/spans.ndjson}") String path)
+            throws IOException {
+        return new FileSpanExporter(Path.of(path));
+    }
+}
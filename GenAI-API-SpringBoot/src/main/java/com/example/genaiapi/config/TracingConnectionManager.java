@@ -0,0 +1,116 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.service.UpstreamTracing;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.HttpsSupport;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * The upstream connection pool, with spans for the connection phases of a
+ * sampled request: http.connection.acquire (waiting for a lease),
+ * http.connect (opening a new connection) and, nested in it,
+ * tls.handshake. Requests that reuse a warm connection only show the
+ * acquire span. Unsampled requests take the plain code paths.
+ */
+public class TracingConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final UpstreamTracing tracing;
+
+    public TracingConnectionManager(UpstreamTracing tracing) {
+        super(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new TracingSslSocketFactory(tracing))
+                .build());
+        this.tracing = tracing;
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+        LeaseRequest lease = super.lease(id, route, requestTimeout, state);
+        if (!tracing.isRecording()) {
+            return lease;
+        }
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(Timeout timeout)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                Span span = tracing.startPhase("http.connection.acquire");
+                try {
+                    return lease.get(timeout);
+                } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                    span.error(e);
+                    throw e;
+                } finally {
+                    span.end();
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return lease.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void connect(ConnectionEndpoint endpoint, TimeValue timeout, HttpContext context) throws IOException {
+        if (!tracing.isRecording()) {
+            super.connect(endpoint, timeout, context);
+            return;
+        }
+        Span span = tracing.startPhase("http.connect");
+        try (Tracer.SpanInScope ignored = tracing.inScope(span)) {
+            super.connect(endpoint, timeout, context);
+        } catch (IOException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    // The default HTTPS socket factory, with the handshake in its own span
+    private static final class TracingSslSocketFactory extends SSLConnectionSocketFactory {
+
+        private final UpstreamTracing tracing;
+
+        TracingSslSocketFactory(UpstreamTracing tracing) {
+            super(SSLContexts.createDefault(), HttpsSupport.getDefaultHostnameVerifier());
+            this.tracing = tracing;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, Object attachment,
+                HttpContext context) throws IOException {
+            if (!tracing.isRecording()) {
+                return super.createLayeredSocket(socket, target, port, attachment, context);
+            }
+            Span span = tracing.startPhase("tls.handshake").tag("server.address", target);
+            try {
+                return super.createLayeredSocket(socket, target, port, attachment, context);
+            } catch (IOException e) {
+                span.error(e);
+                throw e;
+            } finally {
+                span.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.service.GeminiMetrics;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/*
+ * Counts upstream request and response body bytes as they pass through the
+ * pooled HttpClient, for gemini.upstream.request.size / response.size.
+ *
+ * This sits in HttpClient's exec chain rather than in a RestTemplate
+ * ClientHttpRequestInterceptor because those make RestTemplate buffer the
+ * whole request body, which would undo the streamed image uploads. Here the
+ * entities are only wrapped: bytes are counted while they are written to or
+ * read from the socket, and the total is recorded once the body is done.
+ */
+public class UpstreamBodySizeInterceptor implements ExecChainHandler {
+
+    private final GeminiMetrics metrics;
+
+    public UpstreamBodySizeInterceptor(GeminiMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        HttpEntity requestEntity = request.getEntity();
+        if (requestEntity != null) {
+            request.setEntity(new CountingEntity(requestEntity, metrics::recordRequestBytes));
+        }
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        HttpEntity responseEntity = response.getEntity();
+        if (responseEntity != null) {
+            response.setEntity(new CountingEntity(responseEntity, metrics::recordResponseBytes));
+        }
+        return response;
+    }
+
+    private static final class CountingEntity extends HttpEntityWrapper {
+
+        private final LongConsumer recorder;
+
+        CountingEntity(HttpEntity entity, LongConsumer recorder) {
+            super(entity);
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            super.writeTo(counting);
+            recorder.accept(counting.count);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new CountingInputStream(super.getContent(), recorder);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final LongConsumer recorder;
+
+        private long count;
+
+        private boolean recorded;
+
+        CountingInputStream(InputStream in, LongConsumer recorder) {
+            super(in);
+            this.recorder = recorder;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            } else {
+                record();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            } else if (n < 0) {
+                record();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            in.close();
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                recorder.accept(count);
+            }
+        }
+    }
+}
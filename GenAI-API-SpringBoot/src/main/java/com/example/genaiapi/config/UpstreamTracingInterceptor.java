@@ -0,0 +1,150 @@
+package com.example.genaiapi.config;
+
+import com.example.genaiapi.service.UpstreamTracing;
+import io.micrometer.tracing.Span;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * Exchange-level spans of a sampled upstream request, registered as the last
+ * interceptor before HttpClient's transport (so the connection is already
+ * leased and open):
+ *
+ * - http.request.write: the request entity being written; RestTemplate
+ * streams the Jackson output straight onto the socket, so this is JSON
+ * serialization and sending together
+ * - http.response.wait: from the last request byte to the response head,
+ * i.e. upstream time to first byte
+ * - http.response.read: from the first read of the body to its end, i.e.
+ * transfer and JSON parsing
+ *
+ * It also writes the W3C traceparent onto the outgoing request so a gateway
+ * in front of the model can join the trace.
+ */
+public class UpstreamTracingInterceptor implements ExecChainHandler {
+
+    private final UpstreamTracing tracing;
+
+    public UpstreamTracingInterceptor(UpstreamTracing tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        if (!tracing.isRecording()) {
+            return chain.proceed(request, scope);
+        }
+        tracing.inject(request::setHeader);
+
+        Exchange exchange = new Exchange();
+        if (request.getEntity() != null) {
+            request.setEntity(new WriteTracingEntity(request.getEntity(), exchange));
+        } else {
+            exchange.waitSpan = tracing.startPhase("http.response.wait");
+        }
+
+        ClassicHttpResponse response;
+        try {
+            response = chain.proceed(request, scope);
+        } catch (IOException | HttpException | RuntimeException e) {
+            if (exchange.waitSpan != null) {
+                exchange.waitSpan.error(e);
+                exchange.waitSpan.end();
+            }
+            throw e;
+        }
+        if (exchange.waitSpan != null) {
+            exchange.waitSpan.tag("http.status_code", Integer.toString(response.getCode()));
+            exchange.waitSpan.end();
+        }
+        if (response.getEntity() != null) {
+            response.setEntity(new ReadTracingEntity(response.getEntity()));
+        }
+        return response;
+    }
+
+    private static final class Exchange {
+        Span waitSpan;
+    }
+
+    private final class WriteTracingEntity extends HttpEntityWrapper {
+
+        private final Exchange exchange;
+
+        WriteTracingEntity(HttpEntity entity, Exchange exchange) {
+            super(entity);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            Span span = tracing.startPhase("http.request.write");
+            try {
+                super.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                span.error(e);
+                throw e;
+            } finally {
+                span.end();
+            }
+            exchange.waitSpan = tracing.startPhase("http.response.wait");
+        }
+    }
+
+    private final class ReadTracingEntity extends HttpEntityWrapper {
+
+        ReadTracingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            Span span = tracing.startPhase("http.response.read");
+            return new FilterInputStream(super.getContent()) {
+                private boolean ended;
+
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b < 0) {
+                        end();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    if (n < 0) {
+                        end();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    end();
+                    in.close();
+                }
+
+                private void end() {
+                    if (!ended) {
+                        ended = true;
+                        span.end();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.genaiapi.config;
+
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "gemini.virtual-threads.enabled", havingValue = "true")
+/*
+ * Opt-in: run every Tomcat request (and therefore every GeminiController
+ * handler and the GeminiService.makeRequest call it makes) on its own virtual
+ * thread instead of a pooled platform thread.
+ *
+ * A request waiting several seconds for the model then only parks a cheap
+ * virtual thread, so concurrency is no longer capped by
+ * server.tomcat.threads.max. What caps it instead is UpstreamConcurrencyLimiter,
+ * which in this mode bounds the number of simultaneous upstream calls with a
+ * semaphore (gemini.upstream.max-concurrent-requests).
+ */
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.genaiapi.controller;
+
+import com.example.genaiapi.model.ConnectionPoolStats;
+import com.example.genaiapi.service.ConnectionPoolMonitor;
+import com.example.genaiapi.service.ContextCacheManager;
+import com.example.genaiapi.service.ContextWindowManager;
+import com.example.genaiapi.service.FileReferenceCache;
+import com.example.genaiapi.service.ImagePreprocessor;
+import com.example.genaiapi.service.MicroBatcher;
+import com.example.genaiapi.service.ModelRouter;
+import com.example.genaiapi.service.RequestCoalescer;
+import com.example.genaiapi.service.ResponseCache;
+import com.example.genaiapi.service.SemanticResponseCache;
+import com.example.genaiapi.service.SessionStore;
+import com.example.genaiapi.service.UpstreamPool;
+import com.example.genaiapi.service.UpstreamRateLimiter;
+import com.example.genaiapi.service.UpstreamResilience;
+import com.example.genaiapi.service.UsageLedger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+/*
+ * Operational endpoints (pool sizing and friends). These are not part of the
+ * public Gemini proxy API, so no @CrossOrigin here.
+ */
+public class AdminController {
+    @Autowired
+    private ConnectionPoolMonitor connectionPoolMonitor;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private SemanticResponseCache semanticResponseCache;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private MicroBatcher microBatcher;
+
+    @Autowired
+    private UpstreamRateLimiter upstreamRateLimiter;
+
+    @Autowired
+    private UpstreamResilience upstreamResilience;
+
+    @Autowired
+    private ImagePreprocessor imagePreprocessor;
+
+    @Autowired
+    private FileReferenceCache fileReferenceCache;
+
+    @Autowired
+    private UsageLedger usageLedger;
+
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private ContextWindowManager contextWindowManager;
+
+    @Autowired
+    private ContextCacheManager contextCacheManager;
+
+    @Autowired
+    private ModelRouter modelRouter;
+
+    @Autowired
+    private UpstreamPool upstreamPool;
+
+    @GetMapping("/connection-pool")
+    public ResponseEntity<ConnectionPoolStats> connectionPool() {
+        return ResponseEntity.ok(connectionPoolMonitor.snapshot());
+    }
+
+    @GetMapping("/response-cache")
+    public ResponseEntity<Map<String, Object>> responseCache() {
+        return ResponseEntity.ok(responseCache.stats());
+    }
+
+    @DeleteMapping("/response-cache")
+    public ResponseEntity<Void> clearResponseCache() {
+        responseCache.invalidateAll();
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/semantic-cache")
+    public ResponseEntity<Map<String, Object>> semanticCache() {
+        return ResponseEntity.ok(semanticResponseCache.stats());
+    }
+
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, Object>> coalescing() {
+        return ResponseEntity.ok(requestCoalescer.stats());
+    }
+
+    @GetMapping("/micro-batching")
+    public ResponseEntity<Map<String, Object>> microBatching() {
+        return ResponseEntity.ok(microBatcher.stats());
+    }
+
+    @GetMapping("/rate-limiter")
+    public ResponseEntity<Map<String, Object>> rateLimiter() {
+        return ResponseEntity.ok(upstreamRateLimiter.stats());
+    }
+
+    @GetMapping("/resilience")
+    public ResponseEntity<Map<String, Object>> resilience() {
+        return ResponseEntity.ok(upstreamResilience.stats());
+    }
+
+    @GetMapping("/image-preprocessing")
+    public ResponseEntity<Map<String, Object>> imagePreprocessing() {
+        return ResponseEntity.ok(imagePreprocessor.stats());
+    }
+
+    @GetMapping("/file-references")
+    public ResponseEntity<Map<String, Object>> fileReferences() {
+        return ResponseEntity.ok(fileReferenceCache.stats());
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> sessions() {
+        return ResponseEntity.ok(sessionStore.stats());
+    }
+
+    @GetMapping("/context-window")
+    public ResponseEntity<Map<String, Object>> contextWindow() {
+        return ResponseEntity.ok(contextWindowManager.stats());
+    }
+
+    @GetMapping("/context-cache")
+    public ResponseEntity<Map<String, Object>> contextCache() {
+        return ResponseEntity.ok(contextCacheManager.stats());
+    }
+
+    @GetMapping("/routing")
+    public ResponseEntity<Map<String, Object>> routing() {
+        return ResponseEntity.ok(modelRouter.stats());
+    }
+
+    @GetMapping("/upstreams")
+    public ResponseEntity<Map<String, Object>> upstreams() {
+        return ResponseEntity.ok(upstreamPool.stats());
+    }
+
+    // Re-reads gemini.upstreams.file now instead of at the next change check
+    @PostMapping("/upstreams/reload")
+    public ResponseEntity<Map<String, Object>> reloadUpstreams() {
+        try {
+            upstreamPool.reload();
+            return ResponseEntity.ok(upstreamPool.stats());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /*
+     * Token usage, e.g. /api/admin/usage?groupBy=client,model&limit=10 for the
+     * ten heaviest client/model pairs.
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<Map<String, Object>> usage(
+            @RequestParam(defaultValue = "client") List<String> groupBy,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(usageLedger.query(groupBy, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.genaiapi.controller;
+
+import com.example.genaiapi.model.BatchGenerateRequest;
+import com.example.genaiapi.model.BatchGenerateResult;
+import com.example.genaiapi.model.RequestOptions;
+import com.example.genaiapi.service.GeminiRequestContext;
+import com.example.genaiapi.service.GeminiService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+@RestController
+@RequestMapping("/api/gemini")
+@CrossOrigin(origins = "*")
+/*
+ * Many prompts in one HTTP request.
+ *
+ * Prompts go through GeminiService, each on its own virtual thread, with at
+ * most gemini.batch-endpoint.max-concurrency in flight per batch. That way
+ * they take the same path as the single-prompt endpoints: response cache,
+ * RPM/TPM quota, resilience policies, metrics and the usage ledger (charged to
+ * the caller, whose RequestOptions are carried onto each thread). Each result
+ * is written
+ * as one NDJSON line as soon as it completes (completion order, not request
+ * order). Spring MVC writes and flushes every line before requesting the next
+ * one, so a finished result is only referenced until it is on the wire.
+ *
+ * A failing prompt becomes an error line; it does not abort the batch.
+ */
+public class BatchGenerationController {
+    @Autowired
+    private GeminiService geminiService;
+
+    @Value("${gemini.batch-endpoint.max-concurrency:16}")
+    private int maxConcurrency;
+
+    @Value("${gemini.batch-endpoint.max-prompts:1000}")
+    private int maxPrompts;
+
+    // Blocking GeminiService calls park a virtual thread, never an event loop
+    private final Scheduler batchScheduler = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("gemini-batch-", 0).factory()), "gemini-batch");
+
+    @PreDestroy
+    void stop() {
+        batchScheduler.dispose();
+    }
+
+    @PostMapping(path = "/generate-batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchGenerateResult> generateBatch(@RequestBody BatchGenerateRequest request) {
+        List<BatchGenerateRequest.Item> prompts = request.getPrompts();
+        if (prompts == null || prompts.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "prompts must not be empty");
+        }
+        if (prompts.size() > maxPrompts) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "At most " + maxPrompts + " prompts per batch");
+        }
+
+        RequestOptions options = GeminiRequestContext.current();
+        return Flux.range(0, prompts.size())
+                .flatMap(index -> generate(index, prompts.get(index), options), maxConcurrency);
+    }
+
+    private Mono<BatchGenerateResult> generate(int index, BatchGenerateRequest.Item item, RequestOptions options) {
+        return Mono.fromCallable(() -> {
+                    GeminiRequestContext.set(options);
+                    try {
+                        return geminiService.generateTextWithConfig(item.getPrompt(), item.getGenerationConfig());
+                    } finally {
+                        GeminiRequestContext.clear();
+                    }
+                })
+                .subscribeOn(batchScheduler)
+                .map(response -> new BatchGenerateResult(index, item.getId(), response, null, null))
+                .onErrorResume(e -> {
+                    int status = statusOf(e);
+                    return Mono.just(new BatchGenerateResult(index, item.getId(), null, errorOf(e, status), status));
+                });
+    }
+
+    /*
+     * Exception messages carry upstream URIs and response bodies, so callers
+     * get a fixed message per status instead, as GeminiExceptionHandler does.
+     */
+    private static String errorOf(Throwable e, int status) {
+        if (e instanceof HttpStatusCodeException) {
+            return "Upstream request failed";
+        }
+        HttpStatus known = HttpStatus.resolve(status);
+        return known != null ? known.getReasonPhrase() : "Request failed";
+    }
+
+    private static int statusOf(Throwable e) {
+        if (e instanceof HttpStatusCodeException upstream) {
+            return upstream.getStatusCode().value();
+        }
+        if (e instanceof ResponseStatusException local) {
+            // Quota deadline (429), open circuit (503) and the like
+            return local.getStatusCode().value();
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR.value();
+    }
+}
@@ -2,13 +2,13 @@ package com.example.genaiapi.controller;
 
 import com.example.genaiapi.model.GenerateContentResponse;
 import com.example.genaiapi.service.GeminiService;
+import com.example.genaiapi.service.ImagePreprocessor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.net.http.HttpResponse.ResponseInfo;
-import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
@@ -20,9 +20,16 @@ import java.util.Map;
  * browsers to make requests to your API from any domain
  */
 public class GeminiController {
+    static final String IMAGE_BYTES_SAVED_HEADER = "X-Image-Bytes-Saved";
+
+    static final String IMAGE_PREPROCESSING_HEADER = "X-Image-Preprocessing-Ms";
+
     @Autowired 
     private GeminiService geminiService;
 
+    @Autowired
+    private ImagePreprocessor imagePreprocessor;
+
     @PostMapping("/generate-text")
     public ResponseEntity<GenerateContentResponse> generateText(@RequestBody Map<String, String> request) {
         String prompt = request.get("prompt");
@@ -89,13 +96,20 @@ public class GeminiController {
     public ResponseEntity<GenerateContentResponse> analyzeImage(
             @RequestParam("prompt") String prompt,
             @RequestParam("image") MultipartFile imageFile) {
+        // Downscaled and re-encoded first when the upload is large; outside the
+        // try so a saturated preprocessing pool surfaces as 503, not 400
+        ImagePreprocessor.ProcessedImage image = imagePreprocessor.process(imageFile, imageFile.getSize(),
+                imageFile.getContentType());
         try {
-            byte[] imageBytes = imageFile.getBytes();
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            String mimeType = imageFile.getContentType();
-
-            GenerateContentResponse response = geminiService.analyzeImage(prompt, base64Image, mimeType);
-            return ResponseEntity.ok(response);
+            // The image is base64-encoded straight from its source into the
+            // upstream request body (see InlineDataSerializer), rather than via
+            // getBytes() and a base64 String
+            GenerateContentResponse response = geminiService.analyzeImage(prompt, image.source(), image.size(),
+                    image.mimeType());
+            return ResponseEntity.ok()
+                    .header(IMAGE_BYTES_SAVED_HEADER, Long.toString(image.bytesSaved()))
+                    .header(IMAGE_PREPROCESSING_HEADER, Long.toString(image.processingTime().toMillis()))
+                    .body(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
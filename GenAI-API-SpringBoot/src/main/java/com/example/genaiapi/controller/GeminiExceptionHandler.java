@@ -0,0 +1,46 @@
+package com.example.genaiapi.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.Map;
+
+@RestControllerAdvice
+/*
+ * Maps upstream HTTP errors raised by RestTemplate to meaningful statuses.
+ * Without this every HttpStatusCodeException became a 500, so a client that
+ * hit the Gemini quota could not tell it apart from a bug in this service.
+ *
+ * - 429 stays 429 and keeps the upstream Retry-After header
+ * - 401/403 become 502: they mean this service's API key is wrong or lacks
+ *   access, which is our misconfiguration, not the client's credentials
+ * - other 4xx keep their status (the request itself was rejected), including
+ *   codes outside the HttpStatus enum
+ * - 5xx become 502, since this service is acting as a gateway
+ */
+public class GeminiExceptionHandler {
+
+    @ExceptionHandler(HttpStatusCodeException.class)
+    public ResponseEntity<Map<String, Object>> upstreamError(HttpStatusCodeException e) {
+        int upstreamStatus = e.getStatusCode().value();
+        HttpStatusCode status = e.getStatusCode().is5xxServerError()
+                || upstreamStatus == HttpStatus.UNAUTHORIZED.value()
+                || upstreamStatus == HttpStatus.FORBIDDEN.value()
+                ? HttpStatus.BAD_GATEWAY
+                : HttpStatusCode.valueOf(upstreamStatus);
+
+        HttpHeaders headers = new HttpHeaders();
+        HttpHeaders upstreamHeaders = e.getResponseHeaders();
+        if (upstreamHeaders != null && upstreamHeaders.getFirst(HttpHeaders.RETRY_AFTER) != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, upstreamHeaders.getFirst(HttpHeaders.RETRY_AFTER));
+        }
+        return ResponseEntity.status(status)
+                .headers(headers)
+                .body(Map.of("error", "Upstream request failed", "upstreamStatus", upstreamStatus));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.genaiapi.controller;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.service.ImagePreprocessor;
+import com.example.genaiapi.service.ReactiveGeminiService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/gemini/reactive")
+@CrossOrigin(origins = "*")
+/*
+ * Same endpoints as GeminiController, but each handler returns a Mono. Spring
+ * MVC treats that as an async result: the servlet thread is released as soon as
+ * the handler returns and the response is written when the Mono completes, so
+ * in-flight generations are bounded by connections, not by Tomcat threads.
+ */
+public class ReactiveGeminiController {
+    @Autowired
+    private ReactiveGeminiService reactiveGeminiService;
+
+    @Autowired
+    private ImagePreprocessor imagePreprocessor;
+
+    @PostMapping("/generate-text")
+    public Mono<ResponseEntity<GenerateContentResponse>> generateText(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return reactiveGeminiService.generateText(prompt).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/generate-with-system-instruction")
+    public Mono<ResponseEntity<GenerateContentResponse>> generateWithSystemInstruction(
+            @RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        String systemInstruction = request.get("systemInstruction");
+        return reactiveGeminiService.generateTextWithSystemInstruction(prompt, systemInstruction)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/generate-with-config")
+    public Mono<ResponseEntity<GenerateContentResponse>> generateWithConfig(
+            @RequestBody Map<String, Object> request) {
+        String prompt = (String) request.get("prompt");
+        Double temperature = request.get("temperature") != null ? Double.valueOf(request.get("temperature").toString())
+                : null;
+        Integer maxTokens = request.get("maxTokens") != null ? Integer.valueOf(request.get("maxTokens").toString())
+                : null;
+        Double topP = request.get("topP") != null ? Double.valueOf(request.get("topP").toString()) : null;
+        Integer topK = request.get("topK") != null ? Integer.valueOf(request.get("topK").toString()) : null;
+
+        return reactiveGeminiService.generateTextWithConfig(prompt, temperature, maxTokens, topP, topK)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/generate-structured-json")
+    public Mono<ResponseEntity<GenerateContentResponse>> generateStructuredJson(
+            @RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return reactiveGeminiService.generateStructuredJson(prompt).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/function-calling")
+    public Mono<ResponseEntity<GenerateContentResponse>> functionCalling(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return reactiveGeminiService.functionCalling(prompt).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/code-execution")
+    public Mono<ResponseEntity<GenerateContentResponse>> codeExecution(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return reactiveGeminiService.codeExecution(prompt).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/multi-turn-conversation")
+    public Mono<ResponseEntity<GenerateContentResponse>> multiTurnConversation(
+            @RequestBody Map<String, List<Map<String, String>>> request) {
+        List<Map<String, String>> conversationHistory = request.get("conversation");
+        return reactiveGeminiService.multiTurnConversation(conversationHistory).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/analyze-image")
+    public Mono<ResponseEntity<GenerateContentResponse>> analyzeImage(
+            @RequestParam("prompt") String prompt,
+            @RequestParam("image") MultipartFile imageFile) {
+        // Same preprocessing as the blocking endpoint; it runs here on the
+        // servlet thread, before the multipart temp file goes away
+        ImagePreprocessor.ProcessedImage image = imagePreprocessor.process(imageFile, imageFile.getSize(),
+                imageFile.getContentType());
+        try {
+            byte[] imageBytes;
+            try (InputStream in = image.source().getInputStream()) {
+                imageBytes = in.readAllBytes();
+            }
+            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+
+            return reactiveGeminiService.analyzeImage(prompt, base64Image, image.mimeType())
+                    .map(response -> ResponseEntity.ok()
+                            .header(GeminiController.IMAGE_BYTES_SAVED_HEADER, Long.toString(image.bytesSaved()))
+                            .header(GeminiController.IMAGE_PREPROCESSING_HEADER,
+                                    Long.toString(image.processingTime().toMillis()))
+                            .body(response));
+        } catch (Exception e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.genaiapi.controller;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.SessionInfo;
+import com.example.genaiapi.service.SessionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/gemini/sessions")
+@CrossOrigin(origins = "*")
+/*
+ * Server-side conversations: POST /sessions once, then POST only the new
+ * user turn as {"text": "..."} to /sessions/{id}/messages.
+ */
+public class SessionController {
+
+    @Autowired
+    private SessionService sessionService;
+
+    @PostMapping
+    public ResponseEntity<SessionInfo> create() {
+        return ResponseEntity.status(HttpStatus.CREATED).body(sessionService.create());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<SessionInfo> info(@PathVariable String id) {
+        return ResponseEntity.ok(sessionService.info(id));
+    }
+
+    @PostMapping("/{id}/messages")
+    public ResponseEntity<GenerateContentResponse> sendMessage(@PathVariable String id,
+            @RequestBody Map<String, String> request) {
+        return ResponseEntity.ok(sessionService.sendMessage(id, request.get("text")));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> delete(@PathVariable String id) {
+        return sessionService.delete(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
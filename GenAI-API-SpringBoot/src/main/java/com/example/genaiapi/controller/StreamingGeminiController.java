@@ -0,0 +1,100 @@
+package com.example.genaiapi.controller;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.service.ReactiveGeminiService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/gemini")
+@CrossOrigin(origins = "*")
+/*
+ * Server-Sent Events variants of the text endpoints, at <endpoint>/stream.
+ *
+ * Each candidate delta from the model is relayed as a "candidate" event the
+ * moment it is parsed, followed by a final "done" event. Spring MVC subscribes
+ * to the Flux one element at a time and only asks for the next one after the
+ * previous write to the client completed, so a slow client slows the upstream
+ * read instead of growing a buffer here.
+ *
+ * Errors after the stream has started cannot change the HTTP status any more,
+ * so they are sent as an "error" event.
+ */
+public class StreamingGeminiController {
+    @Autowired
+    private ReactiveGeminiService reactiveGeminiService;
+
+    @PostMapping(path = "/generate-text/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateText(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return toEvents(reactiveGeminiService.streamText(prompt));
+    }
+
+    @PostMapping(path = "/generate-with-system-instruction/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateWithSystemInstruction(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        String systemInstruction = request.get("systemInstruction");
+        return toEvents(reactiveGeminiService.streamTextWithSystemInstruction(prompt, systemInstruction));
+    }
+
+    @PostMapping(path = "/generate-with-config/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateWithConfig(@RequestBody Map<String, Object> request) {
+        String prompt = (String) request.get("prompt");
+        Double temperature = request.get("temperature") != null ? Double.valueOf(request.get("temperature").toString())
+                : null;
+        Integer maxTokens = request.get("maxTokens") != null ? Integer.valueOf(request.get("maxTokens").toString())
+                : null;
+        Double topP = request.get("topP") != null ? Double.valueOf(request.get("topP").toString()) : null;
+        Integer topK = request.get("topK") != null ? Integer.valueOf(request.get("topK").toString()) : null;
+
+        return toEvents(reactiveGeminiService.streamTextWithConfig(prompt, temperature, maxTokens, topP, topK));
+    }
+
+    @PostMapping(path = "/generate-structured-json/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateStructuredJson(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return toEvents(reactiveGeminiService.streamStructuredJson(prompt));
+    }
+
+    @PostMapping(path = "/code-execution/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> codeExecution(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return toEvents(reactiveGeminiService.streamCodeExecution(prompt));
+    }
+
+    @PostMapping(path = "/multi-turn-conversation/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> multiTurnConversation(
+            @RequestBody Map<String, List<Map<String, String>>> request) {
+        List<Map<String, String>> conversationHistory = request.get("conversation");
+        return toEvents(reactiveGeminiService.streamMultiTurnConversation(conversationHistory));
+    }
+
+    private Flux<ServerSentEvent<Object>> toEvents(Flux<GenerateContentResponse.Candidate> candidates) {
+        return candidates
+                .map(candidate -> ServerSentEvent.<Object>builder(candidate).event("candidate").build())
+                .concatWith(Flux.just(ServerSentEvent.<Object>builder().event("done").build()))
+                .onErrorResume(e -> Flux.just(ServerSentEvent.<Object>builder(errorOf(e)).event("error").build()));
+    }
+
+    /*
+     * A fixed message and the status only: exception messages carry upstream
+     * URLs and response bodies, which are not for the browser.
+     */
+    private static Map<String, Object> errorOf(Throwable e) {
+        if (e instanceof WebClientResponseException upstream) {
+            return Map.of("message", "Upstream request failed", "upstreamStatus", upstream.getStatusCode().value());
+        }
+        if (e instanceof ResponseStatusException rejected) {
+            return Map.of("message", "Request rejected", "status", rejected.getStatusCode().value());
+        }
+        return Map.of("message", "Stream failed");
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.genaiapi.model;
+
+import java.util.List;
+
+import lombok.*;
+
+/*
+ * Body of a synchronous batchGenerateContent call: independent
+ * GenerateContentRequests that are answered together, in the same order, by
+ * BatchGenerateContentResponse.responses.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchGenerateContentRequest {
+    private List<GenerateContentRequest> requests;
+}
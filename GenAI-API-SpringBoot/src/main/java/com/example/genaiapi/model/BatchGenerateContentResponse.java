@@ -0,0 +1,12 @@
+package com.example.genaiapi.model;
+
+import java.util.List;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchGenerateContentResponse {
+    private List<GenerateContentResponse> responses;
+}
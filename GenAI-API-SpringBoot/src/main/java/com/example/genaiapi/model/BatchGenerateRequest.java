@@ -0,0 +1,31 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+import lombok.*;
+
+/*
+ * Body of POST /api/gemini/generate-batch: independent prompts, each with its
+ * own optional GenerationConfig. The optional id is echoed back on the result
+ * line so callers can correlate results that arrive in completion order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchGenerateRequest {
+
+    private List<Item> prompts;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        private String id;
+
+        private String prompt;
+
+        @JsonProperty("generationConfig")
+        private GenerateContentRequest.GenerationConfig generationConfig;
+    }
+}
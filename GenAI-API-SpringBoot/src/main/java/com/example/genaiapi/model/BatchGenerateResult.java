@@ -0,0 +1,27 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.*;
+
+/*
+ * One NDJSON line of the generate-batch response. Exactly one of response and
+ * error is set; status carries the upstream HTTP status for failed items.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchGenerateResult {
+
+    // Position of the prompt in the request array
+    private int index;
+
+    private String id;
+
+    private GenerateContentResponse response;
+
+    private String error;
+
+    private Integer status;
+}
@@ -0,0 +1,54 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+import lombok.*;
+
+/*
+ * cachedContents resource: a prompt prefix (system instruction, tools and
+ * leading turns) stored upstream once and then referenced by name from
+ * generateContent. Create sends model, the prefix and ttl; the answer adds
+ * name and expireTime. A refresh sends ttl alone.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CachedContent {
+
+    // "cachedContents/{id}", assigned upstream
+    private String name;
+
+    // "models/{model}"; a cache only serves requests for the same model
+    private String model;
+
+    @JsonProperty("displayName")
+    private String displayName;
+
+    @JsonProperty("systemInstruction")
+    private GenerateContentRequest.SystemInstruction systemInstruction;
+
+    private List<GenerateContentRequest.Content> contents;
+
+    private List<GenerateContentRequest.Tool> tools;
+
+    // Duration in seconds with an "s" suffix, e.g. "3600s"
+    private String ttl;
+
+    @JsonProperty("expireTime")
+    private String expireTime;
+
+    @JsonProperty("usageMetadata")
+    private UsageMetadata usageMetadata;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class UsageMetadata {
+        @JsonProperty("totalTokenCount")
+        private Integer totalTokenCount;
+    }
+}
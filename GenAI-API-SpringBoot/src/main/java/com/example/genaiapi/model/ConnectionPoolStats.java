@@ -0,0 +1,28 @@
+package com.example.genaiapi.model;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConnectionPoolStats {
+    /*
+     * "pooled" for the Apache HttpClient pool, "http2" when requests are
+     * multiplexed by the JDK HttpClient (which keeps no pool we can inspect, so
+     * the counters below are left null).
+     */
+    private String mode;
+
+    // Connections currently handed out to in-flight requests
+    private Integer leased;
+
+    // Requests waiting for a connection to become free
+    private Integer pending;
+
+    // Idle keep-alive connections ready for reuse
+    private Integer available;
+
+    private Integer max;
+
+    private Integer maxPerRoute;
+}
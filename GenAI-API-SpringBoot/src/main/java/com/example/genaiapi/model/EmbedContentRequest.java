@@ -0,0 +1,16 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmbedContentRequest {
+
+    private GenerateContentRequest.Content content;
+
+    @JsonProperty("outputDimensionality")
+    private Integer outputDimensionality;
+}
@@ -0,0 +1,20 @@
+package com.example.genaiapi.model;
+
+import java.util.List;
+
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmbedContentResponse {
+
+    private Embedding embedding;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Embedding {
+        private List<Float> values;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.*;
+
+/*
+ * File resource returned by the File API upload endpoint, wrapped as
+ * {"file": {...}}. Only uri and mimeType are needed to reference the upload
+ * from a fileData part; expirationTime tells how long the reference is valid.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class GeminiFile {
+
+    private String name;
+
+    @JsonProperty("displayName")
+    private String displayName;
+
+    @JsonProperty("mimeType")
+    private String mimeType;
+
+    // int64 is serialized as a JSON string by the API
+    @JsonProperty("sizeBytes")
+    private String sizeBytes;
+
+    private String uri;
+
+    @JsonProperty("sha256Hash")
+    private String sha256Hash;
+
+    // PROCESSING, ACTIVE or FAILED
+    private String state;
+
+    @JsonProperty("createTime")
+    private String createTime;
+
+    @JsonProperty("expirationTime")
+    private String expirationTime;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class UploadResponse {
+        private GeminiFile file;
+    }
+}
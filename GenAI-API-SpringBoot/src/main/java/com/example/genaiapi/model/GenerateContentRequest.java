@@ -1,6 +1,11 @@
 package com.example.genaiapi.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.springframework.core.io.InputStreamSource;
+
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +26,15 @@ public class GenerateContentRequest {
 
     private List<Tool> tools;
 
+    /*
+     * Name of an upstream cached content ("cachedContents/...") holding the
+     * system instruction, tools and leading turns; see ContextCacheManager.
+     * The request then carries only the turns after that prefix.
+     */
+    @JsonProperty("cachedContent")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cachedContent;
+
     // Custom constructor for contents-only initialization
     public GenerateContentRequest(List<Content> contents) {
         this.contents = contents;
@@ -43,6 +57,10 @@ public class GenerateContentRequest {
         @JsonProperty("inlineData")
         private InlineData inlineData;
 
+        // Reference to media uploaded once through the File API
+        @JsonProperty("fileData")
+        private FileData fileData;
+
         // Custom constructor for text-only initialization
         public Part(String text) {
             this.text = text;
@@ -50,12 +68,42 @@ public class GenerateContentRequest {
     }
 
     @Data
-    @AllArgsConstructor
     @NoArgsConstructor
+    @JsonSerialize(using = InlineDataSerializer.class)
     public static class InlineData {
         @JsonProperty("mime_type")
         private String mimeType;
         private String data;
+
+        // Raw bytes to be base64-encoded while the request body is written,
+        // instead of holding the encoded String in memory (see InlineDataSerializer)
+        @JsonIgnore
+        private InputStreamSource source;
+
+        @JsonIgnore
+        private long sourceLength = -1;
+
+        public InlineData(String mimeType, String data) {
+            this.mimeType = mimeType;
+            this.data = data;
+        }
+
+        public InlineData(String mimeType, InputStreamSource source, long sourceLength) {
+            this.mimeType = mimeType;
+            this.source = source;
+            this.sourceLength = sourceLength;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class FileData {
+        @JsonProperty("mime_type")
+        private String mimeType;
+
+        @JsonProperty("file_uri")
+        private String fileUri;
     }
 
     @Data
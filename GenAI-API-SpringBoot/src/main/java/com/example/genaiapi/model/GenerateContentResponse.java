@@ -102,5 +102,9 @@ public class GenerateContentResponse {
         @JsonProperty("totalTokenCount")
         private Integer totalTokenCount;
 
+        // Part of promptTokenCount served from a cachedContent
+        @JsonProperty("cachedContentTokenCount")
+        private Integer cachedContentTokenCount;
+
     }
 }
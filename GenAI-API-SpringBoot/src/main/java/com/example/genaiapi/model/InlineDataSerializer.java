@@ -0,0 +1,50 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Writes GenerateContentRequest.InlineData as {"mime_type": ..., "data": ...}.
+ *
+ * When the InlineData carries a source stream instead of a base64 String, the
+ * bytes are read from it in small chunks and base64-encoded straight into the
+ * JSON output with JsonGenerator.writeBinary. RestTemplate streams the request
+ * body to the socket, so an uploaded image goes from the multipart temp file
+ * to the network through Jackson's fixed-size buffers: no byte[] of the image,
+ * no base64 String and no JSON buffer of the whole request.
+ *
+ * The source is opened again on every write, so a retried or hedged request
+ * sends the same bytes.
+ */
+public class InlineDataSerializer extends StdSerializer<GenerateContentRequest.InlineData> {
+
+    public InlineDataSerializer() {
+        super(GenerateContentRequest.InlineData.class);
+    }
+
+    @Override
+    public void serialize(GenerateContentRequest.InlineData value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        gen.writeStartObject(value);
+        if (value.getMimeType() != null) {
+            gen.writeStringField("mime_type", value.getMimeType());
+        }
+        if (value.getSource() != null) {
+            gen.writeFieldName("data");
+            long length = value.getSourceLength();
+            try (InputStream in = value.getSource().getInputStream()) {
+                // -1 lets Jackson read to end of stream when the size is unknown
+                gen.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, in,
+                        length >= 0 && length <= Integer.MAX_VALUE ? (int) length : -1);
+            }
+        } else if (value.getData() != null) {
+            gen.writeStringField("data", value.getData());
+        }
+        gen.writeEndObject();
+    }
+}
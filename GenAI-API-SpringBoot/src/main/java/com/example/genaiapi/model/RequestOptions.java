@@ -0,0 +1,89 @@
+package com.example.genaiapi.model;
+
+import java.time.Duration;
+
+import lombok.Builder;
+import lombok.Value;
+
+/*
+ * Per-request knobs that callers pass as HTTP headers rather than in the JSON
+ * body, so the existing endpoint payloads stay unchanged. RequestOptionsFilter
+ * parses them once per request and GeminiRequestContext makes them available
+ * to the service layer on the request thread.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RequestOptions {
+
+    public static final String ANONYMOUS_CLIENT = "anonymous";
+
+    public static final RequestOptions DEFAULT = RequestOptions.builder().build();
+
+    /*
+     * X-Gemini-Cache: "bypass" skips the response cache for this call (no
+     * lookup, no store); "cacheable" allows caching even when the request is
+     * not deterministic (temperature != 0).
+     */
+    @Builder.Default
+    CacheMode cacheMode = CacheMode.DEFAULT;
+
+    /*
+     * X-Gemini-Priority: "high", "normal" or "low". Decides the order in which
+     * requests waiting for upstream quota are released.
+     */
+    @Builder.Default
+    Priority priority = Priority.NORMAL;
+
+    /*
+     * X-Gemini-Max-Wait-Ms: how long this request may wait for upstream quota
+     * before it is rejected. Null means gemini.rate-limit.default-max-wait.
+     */
+    Duration maxQueueWait;
+
+    /*
+     * X-Api-Client: who is calling, for the usage ledger. Callers that do not
+     * identify themselves are accounted as "anonymous".
+     */
+    @Builder.Default
+    String clientId = ANONYMOUS_CLIENT;
+
+    // Handler pattern that was called (e.g. /api/gemini/sessions/{id}/messages), set by RequestEndpointInterceptor
+    @Builder.Default
+    String endpoint = "none";
+
+    /*
+     * X-Gemini-Tier: "fast", "standard" or "strong". Asks ModelRouter for a
+     * model tier instead of letting the routing rules decide. Null means auto.
+     */
+    String tier;
+
+    public enum Priority {
+        HIGH, NORMAL, LOW;
+
+        public static Priority fromHeader(String value) {
+            if (value == null) {
+                return NORMAL;
+            }
+            return switch (value.trim().toLowerCase()) {
+                case "high" -> HIGH;
+                case "low" -> LOW;
+                default -> NORMAL;
+            };
+        }
+    }
+
+    public enum CacheMode {
+        DEFAULT, BYPASS, CACHEABLE;
+
+        public static CacheMode fromHeader(String value) {
+            if (value == null) {
+                return DEFAULT;
+            }
+            return switch (value.trim().toLowerCase()) {
+                case "bypass", "no-cache", "no-store" -> BYPASS;
+                case "cacheable" -> CACHEABLE;
+                default -> DEFAULT;
+            };
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+/*
+ * The constant part of a GenerateContentRequest (generation config, tools,
+ * system instruction), serialized once.
+ *
+ * compile() writes a request with an empty contents list through the same
+ * ObjectMapper that sends requests upstream and keeps everything after
+ * {"contents":[] as pre-encoded UTF-8. A request created with withContents()
+ * is then written by TemplatedRequestSerializer as {"contents": ...} followed
+ * by those bytes, so only the prompt is serialized per call and the JSON on
+ * the wire is identical to serializing the full object graph.
+ *
+ * The section objects are shared by every request made from the template and
+ * must be treated as read-only. Replacing one on a request (or setting
+ * cachedContent) is fine: that request is then serialized the usual way.
+ */
+public final class RequestTemplate {
+
+    private static final String CONTENTS_PREFIX = "{\"contents\":[]";
+
+    private final GenerateContentRequest.GenerationConfig generationConfig;
+
+    private final GenerateContentRequest.SystemInstruction systemInstruction;
+
+    private final List<GenerateContentRequest.Tool> tools;
+
+    private final SerializableString tail;
+
+    private RequestTemplate(GenerateContentRequest.GenerationConfig generationConfig,
+            GenerateContentRequest.SystemInstruction systemInstruction, List<GenerateContentRequest.Tool> tools,
+            SerializableString tail) {
+        this.generationConfig = generationConfig;
+        this.systemInstruction = systemInstruction;
+        this.tools = tools;
+        this.tail = tail;
+    }
+
+    public static RequestTemplate compile(ObjectMapper objectMapper,
+            GenerateContentRequest.GenerationConfig generationConfig,
+            GenerateContentRequest.SystemInstruction systemInstruction, List<GenerateContentRequest.Tool> tools) {
+        GenerateContentRequest sample = new GenerateContentRequest(List.of(), generationConfig, systemInstruction,
+                tools, null);
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(sample);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize request template", e);
+        }
+        // contents is the first property of GenerateContentRequest; anything
+        // else means the mapper is configured in a way the splice cannot follow
+        if (!json.startsWith(CONTENTS_PREFIX) || !json.endsWith("}")) {
+            throw new IllegalStateException("Unexpected request template layout: " + json);
+        }
+        String tail = json.substring(CONTENTS_PREFIX.length(), json.length() - 1);
+        return new RequestTemplate(generationConfig, systemInstruction, tools, new SerializedString(tail));
+    }
+
+    /**
+     * A request with the template's fixed sections and the given contents
+     */
+    public TemplatedGenerateContentRequest withContents(List<GenerateContentRequest.Content> contents) {
+        return new TemplatedGenerateContentRequest(this, contents);
+    }
+
+    public GenerateContentRequest.GenerationConfig getGenerationConfig() {
+        return generationConfig;
+    }
+
+    public GenerateContentRequest.SystemInstruction getSystemInstruction() {
+        return systemInstruction;
+    }
+
+    public List<GenerateContentRequest.Tool> getTools() {
+        return tools;
+    }
+
+    /**
+     * Everything after the contents array, without the closing brace
+     */
+    SerializableString tail() {
+        return tail;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.genaiapi.model;
+
+import lombok.*;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SessionInfo {
+    private String id;
+
+    private Instant createdAt;
+
+    private Instant lastUsedAt;
+
+    // Stored user and model turns (each exchange adds two)
+    private Integer turns;
+
+    // Oldest turns dropped to keep the history under its character budget
+    private Integer trimmedTurns;
+
+    private Long characters;
+
+    // Estimated heap held by the stored history
+    private Long approximateBytes;
+}
@@ -0,0 +1,44 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+
+/*
+ * GenerateContentRequest whose generation config, tools and system
+ * instruction come from a RequestTemplate. Readers (caches, the rate limiter,
+ * hashing) see the usual getters; serialization splices the template's
+ * pre-encoded JSON after the contents.
+ *
+ * It is still an ordinary, mutable request: once a section is replaced or
+ * another field is set, matchesTemplate() turns false and the request is
+ * serialized property by property like any other.
+ */
+@JsonSerialize(using = TemplatedRequestSerializer.class)
+public class TemplatedGenerateContentRequest extends GenerateContentRequest {
+
+    @JsonIgnore
+    private final RequestTemplate template;
+
+    TemplatedGenerateContentRequest(RequestTemplate template, List<Content> contents) {
+        super(contents, template.getGenerationConfig(), template.getSystemInstruction(), template.getTools(),
+                null);
+        this.template = template;
+    }
+
+    public RequestTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Whether everything but the contents is still exactly what the template
+     * pre-encoded. Fields added to GenerateContentRequest must be checked here.
+     */
+    public boolean matchesTemplate() {
+        return getGenerationConfig() == template.getGenerationConfig()
+                && getSystemInstruction() == template.getSystemInstruction()
+                && getTools() == template.getTools()
+                && getCachedContent() == null;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.genaiapi.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/*
+ * Writes {"contents": [...] + the template's pre-encoded tail + }. Only the
+ * contents go through Jackson's object serialization; the rest is a raw copy
+ * of bytes encoded once at startup. A request that no longer matches its
+ * template goes through the plain GenerateContentRequest serializer instead,
+ * so nothing set on it is lost.
+ */
+public class TemplatedRequestSerializer extends StdSerializer<TemplatedGenerateContentRequest> {
+
+    public TemplatedRequestSerializer() {
+        super(TemplatedGenerateContentRequest.class);
+    }
+
+    @Override
+    public void serialize(TemplatedGenerateContentRequest value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+        if (!value.matchesTemplate()) {
+            provider.findValueSerializer(GenerateContentRequest.class).serialize(value, gen, provider);
+            return;
+        }
+        gen.writeStartObject(value);
+        provider.defaultSerializeField("contents", value.getContents(), gen);
+        gen.writeRaw(value.getTemplate().tail());
+        gen.writeEndObject();
+    }
+}
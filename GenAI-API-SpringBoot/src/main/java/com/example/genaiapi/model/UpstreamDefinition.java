@@ -0,0 +1,30 @@
+package com.example.genaiapi.model;
+
+import lombok.*;
+
+/*
+ * One entry of the gemini.upstreams.file pool definition (see UpstreamPool).
+ * Unset fields fall back to the gemini.api.* settings; apiKey may be a
+ * ${...} placeholder, so the keys themselves can stay in the environment.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UpstreamDefinition {
+    // Identifies the member across reloads and in /api/admin/upstreams
+    private String name;
+
+    private String apiKey;
+
+    private String baseUrl;
+
+    private String uploadBaseUrl;
+
+    // Share of the traffic relative to the other members (default 1)
+    private Double weight;
+
+    // This key's quota; unset means not tracked client-side
+    private Long requestsPerMinute;
+
+    private Long tokensPerMinute;
+}
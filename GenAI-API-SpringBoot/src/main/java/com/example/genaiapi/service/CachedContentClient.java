@@ -0,0 +1,73 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.CachedContent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Duration;
+
+/*
+ * Calls to the cachedContents collection:
+ *
+ * - POST {base-url}/cachedContents creates a cache and returns its name
+ * - PATCH {base-url}/{name}?updateMask=ttl extends its lifetime
+ * - DELETE {base-url}/{name} drops it before it expires
+ *
+ * Like the File API calls these go through the upstream semaphore but not
+ * the RPM/TPM limiter: they are not generateContent calls. Caches belong to
+ * the project of the key that created them, so they all use UpstreamPool's
+ * primary key.
+ */
+@Component
+public class CachedContentClient {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+
+    public CachedContent create(CachedContent content) {
+        String url = upstreams.primary().url("/cachedContents").toUriString();
+        return concurrencyLimiter.call(() -> restTemplate.postForObject(url,
+                new HttpEntity<>(content, upstreams.primary().headers()), CachedContent.class));
+    }
+
+    public CachedContent refresh(String name, Duration ttl) {
+        CachedContent update = new CachedContent();
+        update.setTtl(ttl(ttl));
+        String url = UriComponentsBuilder.fromUriString(resourceUrl(name))
+                .queryParam("updateMask", "ttl")
+                .toUriString();
+        return concurrencyLimiter.call(() -> restTemplate.patchForObject(url,
+                new HttpEntity<>(update, upstreams.primary().headers()), CachedContent.class));
+    }
+
+    public void delete(String name) {
+        try {
+            concurrencyLimiter.call(() -> {
+                restTemplate.exchange(resourceUrl(name), HttpMethod.DELETE,
+                        new HttpEntity<>(upstreams.primary().headers()), Void.class);
+                return null;
+            });
+        } catch (HttpClientErrorException.NotFound e) {
+            // Already expired or deleted
+        }
+    }
+
+    static String ttl(Duration ttl) {
+        return ttl.toSeconds() + "s";
+    }
+
+    private String resourceUrl(String name) {
+        return upstreams.primary().url("/" + name).toUriString();
+    }
+}
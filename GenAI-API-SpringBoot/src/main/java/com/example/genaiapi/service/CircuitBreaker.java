@@ -0,0 +1,154 @@
+package com.example.genaiapi.service;
+
+import java.util.function.LongSupplier;
+
+/*
+ * Count-based circuit breaker over the last windowSize upstream calls.
+ *
+ * CLOSED: calls flow; once at least minimumCalls outcomes are recorded and the
+ * failure rate reaches the threshold, the breaker opens.
+ * OPEN: calls are refused without touching the network until openDuration
+ * has passed.
+ * HALF_OPEN: up to halfOpenCalls trial calls are let through; if they all
+ * succeed the breaker closes with a fresh window, a single failure re-opens it.
+ *
+ * State changes are rare and the critical sections are a few array writes, so
+ * plain synchronized is cheaper here than a lock-free design would be to
+ * reason about. The upstream call itself never runs under the monitor.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private long transitionsToOpen;
+
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openNanos,
+            int halfOpenCalls) {
+        this(windowSize, minimumCalls, failureRateThreshold, openNanos, halfOpenCalls, System::nanoTime);
+    }
+
+    // clock stands in for System.nanoTime(), so tests can drive time
+    CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openNanos,
+            int halfOpenCalls, LongSupplier clock) {
+        this.clock = clock;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openNanos;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Whether a call may go upstream now; every true must be followed by exactly
+     * one of onSuccess, onFailure or onIgnored
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted == halfOpenCalls) {
+                return false;
+            }
+            trialsStarted++;
+        }
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded == halfOpenCalls) {
+                state = State.CLOSED;
+                next = 0;
+                recorded = 0;
+                failures = 0;
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+        }
+    }
+
+    /**
+     * The call ended without telling us anything about upstream (for example it
+     * was cancelled); frees its half-open trial slot
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Nanoseconds until an open breaker lets a trial call through
+     */
+    synchronized long remainingOpenNanos() {
+        return state == State.OPEN ? Math.max(0, openNanos - (clock.getAsLong() - openedAt)) : 0;
+    }
+
+    synchronized double failureRate() {
+        return recorded == 0 ? 0.0 : (double) failures / recorded;
+    }
+
+    synchronized long transitionsToOpen() {
+        return transitionsToOpen;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+        if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        transitionsToOpen++;
+    }
+}
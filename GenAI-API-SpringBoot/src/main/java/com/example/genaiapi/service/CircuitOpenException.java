@@ -0,0 +1,33 @@
+package com.example.genaiapi.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/*
+ * 503 raised locally while the upstream circuit breaker is open. Failing fast
+ * with a Retry-After hint keeps callers from piling up behind an upstream that
+ * is already failing.
+ */
+public class CircuitOpenException extends ResponseStatusException {
+
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String reason, Duration retryAfter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        return headers;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.config.HttpClientConfig;
+import com.example.genaiapi.model.ConnectionPoolStats;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class ConnectionPoolMonitor {
+
+    @Autowired
+    private PoolingHttpClientConnectionManager geminiConnectionManager;
+
+    @Autowired
+    private HttpClientConfig httpClientConfig;
+
+    /**
+     * Point-in-time view of the upstream connection pool, used to size
+     * gemini.http.max-total-connections / max-connections-per-route.
+     */
+    public ConnectionPoolStats snapshot() {
+        if (httpClientConfig.isHttp2Enabled()) {
+            return new ConnectionPoolStats("http2", null, null, null, null, null);
+        }
+        PoolStats total = geminiConnectionManager.getTotalStats();
+        return new ConnectionPoolStats("pooled",
+                total.getLeased(),
+                total.getPending(),
+                total.getAvailable(),
+                total.getMax(),
+                geminiConnectionManager.getDefaultMaxPerRoute());
+    }
+}
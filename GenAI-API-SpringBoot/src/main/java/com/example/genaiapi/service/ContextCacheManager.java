@@ -0,0 +1,286 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.CachedContent;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.TemplatedGenerateContentRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Upstream context caching for large shared prompt prefixes
+ * (gemini.context-cache.enabled).
+ *
+ * The prefix of a request is everything except its last turn: the system
+ * instruction, the tools and the leading turns (few-shot examples, a long
+ * document, earlier conversation). When a prefix of at least
+ * gemini.context-cache.min-tokens is seen gemini.context-cache.min-uses times
+ * within gemini.context-cache.sighting-window, it is registered once as a
+ * cachedContents resource, in the background. From then on requests with the
+ * same prefix (matched by RequestHasher over model and prefix) are rewritten
+ * to carry only the last turn plus a cachedContent reference, which saves the
+ * request bytes and upstream prompt processing of the prefix.
+ *
+ * Caches are created with gemini.context-cache.ttl. A refresher thread
+ * extends those used within the last TTL before they come within
+ * gemini.context-cache.refresh-before of expiring, and deletes the ones that
+ * went unused, so idle caches stop accruing storage cost. A handle is never
+ * handed out within the refresh margin of its expiry; a cache that upstream
+ * no longer knows is invalidated by the caller (see GeminiService) and the
+ * request is resent in full.
+ */
+@Service
+public class ContextCacheManager {
+
+    @Value("${gemini.context-cache.enabled:false}")
+    private boolean enabled;
+
+    // Upstream rejects caches below a model-dependent minimum size
+    @Value("${gemini.context-cache.min-tokens:4096}")
+    private long minTokens;
+
+    @Value("${gemini.context-cache.min-uses:2}")
+    private int minUses;
+
+    @Value("${gemini.context-cache.sighting-window:10m}")
+    private Duration sightingWindow;
+
+    @Value("${gemini.context-cache.max-entries:100}")
+    private int maxEntries;
+
+    @Value("${gemini.context-cache.ttl:1h}")
+    private Duration ttl;
+
+    @Value("${gemini.context-cache.refresh-before:5m}")
+    private Duration refreshBefore;
+
+    @Value("${gemini.context-cache.refresh-interval:30s}")
+    private Duration refreshInterval;
+
+    @Autowired
+    private CachedContentClient client;
+
+    @Autowired
+    private RequestHasher requestHasher;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    // Prefix hash -> registered (or being registered) cache
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Prefix hash -> times seen, for prefixes not registered yet
+    private Cache<String, AtomicInteger> sightings;
+
+    private final ExecutorService createExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private ScheduledExecutorService refresher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder savedTokens = new LongAdder();
+    private final AtomicReference<String> lastError = new AtomicReference<>();
+
+    private static final class Entry {
+        final String model;
+        final long prefixTokens;
+        volatile String name;
+        volatile Instant expiresAt = Instant.MIN;
+        volatile Instant lastUsedAt = Instant.now();
+
+        Entry(String model, long prefixTokens) {
+            this.model = model;
+            this.prefixTokens = prefixTokens;
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        sightings = Caffeine.newBuilder()
+                .expireAfterWrite(sightingWindow)
+                .maximumSize(10_000)
+                .build();
+        if (enabled) {
+            refresher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("gemini-context-cache-refresher").factory());
+            refresher.scheduleWithFixedDelay(this::refresh, refreshInterval.toMillis(), refreshInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        createExecutor.shutdownNow();
+    }
+
+    /**
+     * request with its prefix replaced by a cachedContent reference when one
+     * is ready, otherwise request itself
+     */
+    public GenerateContentRequest apply(String model, GenerateContentRequest request) {
+        List<GenerateContentRequest.Content> contents = request.getContents();
+        if (!enabled || request.getCachedContent() != null || contents == null || contents.isEmpty()
+                || request instanceof TemplatedGenerateContentRequest) {
+            // Template prefixes are small and already pre-serialized
+            return request;
+        }
+        long prefixTokens = tokenEstimator.estimate(contents.subList(0, contents.size() - 1))
+                + (request.getSystemInstruction() != null
+                        ? tokenEstimator.estimateParts(request.getSystemInstruction().getParts())
+                        : 0);
+        if (prefixTokens < minTokens) {
+            return request;
+        }
+
+        GenerateContentRequest prefix = prefixOf(request);
+        String key = requestHasher.hash(model, prefix);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.name != null
+                && Instant.now().plus(refreshBefore).isBefore(entry.expiresAt)) {
+            entry.lastUsedAt = Instant.now();
+            hits.increment();
+            savedTokens.add(prefixTokens);
+            GenerateContentRequest rewritten = new GenerateContentRequest(
+                    List.of(contents.get(contents.size() - 1)));
+            rewritten.setGenerationConfig(request.getGenerationConfig());
+            rewritten.setCachedContent(entry.name);
+            return rewritten;
+        }
+
+        misses.increment();
+        if (entry == null && sightings.get(key, k -> new AtomicInteger()).incrementAndGet() >= minUses
+                && entries.size() < maxEntries) {
+            Entry pending = new Entry(model, prefixTokens);
+            if (entries.putIfAbsent(key, pending) == null) {
+                sightings.invalidate(key);
+                createExecutor.execute(() -> create(key, pending, prefix));
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Forgets a cache that upstream rejected (deleted or expired early)
+     */
+    public void invalidate(String name) {
+        invalidated.increment();
+        entries.values().removeIf(entry -> name.equals(entry.name));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("entries", entries.size());
+        result.put("cachedPrefixTokens", entries.values().stream()
+                .filter(entry -> entry.name != null)
+                .mapToLong(entry -> entry.prefixTokens)
+                .sum());
+        result.put("hits", hits.sum());
+        result.put("misses", misses.sum());
+        result.put("created", created.sum());
+        result.put("refreshed", refreshed.sum());
+        result.put("expired", expired.sum());
+        result.put("invalidated", invalidated.sum());
+        result.put("failures", failures.sum());
+        result.put("lastError", lastError.get());
+        result.put("savedPromptTokens", savedTokens.sum());
+        return result;
+    }
+
+    private void create(String key, Entry entry, GenerateContentRequest prefix) {
+        try {
+            CachedContent content = new CachedContent();
+            content.setModel("models/" + entry.model);
+            content.setDisplayName("prefix-" + key.substring(0, 16));
+            content.setSystemInstruction(prefix.getSystemInstruction());
+            content.setContents(prefix.getContents().isEmpty() ? null : prefix.getContents());
+            content.setTools(prefix.getTools());
+            content.setTtl(CachedContentClient.ttl(ttl));
+            CachedContent cache = client.create(content);
+            entry.expiresAt = expiresAt(cache);
+            entry.name = cache.getName();
+            created.increment();
+        } catch (RuntimeException e) {
+            // Dropped, so the prefix can be tried again once it is seen again
+            entries.remove(key, entry);
+            failed(e);
+        }
+    }
+
+    private void refresh() {
+        Instant now = Instant.now();
+        for (Map.Entry<String, Entry> mapping : entries.entrySet()) {
+            Entry entry = mapping.getValue();
+            if (entry.name == null || now.plus(refreshBefore).plus(refreshInterval).isBefore(entry.expiresAt)) {
+                continue;
+            }
+            try {
+                if (entry.lastUsedAt.plus(ttl).isAfter(now)) {
+                    entry.expiresAt = expiresAt(client.refresh(entry.name, ttl));
+                    refreshed.increment();
+                } else {
+                    entries.remove(mapping.getKey(), entry);
+                    client.delete(entry.name);
+                    expired.increment();
+                }
+            } catch (RuntimeException e) {
+                failed(e);
+                if (!now.isBefore(entry.expiresAt)) {
+                    entries.remove(mapping.getKey(), entry);
+                }
+            }
+        }
+    }
+
+    private void failed(RuntimeException e) {
+        failures.increment();
+        lastError.set(e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
+    private Instant expiresAt(CachedContent cache) {
+        if (cache != null && cache.getExpireTime() != null) {
+            try {
+                return Instant.parse(cache.getExpireTime());
+            } catch (DateTimeParseException e) {
+                // fall back to the requested TTL
+            }
+        }
+        return Instant.now().plus(ttl);
+    }
+
+    // The part of the request a cachedContent can hold; generationConfig stays per request
+    private static GenerateContentRequest prefixOf(GenerateContentRequest request) {
+        List<GenerateContentRequest.Content> contents = request.getContents();
+        GenerateContentRequest prefix = new GenerateContentRequest(contents.subList(0, contents.size() - 1));
+        prefix.setSystemInstruction(request.getSystemInstruction());
+        prefix.setTools(request.getTools());
+        return prefix;
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Compacts a conversation before it is sent upstream, so prompt size stops
+ * growing with its length. Off unless gemini.context.enabled is set, since it
+ * rewrites what the caller sent.
+ *
+ * The last gemini.context.recent-turns turns are always sent verbatim.
+ * Everything before them is cut at a multiple of gemini.context.summary-block
+ * turns and replaced by a summary of that prefix, which is placed in the
+ * system instruction. Summaries are rolling: the summary of turns [0, k) is
+ * made from the summary of [0, k - block) plus the block's turns, so each
+ * summarization call is small no matter how long the conversation is.
+ *
+ * Summaries are keyed by a SHA-256 over the prefix they cover, so they are
+ * found again both for server-side sessions and for clients that resend the
+ * whole history to /multi-turn-conversation. They are made on background
+ * virtual threads, never on the request path: when the summary for the
+ * current cut is not ready yet, the request uses the newest older summary
+ * (or none) with more verbatim turns, and the missing one is scheduled.
+ *
+ * Whatever is left is then held to the model's budget
+ * (gemini.context.budget-tokens) by dropping the oldest verbatim exchanges;
+ * the latest turn is always kept. Token counts come from TokenEstimator.
+ */
+@Service
+public class ContextWindowManager {
+
+    static final String SUMMARY_CLIENT = "context-summarizer";
+
+    private static final String SUMMARY_INSTRUCTION = "You maintain a running summary of a conversation between "
+            + "a user and an assistant. Merge the earlier summary (if any) with the new turns. Keep facts, names, "
+            + "numbers, decisions, preferences and open questions; drop pleasantries and repetition. Write plain "
+            + "prose in the third person, at most %d words.";
+
+    private static final String SUMMARY_PREFIX = "Summary of the earlier part of this conversation:\n";
+
+    @Value("${gemini.context.enabled:false}")
+    private boolean enabled;
+
+    // Prompt token budget per model; models not listed use default-budget-tokens
+    @Value("#{${gemini.context.budget-tokens:{'gemini-2.0-flash': 32000}}}")
+    private Map<String, Long> budgets;
+
+    @Value("${gemini.context.default-budget-tokens:32000}")
+    private long defaultBudget;
+
+    @Value("${gemini.context.recent-turns:8}")
+    private int recentTurns;
+
+    // Even, so every cut falls in front of a user turn
+    @Value("${gemini.context.summary-block:8}")
+    private int summaryBlock;
+
+    @Value("${gemini.context.summary-max-words:250}")
+    private int summaryMaxWords;
+
+    @Value("${gemini.context.max-concurrent-summaries:4}")
+    private int maxConcurrentSummaries;
+
+    @Value("${gemini.context.summary-cache-size:10000}")
+    private long summaryCacheSize;
+
+    @Value("${gemini.context.summary-ttl:2h}")
+    private Duration summaryTtl;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    // Lazy: GeminiService compacts through this class and this class
+    // summarizes through GeminiService
+    @Autowired
+    @Lazy
+    private GeminiService geminiService;
+
+    private Cache<String, Summary> summaries;
+
+    private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+
+    private Semaphore summaryPermits;
+
+    private final ExecutorService summaryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder compacted = new LongAdder();
+    private final LongAdder summaryHits = new LongAdder();
+    private final LongAdder staleSummaries = new LongAdder();
+    private final LongAdder truncatedTurns = new LongAdder();
+    private final LongAdder summariesMade = new LongAdder();
+    private final LongAdder summariesSkipped = new LongAdder();
+    private final LongAdder summaryFailures = new LongAdder();
+    private final LongAdder tokensBefore = new LongAdder();
+    private final LongAdder tokensAfter = new LongAdder();
+    private final AtomicLong maxTokensAfter = new AtomicLong();
+    private final AtomicReference<String> lastSummaryError = new AtomicReference<>();
+
+    private record Summary(String text, long tokens) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (summaryBlock < 2 || summaryBlock % 2 != 0) {
+            throw new IllegalStateException("gemini.context.summary-block must be even and at least 2");
+        }
+        summaryPermits = new Semaphore(maxConcurrentSummaries);
+        summaries = Caffeine.newBuilder()
+                .maximumSize(summaryCacheSize)
+                .expireAfterAccess(summaryTtl)
+                .build();
+    }
+
+    @PreDestroy
+    void stop() {
+        summaryExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long budgetFor(String model) {
+        return budgets.getOrDefault(model, defaultBudget);
+    }
+
+    /**
+     * The request to send instead of request: a summary of older turns, the
+     * recent turns verbatim, within the model's token budget. request itself
+     * is not modified.
+     */
+    public GenerateContentRequest compact(String model, GenerateContentRequest request) {
+        List<GenerateContentRequest.Content> contents = request.getContents();
+        if (!enabled || contents == null || contents.size() <= 1) {
+            return request;
+        }
+        int turns = contents.size();
+        long[] turnTokens = new long[turns];
+        long original = 0;
+        for (int i = 0; i < turns; i++) {
+            turnTokens[i] = tokenEstimator.estimate(contents.get(i));
+            original += turnTokens[i];
+        }
+        long fixed = request.getSystemInstruction() != null
+                ? tokenEstimator.estimateParts(request.getSystemInstruction().getParts())
+                : 0;
+
+        // Cut in front of the recent turns, then fall back to the newest
+        // summary that is already available
+        int cut = Math.max(0, (turns - recentTurns) / summaryBlock * summaryBlock);
+        String[] keys = prefixKeys(model, contents, cut);
+        int from = 0;
+        Summary summary = null;
+        for (int boundary = cut; boundary > 0; boundary -= summaryBlock) {
+            summary = summaries.getIfPresent(keys[boundary / summaryBlock]);
+            if (summary != null) {
+                from = boundary;
+                break;
+            }
+        }
+        if (cut > 0) {
+            if (from == cut) {
+                summaryHits.increment();
+            } else {
+                staleSummaries.increment();
+                scheduleSummary(model, contents, keys, cut);
+            }
+        }
+
+        // Token-aware truncation of what is still verbatim, a whole exchange at a time
+        long total = fixed + (summary != null ? summary.tokens() : 0);
+        for (int i = from; i < turns; i++) {
+            total += turnTokens[i];
+        }
+        long budget = budgetFor(model);
+        int dropped = 0;
+        while (total > budget && turns - from > 2) {
+            total -= turnTokens[from] + turnTokens[from + 1];
+            from += 2;
+            dropped += 2;
+        }
+
+        tokensBefore.add(fixed + original);
+        tokensAfter.add(total);
+        maxTokensAfter.accumulateAndGet(total, Math::max);
+        if (from == 0) {
+            return request;
+        }
+        compacted.increment();
+        truncatedTurns.add(dropped);
+
+        GenerateContentRequest result = new GenerateContentRequest(contents.subList(from, turns));
+        result.setGenerationConfig(request.getGenerationConfig());
+        result.setTools(request.getTools());
+        result.setSystemInstruction(systemInstruction(request.getSystemInstruction(), summary));
+        return result;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        long before = tokensBefore.sum();
+        long after = tokensAfter.sum();
+        result.put("compactedRequests", compacted.sum());
+        result.put("summaryHits", summaryHits.sum());
+        result.put("staleSummaries", staleSummaries.sum());
+        result.put("truncatedTurns", truncatedTurns.sum());
+        result.put("summariesMade", summariesMade.sum());
+        result.put("summariesSkipped", summariesSkipped.sum());
+        result.put("summaryFailures", summaryFailures.sum());
+        result.put("lastSummaryError", lastSummaryError.get());
+        result.put("pendingSummaries", pending.size());
+        result.put("cachedSummaries", summaries.estimatedSize());
+        result.put("estimatedTokensBefore", before);
+        result.put("estimatedTokensAfter", after);
+        result.put("savedRatio", before == 0 ? 0.0 : 1.0 - (double) after / before);
+        result.put("maxEstimatedTokensAfter", maxTokensAfter.get());
+        return result;
+    }
+
+    /*
+     * keys[b] identifies the prefix of b * summaryBlock turns (plus the
+     * model); one running digest, cloned at each block boundary.
+     */
+    private String[] prefixKeys(String model, List<GenerateContentRequest.Content> contents, int cut) {
+        String[] keys = new String[cut / summaryBlock + 1];
+        if (cut == 0) {
+            return keys;
+        }
+        MessageDigest digest = newDigest();
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < cut; i++) {
+            GenerateContentRequest.Content content = contents.get(i);
+            digest.update((byte) '\u001e');
+            digest.update(String.valueOf(content.getRole()).getBytes(StandardCharsets.UTF_8));
+            if (content.getParts() != null) {
+                for (GenerateContentRequest.Part part : content.getParts()) {
+                    digest.update((byte) '\u001f');
+                    if (part.getText() != null) {
+                        digest.update(part.getText().getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            if ((i + 1) % summaryBlock == 0) {
+                try {
+                    keys[(i + 1) / summaryBlock] = HexFormat.of()
+                            .formatHex(((MessageDigest) digest.clone()).digest());
+                } catch (CloneNotSupportedException e) {
+                    throw new IllegalStateException("SHA-256 digest is not cloneable", e);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /*
+     * Summarizes block after block up to cut, each step building on the
+     * previous summary, on a background virtual thread. Summarization calls
+     * run at low priority and are accounted to their own client in the usage
+     * ledger. When all permits are taken the work is skipped; the next turn of
+     * the conversation schedules it again.
+     */
+    private void scheduleSummary(String model, List<GenerateContentRequest.Content> contents, String[] keys,
+            int cut) {
+        String key = keys[cut / summaryBlock];
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        if (!summaryPermits.tryAcquire()) {
+            pending.remove(key);
+            summariesSkipped.increment();
+            return;
+        }
+        // The turns are only read, but the caller's list may be a session's
+        // history that keeps growing, so take a snapshot
+        List<GenerateContentRequest.Content> prefix = new ArrayList<>(contents.subList(0, cut));
+        RequestOptions options = GeminiRequestContext.current().toBuilder()
+                .priority(RequestOptions.Priority.LOW)
+                .clientId(SUMMARY_CLIENT)
+                .build();
+        summaryExecutor.execute(() -> {
+            GeminiRequestContext.set(options);
+            try {
+                summarizeUpTo(model, prefix, keys, cut);
+            } catch (RuntimeException e) {
+                summaryFailures.increment();
+                lastSummaryError.set(e.getClass().getSimpleName() + ": " + e.getMessage());
+            } finally {
+                GeminiRequestContext.clear();
+                summaryPermits.release();
+                pending.remove(key);
+            }
+        });
+    }
+
+    private void summarizeUpTo(String model, List<GenerateContentRequest.Content> prefix, String[] keys, int cut) {
+        int boundary = cut;
+        Summary previous = null;
+        while (boundary > 0 && (previous = summaries.getIfPresent(keys[boundary / summaryBlock])) == null) {
+            boundary -= summaryBlock;
+        }
+        for (; boundary < cut; boundary += summaryBlock) {
+            StringBuilder prompt = new StringBuilder();
+            if (previous != null) {
+                prompt.append("Earlier summary:\n").append(previous.text()).append("\n\n");
+            }
+            prompt.append("New turns:\n");
+            for (int i = boundary; i < boundary + summaryBlock; i++) {
+                appendTurn(prompt, prefix.get(i));
+            }
+            String text = summaryText(geminiService.summarizeContext(prompt.toString(),
+                    SUMMARY_INSTRUCTION.formatted(summaryMaxWords)));
+            previous = new Summary(text, tokenEstimator.estimate(SUMMARY_PREFIX + text));
+            summaries.put(keys[(boundary + summaryBlock) / summaryBlock], previous);
+            summariesMade.increment();
+        }
+    }
+
+    private static void appendTurn(StringBuilder prompt, GenerateContentRequest.Content content) {
+        prompt.append(content.getRole()).append(": ");
+        if (content.getParts() != null) {
+            for (GenerateContentRequest.Part part : content.getParts()) {
+                if (part.getText() != null) {
+                    prompt.append(part.getText()).append(' ');
+                } else if (part.getInlineData() != null || part.getFileData() != null) {
+                    prompt.append("[image] ");
+                }
+            }
+        }
+        prompt.append('\n');
+    }
+
+    private static String summaryText(GenerateContentResponse response) {
+        if (response != null && response.getCandidates() != null && !response.getCandidates().isEmpty()
+                && response.getCandidates().get(0).getContent() != null
+                && response.getCandidates().get(0).getContent().getParts() != null) {
+            StringBuilder text = new StringBuilder();
+            for (GenerateContentResponse.Part part : response.getCandidates().get(0).getContent().getParts()) {
+                if (part.getText() != null) {
+                    text.append(part.getText());
+                }
+            }
+            if (!text.isEmpty()) {
+                return text.toString().strip();
+            }
+        }
+        throw new IllegalStateException("Summarization returned no text");
+    }
+
+    private static GenerateContentRequest.SystemInstruction systemInstruction(
+            GenerateContentRequest.SystemInstruction original, Summary summary) {
+        if (summary == null) {
+            return original;
+        }
+        List<GenerateContentRequest.Part> parts = new ArrayList<>();
+        if (original != null && original.getParts() != null) {
+            parts.addAll(original.getParts());
+        }
+        parts.add(new GenerateContentRequest.Part(SUMMARY_PREFIX + summary.text()));
+        return new GenerateContentRequest.SystemInstruction(parts);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Server-side history of one conversation, kept as the request Content
+ * objects themselves: a new turn is sent by building a request that shares
+ * them, so nothing is re-parsed or copied except the list of references.
+ *
+ * Turns are exchanged one at a time: SessionService holds the session lock
+ * (a ReentrantLock, so waiting virtual threads do not pin their carrier)
+ * from reading the history until the answer is appended.
+ */
+public final class ConversationSession {
+
+    // Rough cost of a Content + Part + list nodes, on top of the text itself
+    private static final int TURN_OVERHEAD_BYTES = 160;
+
+    private final String id;
+
+    private final Instant createdAt = Instant.now();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final List<GenerateContentRequest.Content> history = new ArrayList<>();
+
+    private volatile long characters;
+
+    private volatile int turns;
+
+    private volatile int trimmedTurns;
+
+    private volatile Instant lastUsedAt = createdAt;
+
+    public ConversationSession(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    public int getTrimmedTurns() {
+        return trimmedTurns;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    /**
+     * Approximate heap held by the history, for bounding and reporting
+     */
+    public long approximateBytes() {
+        return characters * 2 + (long) turns * TURN_OVERHEAD_BYTES;
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * The stored history followed by the new turn, for the upstream request
+     */
+    List<GenerateContentRequest.Content> historyWith(GenerateContentRequest.Content turn) {
+        List<GenerateContentRequest.Content> contents = new ArrayList<>(history.size() + 1);
+        contents.addAll(history);
+        contents.add(turn);
+        return contents;
+    }
+
+    List<GenerateContentRequest.Content> history() {
+        return Collections.unmodifiableList(history);
+    }
+
+    /**
+     * Appends a user turn and the model's answer, then drops the oldest
+     * exchanges while the history is over maxCharacters (the latest exchange
+     * is always kept)
+     */
+    void append(GenerateContentRequest.Content userTurn, GenerateContentRequest.Content modelTurn,
+            long maxCharacters) {
+        history.add(userTurn);
+        history.add(modelTurn);
+        long total = characters + length(userTurn) + length(modelTurn);
+        int trimmed = 0;
+        while (total > maxCharacters && history.size() > 2) {
+            total -= length(history.remove(0));
+            total -= length(history.remove(0));
+            trimmed += 2;
+        }
+        characters = total;
+        turns = history.size();
+        trimmedTurns += trimmed;
+        lastUsedAt = Instant.now();
+    }
+
+    static long length(GenerateContentRequest.Content content) {
+        long length = 0;
+        if (content.getParts() != null) {
+            for (GenerateContentRequest.Part part : content.getParts()) {
+                if (part.getText() != null) {
+                    length += part.getText().length();
+                }
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.genaiapi.service;
+
+/*
+ * Turns a prompt into a vector for SemanticResponseCache. Implementations must
+ * return L2-normalised vectors of dimensions() length so that cosine
+ * similarity is a plain dot product.
+ *
+ * Selected with gemini.semantic-cache.embedder: "hashing" (local, deterministic,
+ * the default) or "gemini" (upstream embedContent).
+ */
+public interface Embedder {
+
+    float[] embed(String text);
+
+    int dimensions();
+}
@@ -0,0 +1,193 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GeminiFile;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Content-addressed cache of File API uploads (gemini.files.enabled).
+ *
+ * Media of at least gemini.files.min-bytes is hashed (SHA-256, streamed from
+ * the source) and uploaded once; the returned file URI is cached under the
+ * hash and MIME type, so every later request for the same bytes sends a
+ * fileData reference of a few dozen bytes instead of megabytes of base64.
+ *
+ * Uploaded files expire upstream (48 hours today). Each entry expires at the
+ * file's own expirationTime minus gemini.files.expiry-margin, so a cached
+ * reference is never handed out just before it dies; gemini.files.default-ttl
+ * applies when the API does not report one. Concurrent requests for the same
+ * bytes share one upload: the first caller publishes a future with
+ * putIfAbsent, the others wait on it, and a failed upload is removed so the
+ * next caller tries again.
+ */
+@Service
+public class FileReferenceCache {
+
+    @Autowired
+    private GeminiFileClient fileClient;
+
+    @Autowired
+    private UpstreamResilience resilience;
+
+    private final boolean enabled;
+
+    private final long minBytes;
+
+    private final AsyncCache<String, GeminiFile> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder reusedBytes = new LongAdder();
+    private final LongAdder staleReferences = new LongAdder();
+
+    /**
+     * A cached upload and the key it is stored under
+     */
+    public record Reference(String key, GeminiFile file) {
+    }
+
+    public FileReferenceCache(
+            @Value("${gemini.files.enabled:false}") boolean enabled,
+            @Value("${gemini.files.min-bytes:1048576}") long minBytes,
+            @Value("${gemini.files.max-entries:10000}") long maxEntries,
+            @Value("${gemini.files.default-ttl:47h}") Duration defaultTtl,
+            @Value("${gemini.files.expiry-margin:10m}") Duration expiryMargin) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, GeminiFile>() {
+                    @Override
+                    public long expireAfterCreate(String key, GeminiFile file, long currentTime) {
+                        return timeToLive(file, defaultTtl, expiryMargin);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, GeminiFile file, long currentTime,
+                            long currentDuration) {
+                        return timeToLive(file, defaultTtl, expiryMargin);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, GeminiFile file, long currentTime,
+                            long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .buildAsync();
+    }
+
+    /**
+     * Whether media of this size should be referenced through the File API
+     */
+    public boolean isEligible(long size) {
+        return enabled && size >= minBytes;
+    }
+
+    public Reference getOrUpload(InputStreamSource source, long size, String mimeType) {
+        String hash = sha256(source);
+        String key = hash + "|" + mimeType;
+        CompletableFuture<GeminiFile> upload = new CompletableFuture<>();
+        CompletableFuture<GeminiFile> existing = cache.asMap().putIfAbsent(key, upload);
+        if (existing != null) {
+            hits.increment();
+            reusedBytes.add(size);
+            return new Reference(key, await(existing));
+        }
+
+        try {
+            GeminiFile file = resilience.execute("files",
+                    () -> fileClient.upload(source, size, mimeType, "sha256-" + hash.substring(0, 16)), false);
+            uploads.increment();
+            uploadedBytes.add(size);
+            upload.complete(file);
+            return new Reference(key, file);
+        } catch (RuntimeException e) {
+            upload.completeExceptionally(e);
+            cache.asMap().remove(key, upload);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops a reference that upstream no longer accepts (deleted or expired
+     * earlier than announced), so the next request uploads again
+     */
+    public void invalidate(Reference reference) {
+        staleReferences.increment();
+        cache.synchronous().invalidate(reference.key());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("size", cache.synchronous().estimatedSize());
+        result.put("hits", hits.sum());
+        result.put("uploads", uploads.sum());
+        result.put("uploadedBytes", uploadedBytes.sum());
+        result.put("reusedBytes", reusedBytes.sum());
+        result.put("staleReferences", staleReferences.sum());
+        return result;
+    }
+
+    private static long timeToLive(GeminiFile file, Duration defaultTtl, Duration expiryMargin) {
+        Duration ttl = defaultTtl;
+        if (file.getExpirationTime() != null) {
+            try {
+                ttl = Duration.between(Instant.now(), Instant.parse(file.getExpirationTime())).minus(expiryMargin);
+            } catch (DateTimeParseException e) {
+                // keep the default
+            }
+        }
+        return Math.max(0, ttl.toNanos());
+    }
+
+    private static String sha256(InputStreamSource source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(source.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static GeminiFile await(CompletableFuture<GeminiFile> upload) {
+        try {
+            return upload.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
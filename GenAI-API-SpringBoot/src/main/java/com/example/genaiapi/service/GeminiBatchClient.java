@@ -0,0 +1,135 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.BatchGenerateContentRequest;
+import com.example.genaiapi.model.BatchGenerateContentResponse;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/*
+ * Upstream side of MicroBatcher: sends a list of independent requests in one
+ * HTTP call to gemini.batching.url and returns the answers in order.
+ *
+ * The synchronous batch contract ({"requests":[...]} -> {"responses":[...]})
+ * is served by a batching gateway or the benchmark stub, not by the public
+ * API, whose batchGenerateContent is an asynchronous long-running job. So
+ * the URL has no default, and enabling batching without one fails at
+ * startup instead of failing every batched call. A batch of one is sent as a plain
+ * generateContent call. Batches always go to ModelRouter's default model, on
+ * whichever key UpstreamPool leases them; the lease is charged the whole
+ * batch.
+ */
+@Component
+public class GeminiBatchClient {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ModelRouter router;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private UpstreamRateLimiter rateLimiter;
+
+    @Autowired
+    private UpstreamResilience resilience;
+
+    @Value("${gemini.batching.enabled:false}")
+    private boolean enabled;
+
+    // e.g. http://gateway:8080/v1beta/models/{model}:batchGenerateContent
+    @Value("${gemini.batching.url:}")
+    private String batchUrl;
+
+    @PostConstruct
+    void validate() {
+        if (enabled && batchUrl.isBlank()) {
+            throw new IllegalStateException("gemini.batching.enabled requires gemini.batching.url, "
+                    + "the synchronous batch gateway to send batches to");
+        }
+    }
+
+    public List<GenerateContentResponse> generate(List<GenerateContentRequest> requests) {
+        // Upstream still charges quota per prompt, so the batch takes one
+        // request and the estimated tokens of every prompt it carries
+        long estimatedTokens = requests.stream().mapToLong(rateLimiter::estimateTokens).sum();
+        // Retried as a whole, but never hedged: a duplicate batch costs a
+        // whole batch of quota
+        return resilience.execute(router.defaultModel(), () -> sendWithQuota(requests, estimatedTokens), false);
+    }
+
+    private List<GenerateContentResponse> sendWithQuota(List<GenerateContentRequest> requests,
+            long estimatedTokens) {
+        UpstreamRateLimiter.Permit permit = rateLimiter.acquire(requests.size(), estimatedTokens);
+        List<GenerateContentResponse> responses;
+        try {
+            responses = concurrencyLimiter.call(() -> sendWithLease(requests, estimatedTokens));
+        } catch (RuntimeException e) {
+            rateLimiter.release(permit);
+            throw e;
+        }
+
+        rateLimiter.settle(permit, totalTokens(responses));
+        return responses;
+    }
+
+    private List<GenerateContentResponse> sendWithLease(List<GenerateContentRequest> requests,
+            long estimatedTokens) {
+        UpstreamPool.Lease lease = upstreams.acquire(requests.size(), estimatedTokens);
+        List<GenerateContentResponse> responses;
+        try {
+            responses = send(lease, requests);
+        } catch (RuntimeException e) {
+            upstreams.failed(lease, e);
+            throw e;
+        }
+        upstreams.succeeded(lease, totalTokens(responses));
+        return responses;
+    }
+
+    private List<GenerateContentResponse> send(UpstreamPool.Lease lease, List<GenerateContentRequest> requests) {
+        String model = router.defaultModel();
+        UpstreamPool.Endpoints endpoints = lease.endpoints(model);
+        if (requests.size() == 1) {
+            GenerateContentResponse response = router.observe(model,
+                    () -> restTemplate.postForObject(endpoints.generateContentUrl(),
+                            new HttpEntity<>(requests.get(0), lease.upstream().headers()),
+                            GenerateContentResponse.class));
+            return List.of(response);
+        }
+
+        BatchGenerateContentResponse batch = router.observe(model,
+                () -> restTemplate.postForObject(batchUrl,
+                        new HttpEntity<>(new BatchGenerateContentRequest(requests), lease.upstream().headers()),
+                        BatchGenerateContentResponse.class, model));
+        if (batch == null || batch.getResponses() == null || batch.getResponses().size() != requests.size()) {
+            throw new IllegalStateException("Batch response does not match the " + requests.size()
+                    + " submitted requests");
+        }
+        return batch.getResponses();
+    }
+
+    private static long totalTokens(List<GenerateContentResponse> responses) {
+        long total = 0;
+        for (GenerateContentResponse response : responses) {
+            if (response != null && response.getUsageMetadata() != null
+                    && response.getUsageMetadata().getTotalTokenCount() != null) {
+                total += response.getUsageMetadata().getTotalTokenCount();
+            }
+        }
+        return total;
+    }
+}
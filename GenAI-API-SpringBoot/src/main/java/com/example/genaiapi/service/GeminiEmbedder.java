@@ -0,0 +1,69 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.EmbedContentRequest;
+import com.example.genaiapi.model.EmbedContentResponse;
+import com.example.genaiapi.model.GenerateContentRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/*
+ * Embeds prompts with the upstream embedContent endpoint. Semantically much
+ * stronger than HashingEmbedder (it matches real paraphrases), at the price of
+ * one extra, but fast, upstream round trip per lookup.
+ */
+@Component
+@ConditionalOnProperty(name = "gemini.semantic-cache.embedder", havingValue = "gemini")
+public class GeminiEmbedder implements Embedder {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Value("${gemini.semantic-cache.embedding-model:text-embedding-004}")
+    private String embeddingModel;
+
+    @Value("${gemini.semantic-cache.dimensions:768}")
+    private int dimensions;
+
+    @Override
+    public float[] embed(String text) {
+        EmbedContentRequest request = new EmbedContentRequest(
+                new GenerateContentRequest.Content(null, List.of(new GenerateContentRequest.Part(text))),
+                dimensions);
+        // Embeddings draw on the key's request quota too, so they are balanced like generateContent
+        UpstreamPool.Lease lease = upstreams.acquire(1, 0);
+        EmbedContentResponse response;
+        try {
+            String url = lease.upstream().url("/models/" + embeddingModel + ":embedContent").toUriString();
+            response = restTemplate.postForObject(url, new HttpEntity<>(request, lease.upstream().headers()),
+                    EmbedContentResponse.class);
+        } catch (RuntimeException e) {
+            upstreams.failed(lease, e);
+            throw e;
+        }
+        upstreams.succeeded(lease, 0);
+        if (response == null || response.getEmbedding() == null || response.getEmbedding().getValues() == null) {
+            throw new IllegalStateException("Empty embedding returned by " + embeddingModel);
+        }
+        List<Float> values = response.getEmbedding().getValues();
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < Math.min(dimensions, values.size()); i++) {
+            vector[i] = values.get(i);
+        }
+        HashingEmbedder.normalize(vector);
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GeminiFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/*
+ * Uploads media to the Gemini File API with the resumable protocol:
+ *
+ * 1. POST {upload-base-url}/files with X-Goog-Upload-Command: start and the
+ * size and MIME type in headers; the answer carries the session URL in
+ * X-Goog-Upload-URL
+ * 2. POST the bytes to that URL with X-Goog-Upload-Command: upload, finalize;
+ * the answer is the File resource
+ *
+ * The bytes are copied from the source into the request body as it is
+ * written (RestTemplate streams bodies), so uploading a large file does not
+ * buffer it. Files that come back PROCESSING (video, long audio) are polled
+ * until ACTIVE before they can be referenced. Files belong to the project of
+ * the key that uploaded them, so uploads use UpstreamPool's primary key.
+ */
+@Component
+public class GeminiFileClient {
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+
+    @Value("${gemini.files.processing-timeout:60s}")
+    private Duration processingTimeout;
+
+    @Value("${gemini.files.processing-poll-interval:500ms}")
+    private Duration processingPollInterval;
+
+    public GeminiFile upload(InputStreamSource source, long size, String mimeType, String displayName) {
+        URI sessionUrl = concurrencyLimiter.call(() -> startSession(size, mimeType, displayName));
+        GeminiFile file = concurrencyLimiter.call(() -> restTemplate.execute(sessionUrl, HttpMethod.POST,
+                request -> {
+                    upstreams.primary().authenticate(request.getHeaders());
+                    request.getHeaders().setContentLength(size);
+                    request.getHeaders().set("X-Goog-Upload-Offset", "0");
+                    request.getHeaders().set("X-Goog-Upload-Command", "upload, finalize");
+                    try (InputStream in = source.getInputStream()) {
+                        in.transferTo(request.getBody());
+                    }
+                },
+                new HttpMessageConverterExtractor<>(GeminiFile.UploadResponse.class,
+                        restTemplate.getMessageConverters()))
+                .getFile());
+        return awaitActive(file);
+    }
+
+    private URI startSession(long size, String mimeType, String displayName) {
+        URI url = upstreams.primary().uploadUrl("/files")
+                .build()
+                .toUri();
+        String location = restTemplate.execute(url, HttpMethod.POST,
+                request -> {
+                    upstreams.primary().authenticate(request.getHeaders());
+                    request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    request.getHeaders().set("X-Goog-Upload-Protocol", "resumable");
+                    request.getHeaders().set("X-Goog-Upload-Command", "start");
+                    request.getHeaders().set("X-Goog-Upload-Header-Content-Length", Long.toString(size));
+                    request.getHeaders().set("X-Goog-Upload-Header-Content-Type", mimeType);
+                    String body = "{\"file\":{\"display_name\":\"" + displayName + "\"}}";
+                    request.getBody().write(body.getBytes(StandardCharsets.UTF_8));
+                },
+                response -> response.getHeaders().getFirst("X-Goog-Upload-URL"));
+        if (location == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "File API did not return an upload URL");
+        }
+        return URI.create(location);
+    }
+
+    private GeminiFile awaitActive(GeminiFile file) {
+        long deadline = System.nanoTime() + processingTimeout.toNanos();
+        while ("PROCESSING".equals(file.getState())) {
+            if (System.nanoTime() > deadline) {
+                throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                        "File " + file.getName() + " is still processing");
+            }
+            try {
+                Thread.sleep(processingPollInterval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting for file");
+            }
+            String name = file.getName();
+            file = concurrencyLimiter.call(() -> restTemplate.exchange(
+                    upstreams.primary().url("/" + name).toUriString(), HttpMethod.GET,
+                    new HttpEntity<>(upstreams.primary().headers()), GeminiFile.class).getBody());
+        }
+        if ("FAILED".equals(file.getState())) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "File API could not process " + file.getName());
+        }
+        return file;
+    }
+}
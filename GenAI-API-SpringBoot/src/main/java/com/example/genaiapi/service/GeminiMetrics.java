@@ -0,0 +1,266 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/*
+ * Micrometer meters for the request path, scraped from /actuator/prometheus:
+ *
+ * - gemini.endpoint.requests: GeminiController handlers, by endpoint and status
+ * - gemini.operation.requests: GeminiService operations, by operation and
+ * outcome (cache hits included, so this is what callers see)
+ * - gemini.upstream.requests: the HTTP calls made by makeRequest, by model,
+ * status and the first candidate's finishReason
+ * - gemini.upstream.tokens: UsageMetadata token counts, by model and type
+ * - gemini.upstream.request.size / response.size: body bytes on the wire
+ *
+ * Every meter is registered once and then found by array index or by an
+ * identity-hashed key, so recording on the hot path never builds a Tags array
+ * or asks the registry to look up a meter. Status codes and finish reasons
+ * are closed sets, which keeps these arrays (and the Prometheus series)
+ * bounded; meters are created on first use only.
+ */
+@Component
+public class GeminiMetrics {
+
+    public enum Operation {
+        GENERATE_TEXT("generateText"),
+        GENERATE_TEXT_WITH_SYSTEM_INSTRUCTION("generateTextWithSystemInstruction"),
+        GENERATE_TEXT_WITH_CONFIG("generateTextWithConfig"),
+        GENERATE_STRUCTURED_JSON("generateStructuredJson"),
+        FUNCTION_CALLING("functionCalling"),
+        CODE_EXECUTION("codeExecution"),
+        MULTI_TURN_CONVERSATION("multiTurnConversation"),
+        ANALYZE_IMAGE("analyzeImage"),
+        SESSION_MESSAGE("sessionMessage"),
+        SUMMARIZE_CONTEXT("summarizeContext");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    // Tag values for finishReason; anything else is reported as OTHER
+    private static final String[] FINISH_REASONS = { "STOP", "MAX_TOKENS", "SAFETY", "RECITATION", "LANGUAGE",
+            "BLOCKLIST", "PROHIBITED_CONTENT", "SPII", "MALFORMED_FUNCTION_CALL", "OTHER", "none" };
+
+    private static final int FINISH_OTHER = 9;
+
+    private static final int FINISH_NONE = 10;
+
+    // One slot per HTTP status; slot 0 is "none", no HTTP response at all
+    // (I/O error, timeout, open circuit)
+    private static final int STATUS_SLOTS = 600;
+
+    private final MeterRegistry registry;
+
+    private final Timer[] operationSuccess;
+
+    private final Timer[] operationError;
+
+    private final Map<String, ModelMeters> models = new ConcurrentHashMap<>();
+
+    private final Map<Method, EndpointMeters> endpoints = new ConcurrentHashMap<>();
+
+    private final DistributionSummary requestBytes;
+
+    private final DistributionSummary responseBytes;
+
+    public GeminiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Operation[] operations = Operation.values();
+        operationSuccess = new Timer[operations.length];
+        operationError = new Timer[operations.length];
+        for (Operation operation : operations) {
+            operationSuccess[operation.ordinal()] = operationTimer(operation, "success");
+            operationError[operation.ordinal()] = operationTimer(operation, "error");
+        }
+        requestBytes = DistributionSummary.builder("gemini.upstream.request.size")
+                .description("Upstream request body size")
+                .baseUnit("bytes")
+                .register(registry);
+        responseBytes = DistributionSummary.builder("gemini.upstream.response.size")
+                .description("Upstream response body size")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Runs one GeminiService operation and records its duration and outcome
+     */
+    public <T> T time(Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            operationSuccess[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            operationError[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes one upstream generateContent call and records its duration,
+     * status, finishReason and token usage
+     */
+    public ResponseEntity<GenerateContentResponse> timeUpstream(String model,
+            Supplier<ResponseEntity<GenerateContentResponse>> call) {
+        ModelMeters meters = models.computeIfAbsent(model, ModelMeters::new);
+        long start = System.nanoTime();
+        ResponseEntity<GenerateContentResponse> response;
+        try {
+            response = call.get();
+        } catch (HttpStatusCodeException e) {
+            meters.upstream(statusSlot(e.getStatusCode().value()), FINISH_NONE)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        } catch (RuntimeException e) {
+            meters.upstream(0, FINISH_NONE).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        GenerateContentResponse body = response.getBody();
+        meters.upstream(statusSlot(response.getStatusCode().value()), finishReason(body))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (body != null && body.getUsageMetadata() != null) {
+            GenerateContentResponse.UsageMetadata usage = body.getUsageMetadata();
+            record(meters.promptTokens, usage.getPromptTokenCount());
+            record(meters.candidatesTokens, usage.getCandidatesTokenCount());
+            record(meters.totalTokens, usage.getTotalTokenCount());
+        }
+        return response;
+    }
+
+    /**
+     * Records one handled GeminiController request
+     */
+    public void recordEndpoint(Method handler, int status, long nanos) {
+        endpoints.computeIfAbsent(handler, EndpointMeters::new)
+                .timer(statusSlot(status))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRequestBytes(long bytes) {
+        requestBytes.record(bytes);
+    }
+
+    public void recordResponseBytes(long bytes) {
+        responseBytes.record(bytes);
+    }
+
+    private Timer operationTimer(Operation operation, String outcome) {
+        return Timer.builder("gemini.operation.requests")
+                .description("GeminiService operations, including cache hits")
+                .tag("operation", operation.tag)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static void record(DistributionSummary summary, Integer value) {
+        if (value != null) {
+            summary.record(value);
+        }
+    }
+
+    private static int statusSlot(int status) {
+        return status >= 100 && status < STATUS_SLOTS ? status : 0;
+    }
+
+    private static String statusTag(int statusSlot) {
+        return statusSlot == 0 ? "none" : Integer.toString(statusSlot);
+    }
+
+    private static int finishReason(GenerateContentResponse body) {
+        if (body == null || body.getCandidates() == null || body.getCandidates().isEmpty()
+                || body.getCandidates().get(0).getFinishReason() == null) {
+            return FINISH_NONE;
+        }
+        String reason = body.getCandidates().get(0).getFinishReason();
+        for (int i = 0; i < FINISH_OTHER; i++) {
+            if (FINISH_REASONS[i].equals(reason)) {
+                return i;
+            }
+        }
+        return FINISH_OTHER;
+    }
+
+    private final class ModelMeters {
+        final String model;
+        final AtomicReferenceArray<Timer> upstream = new AtomicReferenceArray<>(STATUS_SLOTS * FINISH_REASONS.length);
+        final DistributionSummary promptTokens;
+        final DistributionSummary candidatesTokens;
+        final DistributionSummary totalTokens;
+
+        ModelMeters(String model) {
+            this.model = model;
+            promptTokens = tokens("prompt");
+            candidatesTokens = tokens("candidates");
+            totalTokens = tokens("total");
+        }
+
+        Timer upstream(int statusSlot, int finishReason) {
+            int index = statusSlot * FINISH_REASONS.length + finishReason;
+            Timer timer = upstream.get(index);
+            if (timer == null) {
+                // Registration is idempotent, so a race only builds the same meter twice
+                timer = Timer.builder("gemini.upstream.requests")
+                        .description("Upstream generateContent calls")
+                        .tag("model", model)
+                        .tag("status", statusTag(statusSlot))
+                        .tag("finish_reason", FINISH_REASONS[finishReason])
+                        .register(registry);
+                upstream.set(index, timer);
+            }
+            return timer;
+        }
+
+        private DistributionSummary tokens(String type) {
+            return DistributionSummary.builder("gemini.upstream.tokens")
+                    .description("Tokens reported in usageMetadata")
+                    .baseUnit("tokens")
+                    .tag("model", model)
+                    .tag("type", type)
+                    .register(registry);
+        }
+    }
+
+    private final class EndpointMeters {
+        final String endpoint;
+        final AtomicReferenceArray<Timer> byStatus = new AtomicReferenceArray<>(STATUS_SLOTS);
+
+        EndpointMeters(Method handler) {
+            this.endpoint = handler.getName();
+        }
+
+        Timer timer(int statusSlot) {
+            Timer timer = byStatus.get(statusSlot);
+            if (timer == null) {
+                timer = Timer.builder("gemini.endpoint.requests")
+                        .description("GeminiController requests")
+                        .tag("endpoint", endpoint)
+                        .tag("status", statusTag(statusSlot))
+                        .register(registry);
+                byStatus.set(statusSlot, timer);
+            }
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/*
+ * Builds the GenerateContentRequest payload for each supported operation.
+ *
+ * The blocking GeminiService and the non-blocking ReactiveGeminiService send
+ * exactly the same JSON upstream; they only differ in how the HTTP call is
+ * made. Keeping the payload construction here means both stay in sync.
+ *
+ * Requests for the fixed-schema operations are created from RequestTemplates,
+ * so their constant sections are neither rebuilt nor re-serialized per call.
+ */
+@Component
+public class GeminiRequestBuilder {
+
+    // Fixed schemas and tools, built and serialized once
+    private final RequestTemplates templates;
+
+    public GeminiRequestBuilder(RequestTemplates templates) {
+        this.templates = templates;
+    }
+
+    /**
+     * Single user turn with one text part
+     */
+    public GenerateContentRequest text(String prompt) {
+        GenerateContentRequest request = new GenerateContentRequest();
+        request.setContents(List.of(userContent(prompt)));
+        return request;
+    }
+
+    /**
+     * Text prompt plus a system instruction that steers the model's persona
+     */
+    public GenerateContentRequest textWithSystemInstruction(String prompt, String systemInstruction) {
+        GenerateContentRequest request = text(prompt);
+        if (systemInstruction != null && !systemInstruction.isBlank()) {
+            request.setSystemInstruction(new GenerateContentRequest.SystemInstruction(
+                    List.of(new GenerateContentRequest.Part(systemInstruction))));
+        }
+        return request;
+    }
+
+    /**
+     * Text prompt with sampling parameters
+     */
+    public GenerateContentRequest textWithConfig(String prompt, Double temperature, Integer maxTokens,
+            Double topP, Integer topK) {
+        GenerateContentRequest.GenerationConfig config = new GenerateContentRequest.GenerationConfig();
+        config.setTemperature(temperature);
+        config.setMaxOutputTokens(maxTokens);
+        config.setTopP(topP);
+        config.setTopK(topK);
+        return textWithConfig(prompt, config);
+    }
+
+    /**
+     * Text prompt with a caller-supplied GenerationConfig (may be null)
+     */
+    public GenerateContentRequest textWithConfig(String prompt, GenerateContentRequest.GenerationConfig config) {
+        GenerateContentRequest request = text(prompt);
+        request.setGenerationConfig(config);
+        return request;
+    }
+
+    /**
+     * Text prompt whose answer must follow the recipe JSON schema
+     */
+    public GenerateContentRequest structuredJson(String prompt) {
+        return templates.structuredJson().withContents(List.of(userContent(prompt)));
+    }
+
+    /**
+     * Text prompt with the get_current_weather function declared as a tool
+     */
+    public GenerateContentRequest functionCalling(String prompt) {
+        return templates.functionCalling().withContents(List.of(userContent(prompt)));
+    }
+
+    /**
+     * Text prompt with the code execution tool enabled
+     */
+    public GenerateContentRequest codeExecution(String prompt) {
+        return templates.codeExecution().withContents(List.of(userContent(prompt)));
+    }
+
+    /**
+     * One Content per turn, in chronological order
+     */
+    public GenerateContentRequest multiTurnConversation(List<Map<String, String>> conversationHistory) {
+        List<GenerateContentRequest.Content> contents = new ArrayList<>(conversationHistory.size());
+        for (Map<String, String> turn : conversationHistory) {
+            contents.add(new GenerateContentRequest.Content(turn.get("role"),
+                    List.of(new GenerateContentRequest.Part(turn.get("text")))));
+        }
+        return new GenerateContentRequest(contents);
+    }
+
+    /**
+     * Turns that are already Content objects, e.g. a stored session history;
+     * the list is sent as given, not copied
+     */
+    public GenerateContentRequest conversation(List<GenerateContentRequest.Content> contents) {
+        return new GenerateContentRequest(contents);
+    }
+
+    /**
+     * Single user turn, for appending to a stored conversation
+     */
+    public GenerateContentRequest.Content userTurn(String text) {
+        return userContent(text);
+    }
+
+    /**
+     * Text prompt followed by a base64 inline image in the same user turn
+     */
+    public GenerateContentRequest analyzeImage(String prompt, String base64Image, String mimeType) {
+        List<GenerateContentRequest.Part> parts = new ArrayList<>();
+        parts.add(new GenerateContentRequest.Part(prompt));
+
+        GenerateContentRequest.Part imagePart = new GenerateContentRequest.Part();
+        imagePart.setInlineData(new GenerateContentRequest.InlineData(mimeType, base64Image));
+        parts.add(imagePart);
+
+        return new GenerateContentRequest(List.of(new GenerateContentRequest.Content("user", parts)));
+    }
+
+    /**
+     * Text prompt followed by an image that is base64-encoded from the source
+     * while the request is being sent
+     */
+    public GenerateContentRequest analyzeImage(String prompt, InputStreamSource image, long size, String mimeType) {
+        List<GenerateContentRequest.Part> parts = new ArrayList<>();
+        parts.add(new GenerateContentRequest.Part(prompt));
+
+        GenerateContentRequest.Part imagePart = new GenerateContentRequest.Part();
+        imagePart.setInlineData(new GenerateContentRequest.InlineData(mimeType, image, size));
+        parts.add(imagePart);
+
+        return new GenerateContentRequest(List.of(new GenerateContentRequest.Content("user", parts)));
+    }
+
+    /**
+     * Text prompt followed by a reference to media uploaded through the File API
+     */
+    public GenerateContentRequest analyzeFile(String prompt, String fileUri, String mimeType) {
+        List<GenerateContentRequest.Part> parts = new ArrayList<>();
+        parts.add(new GenerateContentRequest.Part(prompt));
+
+        GenerateContentRequest.Part filePart = new GenerateContentRequest.Part();
+        filePart.setFileData(new GenerateContentRequest.FileData(mimeType, fileUri));
+        parts.add(filePart);
+
+        return new GenerateContentRequest(List.of(new GenerateContentRequest.Content("user", parts)));
+    }
+
+    private GenerateContentRequest.Content userContent(String prompt) {
+        return new GenerateContentRequest.Content("user", List.of(new GenerateContentRequest.Part(prompt)));
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.RequestOptions;
+
+/*
+ * Holds the RequestOptions of the HTTP request being served by the current
+ * thread. The blocking path runs controller and service on the same thread
+ * (platform or virtual), so a ThreadLocal is enough; code running outside a web
+ * request (benchmarks, background jobs) simply sees RequestOptions.DEFAULT.
+ */
+public final class GeminiRequestContext {
+
+    private static final ThreadLocal<RequestOptions> CURRENT = new ThreadLocal<>();
+
+    private GeminiRequestContext() {
+    }
+
+    public static RequestOptions current() {
+        RequestOptions options = CURRENT.get();
+        return options != null ? options : RequestOptions.DEFAULT;
+    }
+
+    public static void set(RequestOptions options) {
+        CURRENT.set(options);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -1,12 +1,13 @@
 package com.example.genaiapi.service;
 
 
-import com.example.genaiapi.config.GeminiConfig;
-import com.example.gemini.model.GenerateContentRequest;
-import com.example.gemini.model.GenerateContentResponse;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 
@@ -20,35 +21,76 @@ public class GeminiService {
     private RestTemplate restTemplate;
 
     @Autowired
-    private GeminiConfig geminiConfig;
+    private GeminiRequestBuilder requestBuilder;
 
-    private static final String MODEL_NAME = "gemini-2.0-flash";
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private ResponseCache responseCache;
+
+    @Autowired
+    private SemanticResponseCache semanticCache;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private MicroBatcher microBatcher;
+
+    @Autowired
+    private UpstreamRateLimiter rateLimiter;
+
+    @Autowired
+    private UpstreamResilience resilience;
+
+    @Autowired
+    private FileReferenceCache fileReferenceCache;
+
+    @Autowired
+    private GeminiMetrics metrics;
+
+    @Autowired
+    private UpstreamTracing tracing;
+
+    @Autowired
+    private UsageLedger usageLedger;
+
+    @Autowired
+    private ContextWindowManager contextWindow;
+
+    @Autowired
+    private ContextCacheManager contextCache;
+
+    @Autowired
+    private ModelRouter router;
+
+    @Autowired
+    private UpstreamPool upstreams;
 
     /**
      * Basic text generation
      */
     public GenerateContentResponse generateText(String prompt) {
-        String url = buildUrl("generateContent");
-        /*user defined */
-
-        GenerateContentRequest request = new GenerateContentRequest();
-        request.setContents(
-                List.of(new GenerateContentRequest.Content("user", List.of(new GenerateContentRequest.Part(prompt)))));
-
-        return makeRequest(url, request);
-        
+        GenerateContentRequest request = requestBuilder.text(prompt);
+        ModelRouter.Route route = router.route(GeminiMetrics.Operation.GENERATE_TEXT, request);
+        // Exact-match cache first (a hash is cheaper than an embedding), then the
+        // paraphrase lookup, then upstream (through the micro-batcher when enabled;
+        // batches all go to the default model)
+        return metrics.time(GeminiMetrics.Operation.GENERATE_TEXT, () -> responseCache.getOrLoad(route.model(), request,
+                () -> semanticCache.getOrLoad(route.model(), prompt, () -> microBatcher.isEnabled()
+                                && route.model().equals(router.defaultModel())
+                        ? microBatcher.generate(request)
+                        : makeRequest(route, request))));
     }
     
     /**
      * Text generation with system instructions
      */
     public GenerateContentResponse generateTextWithSystemInstruction(String prompt, String systemInstruction) {
-        String url = buildUrl("generateContent");
-
-        GenerateContentRequest request = new GenerateContentRequest();
-        request.setContents(
-                List.of(new GenerateContentRequest.Content("user", List.of(new GenerateContentRequest.Part(prompt)))));
-        return makeRequest(url, request);
+        return metrics.time(GeminiMetrics.Operation.GENERATE_TEXT_WITH_SYSTEM_INSTRUCTION,
+                () -> makeRequest(GeminiMetrics.Operation.GENERATE_TEXT_WITH_SYSTEM_INSTRUCTION,
+                                requestBuilder.textWithSystemInstruction(prompt, systemInstruction)));
     }
 
     /**
@@ -57,21 +99,20 @@ public class GeminiService {
 
     public GenerateContentResponse generateTextWithConfig(String prompt, Double temperature, Integer maxTokens,
             Double topP, Integer topK) {
-        String url = buildUrl("generateContent");
-
-        GenerateContentRequest request = new GenerateContentRequest();
-
-        request.setContents(
-                List.of(new GenerateContentRequest.Content("user", List.of(new GenerateContentRequest.Part(prompt)))));
-        GenerateContentRequest.GenerationConfig config = new GenerateContentRequest.GenerationConfig();
-        config.setTemperature(temperature);
-        config.setMaxOutputTokens(maxTokens);
-        config.setTopP(topP);
-        config.setTopK(topK);
-        request.setGenerationConfig(config);
-
-        return makeRequest(url, request);
+        GenerateContentRequest request = requestBuilder.textWithConfig(prompt, temperature, maxTokens, topP, topK);
+        ModelRouter.Route route = router.route(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG, request);
+        return metrics.time(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG,
+                () -> responseCache.getOrLoad(route.model(), request, () -> makeRequest(route, request)));
+    }
 
+    /**
+     * Text generation with a caller-supplied GenerationConfig
+     */
+    public GenerateContentResponse generateTextWithConfig(String prompt, GenerateContentRequest.GenerationConfig config) {
+        GenerateContentRequest request = requestBuilder.textWithConfig(prompt, config);
+        ModelRouter.Route route = router.route(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG, request);
+        return metrics.time(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG,
+                () -> responseCache.getOrLoad(route.model(), request, () -> makeRequest(route, request)));
     }
 
     /**
@@ -79,57 +120,12 @@ public class GeminiService {
      */
 
     public GenerateContentResponse generateStructuredJson(String prompt) {
-        // 1. Construct the API Endpoint URL
-        String url = buildUrl("generateContent");
-        // Calls your custom buildUrl method to get the full URL for the generateContent
-        // API.
-
-        // 2. Prepare the Basic Request with the User Prompt
-        GenerateContentRequest request = new GenerateContentRequest();
-        request.setContents(List.of(
-                new GenerateContentRequest.Content("user",
-                        List.of(new GenerateContentRequest.Part(prompt)))));
-        // This sets up the 'contents' field of the request, containing a single "user"
-        // turn
-        // with the text from the 'prompt' parameter.
-
-        // 3. Define the JSON Schema for the Desired Output
-        Map<String, Object> schema = Map.of(
-                "type", "ARRAY", // We expect the top-level JSON to be an array
-                "items", Map.of( // Each item in the array will be an object
-                        "type", "OBJECT",
-                        "properties", Map.of( // Properties for each object in the array
-                                "recipeName", Map.of("type", "STRING"), // A string property for the recipe name
-                                "ingredients", Map.of( // An array property for ingredients
-                                        "type", "ARRAY",
-                                        "items", Map.of("type", "STRING") // Each item in the ingredients array is a
-                                                                                           // string
-                                )),
-                        "propertyOrdering", List.of("recipeName", "ingredients") // Optional: Suggests preferred order
-                ));
-        // This is the most crucial part for structured JSON. You're building a Java Map
-        // that represents the JSON schema you want the model to adhere to for its
-        // response.
-        // In this case, it's an array of objects, where each object has 'recipeName'
-        // (string)
-        // and 'ingredients' (array of strings).
-
-        // 4. Configure Generation for JSON Output
-        GenerateContentRequest.GenerationConfig config = new GenerateContentRequest.GenerationConfig();
-        config.setResponseMimeType("application/json"); // Tells the model to output JSON
-        config.setResponseSchema(schema); // Provides the schema for the expected JSON structure
-        request.setGenerationConfig(config);
-        // This creates a GenerationConfig object, sets its responseMimeType to
-        // "application/json"
-        // (which is mandatory for structured JSON output), and then attaches your
-        // defined schema.
-
-        // 5. Make the API Request
-        return makeRequest(url, request);
-        // Finally, it calls your makeRequest helper method, passing the constructed URL
-        // and the
-        // GenerateContentRequest object that now includes all the necessary JSON schema
-        // and mime type configurations.
+        // The recipe schema and the "application/json" response MIME type are
+        // attached by GeminiRequestBuilder.structuredJson
+        GenerateContentRequest request = requestBuilder.structuredJson(prompt);
+        ModelRouter.Route route = router.route(GeminiMetrics.Operation.GENERATE_STRUCTURED_JSON, request);
+        return metrics.time(GeminiMetrics.Operation.GENERATE_STRUCTURED_JSON,
+                () -> responseCache.getOrLoad(route.model(), request, () -> makeRequest(route, request)));
     }
     
     /**
@@ -137,65 +133,10 @@ public class GeminiService {
      */
 
     public GenerateContentResponse functionCalling(String prompt) {
-        // 1. Construct the API Endpoint URL
-        String url = buildUrl("generateContent");
-        // Calls your custom buildUrl method to get the full URL for the generateContent
-        // API.
-
-        // 2. Prepare the Basic Request with the User Prompt
-        GenerateContentRequest request = new GenerateContentRequest();
-        request.setContents(List.of(
-                new GenerateContentRequest.Content("user",
-                        List.of(new GenerateContentRequest.Part(prompt)))));
-        // This sets up the 'contents' field of the request, containing a single "user"
-        // turn
-        // with the text from the 'prompt' parameter.
-
-        // 3. Define the Function Declaration
-        Map<String, Object> functionParams = Map.of(
-                "type", "object",
-                "properties", Map.of( // Defines the properties (arguments) of the function
-                        "location", Map.of(
-                                "type", "string",
-                                "description", "The city and state, e.g. San Francisco, CA"),
-                        "unit", Map.of( // Optional parameter with enum values
-                                "type", "string",
-                                "enum", List.of("celsius", "fahrenheit"),
-                                "description", "Temperature unit")),
-                "required", List.of("location") // Specifies which parameters are mandatory
-        );
-        // This Map<String, Object> defines the schema for the function's parameters,
-        // following OpenAPI Specification v3.0 format. This tells the model what
-        // arguments
-        // the 'get_current_weather' function expects.
-
-        GenerateContentRequest.FunctionDeclaration function = new GenerateContentRequest.FunctionDeclaration(
-                "get_current_weather", // The name of the function
-                "Get the current weather in a given location", // A description for the model
-                functionParams // The parameter schema defined above
-        );
-        // This creates a FunctionDeclaration object, which formally defines the
-        // function
-        // (its name, description, and expected parameters) to the Gemini model.
-
-        // 4. Enable Tooling (Function Calling) in the Request
-        GenerateContentRequest.Tool tool = new GenerateContentRequest.Tool();
-        tool.setFunctionDeclarations(List.of(function));
-        // This creates a Tool object and adds your 'get_current_weather' function
-        // declaration to it.
-        // The Gemini API expects function declarations within a 'tools' array.
-
-        request.setTools(List.of(tool));
-        // This sets the 'tools' field of your main GenerateContentRequest. By including
-        // tool definitions here, you inform the model that it has access to these
-        // functions
-        // and can suggest calling them if appropriate.
-
-        // 5. Make the API Request
-        return makeRequest(url, request);
-        // Finally, it calls your makeRequest helper method, passing the constructed URL
-        // and the
-        // GenerateContentRequest object that now includes the defined tools.
+        // The get_current_weather FunctionDeclaration is wrapped in a Tool by
+        // GeminiRequestBuilder.functionCalling
+        return metrics.time(GeminiMetrics.Operation.FUNCTION_CALLING,
+                () -> makeRequest(GeminiMetrics.Operation.FUNCTION_CALLING, requestBuilder.functionCalling(prompt)));
     }
 
     /*
@@ -427,17 +368,9 @@ public class GeminiService {
        */
 
        public GenerateContentResponse codeExecution(String prompt) {
-               String url = buildUrl("generateContent");
-
-               GenerateContentRequest request = new GenerateContentRequest();
-               request.setContents(List
-                               .of(new GenerateContentRequest.Content("user",
-                                               List.of(new GenerateContentRequest.Part(prompt)))));
-               GenerateContentRequest.Tool tool = new GenerateContentRequest.Tool();
-               tool.setCodeExecution(Map.of());
-               request.setTools(List.of(tool));
-
-               return makeRequest(url, request);
+               return metrics.time(GeminiMetrics.Operation.CODE_EXECUTION,
+                               () -> makeRequest(GeminiMetrics.Operation.CODE_EXECUTION,
+                                               requestBuilder.codeExecution(prompt)));
        }
        /*
        * In summary, this method's purpose is to:
@@ -498,19 +431,31 @@ public class GeminiService {
        */
         
        public GenerateContentResponse multiTurnConversation(List<Map<String, String>> conversationHistory) {
-               String url = buildUrl("generateContent");
+               return metrics.time(GeminiMetrics.Operation.MULTI_TURN_CONVERSATION,
+                               () -> makeConversationRequest(GeminiMetrics.Operation.MULTI_TURN_CONVERSATION,
+                                               requestBuilder.multiTurnConversation(conversationHistory)));
+       }
 
-               List<GenerateContentRequest.Content> contents = new ArrayList<>();
+       /**
+       * Next turn of a server-side session (see SessionService); contents is the
+       * stored history followed by the new user turn
+       */
 
-               for (Map<String, String> turn : conversationHistory) {
-                       contents.add(new GenerateContentRequest.Content(turn.get("role"),
-                                       List.of(new GenerateContentRequest.Part(turn.get("text")))));
-               }
+       public GenerateContentResponse continueConversation(List<GenerateContentRequest.Content> contents) {
+               return metrics.time(GeminiMetrics.Operation.SESSION_MESSAGE,
+                               () -> makeConversationRequest(GeminiMetrics.Operation.SESSION_MESSAGE,
+                                               requestBuilder.conversation(contents)));
+       }
 
-               GenerateContentRequest request = new GenerateContentRequest();
-               request.setContents(contents);
+       /**
+       * One rolling-summary step for ContextWindowManager; runs on its
+       * background threads, never on a request path
+       */
 
-               return makeRequest(url, request);
+       GenerateContentResponse summarizeContext(String transcript, String instruction) {
+               return metrics.time(GeminiMetrics.Operation.SUMMARIZE_CONTEXT,
+                               () -> makeRequest(GeminiMetrics.Operation.SUMMARIZE_CONTEXT,
+                                               requestBuilder.textWithSystemInstruction(transcript, instruction)));
        }
 
        /*
@@ -625,22 +570,40 @@ public class GeminiService {
        */
         
        public GenerateContentResponse analyzeImage(String prompt, String base64Image, String mimeType) {
-               String url = buildUrl("generateContent");
-
-               List<GenerateContentRequest.Part> parts = new ArrayList<>();
-               parts.add(new GenerateContentRequest.Part(prompt));
+               return metrics.time(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                               () -> makeRequest(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                                               requestBuilder.analyzeImage(prompt, base64Image, mimeType)));
+       }
 
-               GenerateContentRequest.InlineData inlineData = new GenerateContentRequest.InlineData(mimeType,
-                               base64Image);
-               GenerateContentRequest.Part imagePart = new GenerateContentRequest.Part();
-               imagePart.setInlineData(inlineData);
-               parts.add(imagePart);
+       /**
+        * Image analysis streamed from the source (e.g. an uploaded MultipartFile):
+        * the image is never held in memory as bytes or as a base64 String
+        */
+       public GenerateContentResponse analyzeImage(String prompt, InputStreamSource image, long size, String mimeType) {
+               return metrics.time(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                               () -> analyzeStreamedImage(prompt, image, size, mimeType));
+       }
 
-               GenerateContentRequest request = new GenerateContentRequest();
-               request.setContents(List.of(
-                               new GenerateContentRequest.Content("user", parts)));
+       private GenerateContentResponse analyzeStreamedImage(String prompt, InputStreamSource image, long size,
+                       String mimeType) {
+               if (!fileReferenceCache.isEligible(size)) {
+                       return makeRequest(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                                       requestBuilder.analyzeImage(prompt, image, size, mimeType));
+               }
 
-               return makeRequest(url, request);
+               // Large media is uploaded once and then referenced by URI
+               FileReferenceCache.Reference reference = fileReferenceCache.getOrUpload(image, size, mimeType);
+               try {
+                       return makeRequest(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                                       requestBuilder.analyzeFile(prompt, reference.file().getUri(), mimeType));
+               } catch (HttpClientErrorException.Forbidden | HttpClientErrorException.NotFound e) {
+                       // The file was deleted or expired upstream before its announced
+                       // expirationTime: upload it again, once
+                       fileReferenceCache.invalidate(reference);
+                       reference = fileReferenceCache.getOrUpload(image, size, mimeType);
+                       return makeRequest(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                                       requestBuilder.analyzeFile(prompt, reference.file().getUri(), mimeType));
+               }
        }
 
        /*
@@ -712,50 +675,111 @@ public class GeminiService {
         * visual search, content moderation, or accessibility features.
         */
 
-    private String buildUrl(String endpoint) {
-        return UriComponentsBuilder.fromUriString(geminiConfig.getBaseUrl())
-                .path("/models/")
-                .path(MODEL_NAME)
-                .path(":")
-                .path(endpoint)
-                .queryParam("key", geminiConfig.getApiKey())
-                .toUriString();
-    }
-    /*
-     * URL Encoding: Automatically handles URL encoding of path segments and query
-     * parameters, which is crucial for building valid and safe URLs.
-     * Readability: Can be more readable for complex URL structures as you chain
-     * methods (.path(), .queryParam(), etc.).
-     * Flexibility: Easily allows adding/removing path segments or query parameters
-     * conditionally.
+    /**
+     * Routes the request, then sends it
      */
+    GenerateContentResponse makeRequest(GeminiMetrics.Operation operation, GenerateContentRequest request) {
+        return makeRequest(router.route(operation, request), request);
+    }
+
     /*
-     * private String buildUrl(String endpoint) {
-     * return String.format("%s/models/%s:%s?key=%s",
-     * geminiConfig.getBaseUrl(), MODEL_NAME, endpoint, geminiConfig.getApiKey());
-     * }
+     * Routes a conversation on its full history, so rules and prompt-length
+     * tiers see its real size, then sends it compacted to the context budget
+     * of the model it goes to.
      */
+    private GenerateContentResponse makeConversationRequest(GeminiMetrics.Operation operation,
+            GenerateContentRequest request) {
+        return makeRequest(router.route(operation, request), request, true);
+    }
+
+    // Package-private for the JMH benchmarks
+    GenerateContentResponse makeRequest(ModelRouter.Route route, GenerateContentRequest request) {
+        return makeRequest(route, request, false);
+    }
+
+    // compact: hold the history to each attempted model's own budget, the fallback's included
+    private GenerateContentResponse makeRequest(ModelRouter.Route route, GenerateContentRequest request,
+            boolean compact) {
+        try {
+            return sendWithContextCache(route, compact ? contextWindow.compact(route.model(), request) : request);
+        } catch (RuntimeException e) {
+            // The model is failing (5xx, 429, I/O, or its breaker is open) even
+            // after retries: one more try on its fallback model, when routing
+            // allows it
+            ModelRouter.Route fallback = router.fallbackFor(route, e);
+            if (fallback == null) {
+                throw e;
+            }
+            return sendWithContextCache(fallback,
+                    compact ? contextWindow.compact(fallback.model(), request) : request);
+        }
+    }
+
+    private GenerateContentResponse sendWithContextCache(ModelRouter.Route route, GenerateContentRequest request) {
+        // A large shared prefix goes upstream once, as a cachedContent
+        GenerateContentRequest outgoing = contextCache.apply(route.model(), request);
+        if (outgoing == request) {
+            return send(route, request);
+        }
+        try {
+            return send(route, outgoing);
+        } catch (HttpClientErrorException.NotFound | HttpClientErrorException.Forbidden e) {
+            // The cache expired or was deleted upstream early: send in full, once
+            contextCache.invalidate(outgoing.getCachedContent());
+            return send(route, request);
+        }
+    }
 
-    private GenerateContentResponse makeRequest(String url, GenerateContentRequest request) {
-        // 1. Prepare HTTP Headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON); // Sets the "Content-Type" header to "application/json"
-
-        // 2. Create the HTTP Entity (Request Body + Headers)
-        HttpEntity<GenerateContentRequest> entity = new HttpEntity<>(request, headers);
-        // 'request' is your GenerateContentRequest object, which Jackson will convert
-        // to JSON.
-        // 'headers' are the HTTP headers you just defined.
-
-        // 3. Make the HTTP POST request and get the full ResponseEntity
-        ResponseEntity<GenerateContentResponse> response = restTemplate.postForEntity(
-                url, // The full URL of the Gemini API endpoint
-                entity, // The request body (JSON) and headers
-                GenerateContentResponse.class // The expected class for the API's JSON response
-        );
-
-        // 4. Extract and Return the Response Body
-        return response.getBody(); // Retrieves the GenerateContentResponse object from the ResponseEntity
+    private GenerateContentResponse send(ModelRouter.Route route, GenerateContentRequest request) {
+        // Make the HTTP POST request and get the full ResponseEntity
+        // (shared with any identical request that is already in flight, retried /
+        // hedged / short-circuited by the resilience policies, paced by the
+        // RPM/TPM quota, and gated by the upstream semaphore when running on
+        // virtual threads; timed inside the semaphore, so the upstream timer is
+        // the HTTP call alone). Each attempt is traced in its own span, sent
+        // with the key and endpoint the upstream pool leases it, and reported
+        // to the router's health statistics for its model.
+        String model = route.model();
+        return requestCoalescer.execute(model, request, () -> resilience.execute(model, () -> tracing.traceUpstream(model, () -> {
+            UpstreamRateLimiter.Permit permit = rateLimiter.acquire(request);
+            ResponseEntity<GenerateContentResponse> response;
+            try {
+                response = concurrencyLimiter.call(() -> {
+                    UpstreamPool.Lease lease = upstreams.acquire(request);
+                    // The JSON body, authenticated with the leased key
+                    HttpHeaders headers = lease.upstream().headers();
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    HttpEntity<GenerateContentRequest> entity = new HttpEntity<>(request, headers);
+                    try {
+                        ResponseEntity<GenerateContentResponse> answer = router.observe(model,
+                                () -> metrics.timeUpstream(model, () -> restTemplate.postForEntity(
+                                        lease.endpoints(model).generateContentUrl(), // The model's generateContent URL on the leased key, built once
+                                        entity, // The request body (JSON) and headers
+                                        GenerateContentResponse.class // The expected class for the API's JSON response
+                                )));
+                        upstreams.succeeded(lease, answer.getBody());
+                        return answer;
+                    } catch (RuntimeException e) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            // A hedge loser being cancelled, not a failing key
+                            upstreams.abandoned(lease);
+                        } else {
+                            upstreams.failed(lease, e);
+                        }
+                        throw e;
+                    }
+                });
+            } catch (RuntimeException e) {
+                rateLimiter.release(permit);
+                throw e;
+            }
+
+            // Extract and Return the Response Body
+            GenerateContentResponse body = response.getBody(); // Retrieves the GenerateContentResponse object from the ResponseEntity
+            rateLimiter.settle(permit, body);
+            usageLedger.record(model, body);
+            return body;
+        }), true));
     }
 
     
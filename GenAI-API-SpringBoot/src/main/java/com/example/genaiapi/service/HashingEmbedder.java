@@ -0,0 +1,68 @@
+package com.example.genaiapi.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/*
+ * Local, deterministic embedder based on feature hashing of word unigrams and
+ * bigrams. It has no notion of synonyms, but it catches re-orderings,
+ * punctuation and casing differences and small edits, costs microseconds, and
+ * always gives the same vector for the same text, which makes it the embedder
+ * to use in tests.
+ */
+@Component
+@ConditionalOnProperty(name = "gemini.semantic-cache.embedder", havingValue = "hashing", matchIfMissing = true)
+public class HashingEmbedder implements Embedder {
+
+    private final int dimensions;
+
+    public HashingEmbedder(@Value("${gemini.semantic-cache.dimensions:256}") int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String[] words = text.toLowerCase().split("[^\\p{L}\\p{Nd}]+");
+        String previous = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            addFeature(vector, word.hashCode(), 1.0f);
+            if (previous != null) {
+                addFeature(vector, (previous + ' ' + word).hashCode(), 0.5f);
+            }
+            previous = word;
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    // The sign bit spreads collisions around zero instead of always adding up
+    private void addFeature(float[] vector, int hash, float weight) {
+        int mixed = hash * 0x9E3779B9;
+        int bucket = Math.floorMod(mixed, dimensions);
+        vector[bucket] += (mixed >>> 31) == 0 ? weight : -weight;
+    }
+
+    static void normalize(float[] vector) {
+        double sum = 0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        if (sum == 0) {
+            return;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inverse;
+        }
+    }
+}
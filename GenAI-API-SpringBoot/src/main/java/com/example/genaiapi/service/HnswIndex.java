@@ -0,0 +1,409 @@
+package com.example.genaiapi.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/*
+ * Fixed-capacity HNSW (Hierarchical Navigable Small World) graph over unit
+ * vectors, used by SemanticResponseCache for approximate nearest-neighbour
+ * lookups by cosine similarity.
+ *
+ * Memory layout is primitive and pre-allocated: all vectors live in one
+ * float[capacity * dimensions], layer-0 links in one int[capacity * maxM0],
+ * so the footprint is fixed at construction time. Only the (rare) upper-layer
+ * link lists are allocated per node.
+ *
+ * Removal is by tombstone: a removed node stays traversable but is never
+ * returned, and its slot goes on a free list. add() reuses free slots before
+ * it ever needs a rebuild: the slot keeps the level it was first given (so
+ * links that still arrive at it stay well-formed), its old neighbours relink
+ * among themselves around it, and the new vector is inserted as usual.
+ * evictLeastRecentlyUsed() picks the victims by last access time.
+ *
+ * Not thread-safe: callers must hold a write lock for add/evict and at
+ * least a read lock for search. search() only writes the lastAccess stamp,
+ * which is a benign race.
+ */
+class HnswIndex<T> {
+
+    private final int dimensions;
+    private final int capacity;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final float[] vectors;
+    private final int[] layer0Links;
+    private final int[] layer0Counts;
+    private final int[][][] upperLinks;
+    private final int[] levels;
+    private final boolean[] deleted;
+    private final long[] lastAccess;
+    private final Object[] values;
+    private final int[] freeSlots;
+
+    private int freeCount;
+    private int used;
+    private int live;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int capacity, int m, int efConstruction) {
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.vectors = new float[capacity * dimensions];
+        this.layer0Links = new int[capacity * maxM0];
+        this.layer0Counts = new int[capacity];
+        this.upperLinks = new int[capacity][][];
+        this.levels = new int[capacity];
+        this.deleted = new boolean[capacity];
+        this.lastAccess = new long[capacity];
+        this.values = new Object[capacity];
+        this.freeSlots = new int[capacity];
+    }
+
+    record Match<T>(T value, float similarity) {
+    }
+
+    int size() {
+        return live;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Slots that are no longer returned but still occupy the graph
+     */
+    int tombstones() {
+        return used - live;
+    }
+
+    boolean isFull() {
+        return used == capacity && freeCount == 0;
+    }
+
+    /**
+     * Approximate heap held by the index arrays, independent of fill level
+     */
+    long footprintBytes() {
+        return 4L * vectors.length + 4L * layer0Links.length + 4L * capacity * 4 + 8L * capacity + capacity;
+    }
+
+    /**
+     * Adds a unit vector; the caller must make room first when isFull()
+     */
+    void add(float[] vector, T value, long now) {
+        int node;
+        int level;
+        if (freeCount > 0) {
+            node = freeSlots[--freeCount];
+            unlink(node);
+            deleted[node] = false;
+            level = levels[node];
+        } else if (used < capacity) {
+            node = used++;
+            level = randomLevel();
+            levels[node] = level;
+            if (level > 0) {
+                upperLinks[node] = new int[level][m + 1];
+            }
+        } else {
+            throw new IllegalStateException("HNSW index is full");
+        }
+        live++;
+        System.arraycopy(vector, 0, vectors, node * dimensions, dimensions);
+        values[node] = value;
+        lastAccess[node] = now;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> nearest = searchLayer(vector, current, efConstruction, l);
+            int maxLinks = l == 0 ? maxM0 : m;
+            int linked = 0;
+            for (Candidate candidate : nearest) {
+                if (linked == maxLinks) {
+                    break;
+                }
+                // A reused slot can be reached through links to its old vector
+                if (candidate.node == node) {
+                    continue;
+                }
+                setLink(node, l, linked++, candidate.node);
+                addReverseLink(candidate.node, node, l);
+            }
+            setLinkCount(node, l, linked);
+            current = nearest.get(0).node == node && nearest.size() > 1 ? nearest.get(1).node : nearest.get(0).node;
+        }
+        if (level > maxLevel) {
+            // A tombstoned entry point was kept off the free list; it can go now
+            if (deleted[entryPoint]) {
+                freeSlots[freeCount++] = entryPoint;
+            }
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Best live match for a unit vector among the values accepted, or null
+     * when there is none within the search beam
+     */
+    Match<T> searchNearest(float[] query, int efSearch, long now, Predicate<T> accept) {
+        if (live == 0) {
+            return null;
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        for (Candidate candidate : searchLayer(query, current, Math.max(efSearch, 1), 0)) {
+            if (deleted[candidate.node]) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            T value = (T) values[candidate.node];
+            if (accept.test(value)) {
+                lastAccess[candidate.node] = now;
+                return new Match<>(value, 1.0f - candidate.distance);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tombstones the count least recently used live entries
+     */
+    void evictLeastRecentlyUsed(int count) {
+        Integer[] order = new Integer[used];
+        int n = 0;
+        for (int node = 0; node < used; node++) {
+            if (!deleted[node]) {
+                order[n++] = node;
+            }
+        }
+        Arrays.sort(order, 0, n, Comparator.comparingLong(node -> lastAccess[node]));
+        for (int i = 0; i < Math.min(count, n); i++) {
+            int node = order[i];
+            deleted[node] = true;
+            values[node] = null;
+            live--;
+            // Every search starts at the entry point, so its slot stays put
+            if (node != entryPoint) {
+                freeSlots[freeCount++] = node;
+            }
+        }
+    }
+
+    /*
+     * Detaches a free slot before reuse: on every level, each old neighbour
+     * replaces its link to the slot with the best of the slot's other
+     * neighbours, then the slot's own links are dropped.
+     */
+    private void unlink(int node) {
+        for (int l = 0; l <= levels[node]; l++) {
+            int count = linkCount(node, l);
+            int[] neighbours = new int[count];
+            for (int i = 0; i < count; i++) {
+                neighbours[i] = link(node, l, i);
+            }
+            for (int neighbour : neighbours) {
+                relink(neighbour, l, neighbours, node);
+            }
+            setLinkCount(node, l, 0);
+        }
+    }
+
+    private void relink(int node, int level, int[] extra, int removed) {
+        int maxLinks = level == 0 ? maxM0 : m;
+        int count = linkCount(node, level);
+        float[] base = Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+        List<Candidate> candidates = new ArrayList<>(count + extra.length);
+        for (int i = 0; i < count; i++) {
+            int neighbour = link(node, level, i);
+            if (neighbour != removed) {
+                candidates.add(new Candidate(neighbour, distance(base, neighbour)));
+            }
+        }
+        for (int neighbour : extra) {
+            if (neighbour != node && neighbour != removed && !linksTo(node, level, neighbour)) {
+                candidates.add(new Candidate(neighbour, distance(base, neighbour)));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::distance));
+        int kept = Math.min(maxLinks, candidates.size());
+        for (int i = 0; i < kept; i++) {
+            setLink(node, level, i, candidates.get(i).node);
+        }
+        setLinkCount(node, level, kept);
+    }
+
+    private boolean linksTo(int node, int level, int target) {
+        int count = linkCount(node, level);
+        for (int i = 0; i < count; i++) {
+            if (link(node, level, i) == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        int level = (int) (-Math.log(Math.max(r, Double.MIN_NORMAL)) * levelMultiplier);
+        return Math.min(level, 16);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int count = linkCount(current, level);
+            for (int i = 0; i < count; i++) {
+                int neighbour = link(current, level, i);
+                float d = distance(query, neighbour);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /*
+     * Standard HNSW beam search: expand the closest unexplored candidate until
+     * it is farther than the worst of the ef best results found so far. Returns
+     * the results ordered nearest first.
+     */
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(used);
+        PriorityQueue<Candidate> toExplore = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> best = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::distance).reversed());
+
+        Candidate start = new Candidate(entry, distance(query, entry));
+        visited.set(entry);
+        toExplore.add(start);
+        best.add(start);
+
+        while (!toExplore.isEmpty()) {
+            Candidate closest = toExplore.poll();
+            if (closest.distance > best.peek().distance && best.size() >= ef) {
+                break;
+            }
+            int count = linkCount(closest.node, level);
+            for (int i = 0; i < count; i++) {
+                int neighbour = link(closest.node, level, i);
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(query, neighbour);
+                if (best.size() < ef || d < best.peek().distance) {
+                    Candidate candidate = new Candidate(neighbour, d);
+                    toExplore.add(candidate);
+                    best.add(candidate);
+                    if (best.size() > ef) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(Candidate::distance));
+        return result;
+    }
+
+    /*
+     * Links node -> newNode; when node's list is full, keep only the closest
+     * neighbours to node (including newNode).
+     */
+    private void addReverseLink(int node, int newNode, int level) {
+        int maxLinks = level == 0 ? maxM0 : m;
+        int count = linkCount(node, level);
+        if (count < maxLinks) {
+            setLink(node, level, count, newNode);
+            setLinkCount(node, level, count + 1);
+            return;
+        }
+        float[] base = Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+        Candidate[] all = new Candidate[count + 1];
+        for (int i = 0; i < count; i++) {
+            int neighbour = link(node, level, i);
+            all[i] = new Candidate(neighbour, distance(base, neighbour));
+        }
+        all[count] = new Candidate(newNode, distance(base, newNode));
+        Arrays.sort(all, Comparator.comparingDouble(Candidate::distance));
+        for (int i = 0; i < maxLinks; i++) {
+            setLink(node, level, i, all[i].node);
+        }
+    }
+
+    private int linkCount(int node, int level) {
+        if (level == 0) {
+            return layer0Counts[node];
+        }
+        int[][] links = upperLinks[node];
+        return links != null && level <= links.length ? links[level - 1][0] : 0;
+    }
+
+    private void setLinkCount(int node, int level, int count) {
+        if (level == 0) {
+            layer0Counts[node] = count;
+        } else {
+            upperLinks[node][level - 1][0] = count;
+        }
+    }
+
+    private int link(int node, int level, int i) {
+        return level == 0 ? layer0Links[node * maxM0 + i] : upperLinks[node][level - 1][i + 1];
+    }
+
+    private void setLink(int node, int level, int i, int target) {
+        if (level == 0) {
+            layer0Links[node * maxM0 + i] = target;
+        } else {
+            upperLinks[node][level - 1][i + 1] = target;
+        }
+    }
+
+    // Cosine distance for unit vectors: 1 - dot product
+    private float distance(float[] query, int node) {
+        int offset = node * dimensions;
+        float dot = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            dot += query[i] * vectors[offset + i];
+        }
+        return 1.0f - dot;
+    }
+
+    private record Candidate(int node, float distance) {
+    }
+}
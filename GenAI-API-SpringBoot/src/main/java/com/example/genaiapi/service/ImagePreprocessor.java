@@ -0,0 +1,366 @@
+package com.example.genaiapi.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Shrinks uploaded images before they are sent to Gemini.
+ *
+ * Large photos cost upload time, upstream latency and tokens, but the model
+ * works on a downscaled copy anyway. For JPEG, PNG and BMP uploads larger than
+ * skip-below-bytes, this stage:
+ *
+ * - reads only the header first, to size the decode
+ * - decodes with source subsampling when the image is at least twice too
+ * large, so a 48 MP photo is never fully expanded in memory
+ * - turns the pixels upright per the JPEG's EXIF Orientation, since phones
+ * store the sensor's raster and only tag how to display it
+ * - scales the longest edge down to max-edge (bilinear)
+ * - writes a fresh JPEG at the configured quality (PNG when the image has
+ * transparency), which drops EXIF, GPS and other metadata; the stripped
+ * copy is sent even when it comes out larger than the upload
+ *
+ * Decoding a big image is CPU heavy and holds a large bitmap, so the work runs
+ * on a fixed pool of workers with a bounded number of waiting jobs. When both
+ * are full, callers wait up to acquire-timeout and then get a 503, rather
+ * than piling up bitmaps until the heap runs out. Anything the stage cannot
+ * decode is passed through unchanged.
+ */
+@Service
+public class ImagePreprocessor {
+
+    private static final Set<String> SUPPORTED = Set.of("image/jpeg", "image/jpg", "image/png", "image/bmp");
+
+    private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Value("${gemini.image-preprocessing.enabled:true}")
+    private boolean enabled;
+
+    // Longest edge after downscaling
+    @Value("${gemini.image-preprocessing.max-edge:1536}")
+    private int maxEdge;
+
+    @Value("${gemini.image-preprocessing.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    // Uploads up to this size are forwarded as they are
+    @Value("${gemini.image-preprocessing.skip-below-bytes:262144}")
+    private long skipBelowBytes;
+
+    private final ExecutorService workers;
+
+    private final Semaphore slots;
+
+    private final long acquireTimeoutNanos;
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder passedThrough = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final AtomicLong maxProcessingNanos = new AtomicLong();
+
+    /**
+     * The image to send upstream, with what preprocessing saved
+     */
+    public record ProcessedImage(InputStreamSource source, long size, String mimeType, long bytesSaved,
+            Duration processingTime) {
+    }
+
+    public ImagePreprocessor(
+            @Value("${gemini.image-preprocessing.workers:0}") int workerCount,
+            @Value("${gemini.image-preprocessing.queue-capacity:32}") int queueCapacity,
+            @Value("${gemini.image-preprocessing.acquire-timeout:5s}") Duration acquireTimeout) {
+        int threads = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().daemon().name("gemini-image-", 0).factory());
+        this.slots = new Semaphore(threads + queueCapacity, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    @PreDestroy
+    void stop() {
+        workers.shutdownNow();
+    }
+
+    public ProcessedImage process(InputStreamSource image, long size, String mimeType) {
+        if (!enabled || size <= skipBelowBytes || mimeType == null
+                || !SUPPORTED.contains(mimeType.toLowerCase())) {
+            skipped.increment();
+            return new ProcessedImage(image, size, mimeType, 0, Duration.ZERO);
+        }
+
+        try {
+            if (!slots.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many images waiting for preprocessing");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting for preprocessing");
+        }
+        try {
+            return workers.submit(() -> transform(image, size, mimeType)).get();
+        } catch (ExecutionException e) {
+            passedThrough.increment();
+            return new ProcessedImage(image, size, mimeType, 0, Duration.ZERO);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted during preprocessing");
+        } finally {
+            slots.release();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        long count = processed.sum();
+        result.put("processed", count);
+        result.put("skipped", skipped.sum());
+        result.put("passedThrough", passedThrough.sum());
+        result.put("rejected", rejected.sum());
+        result.put("queued", slots.getQueueLength());
+        result.put("bytesIn", bytesIn.sum());
+        result.put("bytesOut", bytesOut.sum());
+        result.put("bytesSaved", bytesIn.sum() - bytesOut.sum());
+        result.put("avgBytesSavedPerImage", count == 0 ? 0 : (bytesIn.sum() - bytesOut.sum()) / count);
+        result.put("avgProcessingMillis", count == 0 ? 0.0 : processingNanos.sum() / 1_000_000.0 / count);
+        result.put("maxProcessingMillis", maxProcessingNanos.get() / 1_000_000.0);
+        return result;
+    }
+
+    private ProcessedImage transform(InputStreamSource image, long size, String mimeType) throws IOException {
+        long start = System.nanoTime();
+        Decoded decoded = decode(image);
+        if (decoded == null) {
+            throw new IOException("Unreadable image");
+        }
+
+        BufferedImage scaled = scale(orient(decoded.image(), decoded.orientation()));
+        boolean alpha = scaled.getColorModel().hasAlpha();
+        byte[] encoded = alpha ? encodePng(scaled) : encodeJpeg(scaled);
+        long elapsed = System.nanoTime() - start;
+
+        processed.increment();
+        processingNanos.add(elapsed);
+        maxProcessingNanos.accumulateAndGet(elapsed, Math::max);
+        bytesIn.add(size);
+        bytesOut.add(encoded.length);
+        return new ProcessedImage(new ByteArrayResource(encoded), encoded.length,
+                alpha ? "image/png" : "image/jpeg", size - encoded.length, Duration.ofNanos(elapsed));
+    }
+
+    private record Decoded(BufferedImage image, int orientation) {
+    }
+
+    /*
+     * Reads the dimensions from the header, then decodes with every n-th pixel
+     * when the image is at least twice max-edge so the full-size raster is
+     * never allocated.
+     */
+    private Decoded decode(InputStreamSource image) throws IOException {
+        try (InputStream in = image.getInputStream(); ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Metadata is only read for the EXIF Orientation of JPEGs
+                boolean jpeg = "jpeg".equalsIgnoreCase(reader.getFormatName());
+                reader.setInput(input, true, !jpeg);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = longest / maxEdge;
+                if (subsampling >= 2) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage decoded = reader.read(0, param);
+                return new Decoded(decoded, jpeg ? orientation(reader) : 1);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // EXIF Orientation from the APP1 segment, which the JPEG reader keeps as an "unknown" marker
+    private static int orientation(ImageReader reader) {
+        try {
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            if (metadata == null || !JPEG_METADATA.equals(metadata.getNativeMetadataFormatName())) {
+                return 1;
+            }
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA);
+            var markers = root.getElementsByTagName("unknown");
+            for (int i = 0; i < markers.getLength(); i++) {
+                IIOMetadataNode marker = (IIOMetadataNode) markers.item(i);
+                if ("225".equals(marker.getAttribute("MarkerTag"))
+                        && marker.getUserObject() instanceof byte[] app1) {
+                    return exifOrientation(app1);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable metadata: keep the pixels as stored
+        }
+        return 1;
+    }
+
+    /*
+     * Walks IFD0 of the TIFF structure after the "Exif\0\0" header for tag
+     * 0x0112. Offsets are relative to the TIFF header, whose first two bytes
+     * give the byte order.
+     */
+    static int exifOrientation(byte[] app1) {
+        int tiff = EXIF_HEADER.length;
+        if (app1.length < tiff + 8 || !Arrays.equals(app1, 0, tiff, EXIF_HEADER, 0, tiff)) {
+            return 1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(app1)
+                .order(app1[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        long ifd = tiff + Integer.toUnsignedLong(buffer.getInt(tiff + 4));
+        if (ifd + 2 > app1.length) {
+            return 1;
+        }
+        int entries = Short.toUnsignedInt(buffer.getShort((int) ifd));
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + 12 * i;
+            if (entry + 12 > app1.length) {
+                break;
+            }
+            if (Short.toUnsignedInt(buffer.getShort(entry)) == 0x0112) {
+                return Short.toUnsignedInt(buffer.getShort(entry + 8));
+            }
+        }
+        return 1;
+    }
+
+    /*
+     * Applies an EXIF Orientation (2-8: the mirrored and quarter-turn
+     * variants) so the pixels are stored upright; the re-encode drops the tag
+     * that told viewers to do it.
+     */
+    static BufferedImage orient(BufferedImage source, int orientation) {
+        int w = source.getWidth();
+        int h = source.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> null;
+        };
+        if (transform == null) {
+            return source;
+        }
+        boolean quarterTurn = orientation >= 5;
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(quarterTurn ? h : w, quarterTurn ? w : h, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.drawImage(source, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private BufferedImage scale(BufferedImage source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int longest = Math.max(width, height);
+        if (longest <= maxEdge) {
+            return source;
+        }
+        double ratio = (double) maxEdge / longest;
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        // The JPEG writer rejects images with an alpha channel or odd raster types
+        BufferedImage rgb = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            try {
+                g.drawImage(image, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            // No metadata argument: only the pixels are written
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.genaiapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+ * Sessions in a Caffeine cache: a session expires gemini.sessions.idle-ttl
+ * after its last use, and the sum of ConversationSession.approximateBytes()
+ * is bounded by gemini.sessions.max-total-bytes, evicting the least recently
+ * used sessions first. update() re-puts a session so its weight follows its
+ * growing history.
+ */
+@Service
+@ConditionalOnProperty(name = "gemini.sessions.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+    private final Cache<String, ConversationSession> sessions;
+
+    private final long maxTotalBytes;
+
+    public InMemorySessionStore(
+            @Value("${gemini.sessions.idle-ttl:30m}") Duration idleTtl,
+            @Value("${gemini.sessions.max-total-bytes:268435456}") long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterAccess(idleTtl)
+                .maximumWeight(maxTotalBytes)
+                .weigher((String id, ConversationSession session) -> (int) Math.min(Integer.MAX_VALUE,
+                        session.approximateBytes() + 64))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public ConversationSession create() {
+        ConversationSession session = new ConversationSession(UUID.randomUUID().toString());
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    @Override
+    public Optional<ConversationSession> find(String id) {
+        return Optional.ofNullable(sessions.getIfPresent(id));
+    }
+
+    @Override
+    public void update(ConversationSession session) {
+        // Only if it was not evicted or deleted while the turn was in flight
+        sessions.asMap().replace(session.getId(), session, session);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return sessions.asMap().remove(id) != null;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long bytes = 0;
+        long characters = 0;
+        long turns = 0;
+        long trimmed = 0;
+        long largest = 0;
+        for (ConversationSession session : sessions.asMap().values()) {
+            long sessionBytes = session.approximateBytes();
+            bytes += sessionBytes;
+            characters += session.getCharacters();
+            turns += session.getTurns();
+            trimmed += session.getTrimmedTurns();
+            largest = Math.max(largest, sessionBytes);
+        }
+        CacheStats stats = sessions.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("store", "memory");
+        result.put("sessions", sessions.estimatedSize());
+        result.put("turns", turns);
+        result.put("trimmedTurns", trimmed);
+        result.put("characters", characters);
+        result.put("approximateBytes", bytes);
+        result.put("largestSessionBytes", largest);
+        result.put("maxTotalBytes", maxTotalBytes);
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
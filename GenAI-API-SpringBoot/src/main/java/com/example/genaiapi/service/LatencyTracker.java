@@ -0,0 +1,65 @@
+package com.example.genaiapi.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Percentiles over the most recent upstream call latencies, used to pick the
+ * hedging delay.
+ *
+ * Samples go into a fixed ring with one getAndIncrement and one array write.
+ * The percentile itself is recomputed from a sorted copy at most once every
+ * refreshEvery samples, so reading it on every call costs a volatile read.
+ */
+class LatencyTracker {
+
+    private final AtomicLongArray samples;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final int refreshEvery;
+
+    private final double percentile;
+
+    private volatile long cachedNanos = -1;
+
+    private volatile long cachedAt;
+
+    LatencyTracker(int windowSize, double percentile, int refreshEvery) {
+        this.samples = new AtomicLongArray(windowSize);
+        this.percentile = percentile;
+        this.refreshEvery = refreshEvery;
+    }
+
+    void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % samples.length()), nanos);
+    }
+
+    long sampleCount() {
+        return Math.min(count.get(), samples.length());
+    }
+
+    /**
+     * Configured percentile of the recent window, or -1 with fewer than
+     * minimumSamples recorded
+     */
+    long percentileNanos(int minimumSamples) {
+        long total = count.get();
+        if (total < minimumSamples) {
+            return -1;
+        }
+        if (cachedNanos < 0 || total - cachedAt >= refreshEvery) {
+            int size = (int) Math.min(total, samples.length());
+            long[] copy = new long[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = samples.get(i);
+            }
+            Arrays.sort(copy);
+            cachedNanos = copy[Math.max(0, (int) Math.ceil(percentile * size) - 1)];
+            cachedAt = total;
+        }
+        return cachedNanos;
+    }
+}
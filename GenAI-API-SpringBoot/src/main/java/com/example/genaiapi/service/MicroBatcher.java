@@ -0,0 +1,224 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Collects independent single-prompt generateText calls into small batches
+ * (gemini.batching.enabled, off by default).
+ *
+ * Callers enqueue their request and wait on a future. One dispatcher thread
+ * takes the first queued request, then keeps draining until either
+ * gemini.batching.max-batch-size requests are collected or
+ * gemini.batching.max-wait has passed since that first request, and hands the
+ * batch to GeminiBatchClient on a virtual thread. Answers are fanned back to
+ * the waiting callers by position.
+ *
+ * The trade is a few milliseconds of added latency for fewer, fuller upstream
+ * calls: more work per connection and per request-quota unit.
+ */
+@Component
+public class MicroBatcher {
+
+    @Autowired
+    private GeminiBatchClient batchClient;
+
+    @Autowired
+    private UsageLedger usageLedger;
+
+    @Autowired
+    private ModelRouter router;
+
+    @Value("${gemini.batching.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gemini.batching.max-batch-size:16}")
+    private int maxBatchSize;
+
+    @Value("${gemini.batching.max-wait:20ms}")
+    private Duration maxWait;
+
+    @Value("${gemini.batching.max-queued:10000}")
+    private int maxQueued;
+
+    @Value("${gemini.batching.max-in-flight-batches:32}")
+    private int maxInFlightBatches;
+
+    private BlockingQueue<Pending> queue;
+
+    private Semaphore inFlightBatches;
+
+    private ExecutorService dispatchExecutor;
+
+    private Thread collector;
+
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder batchedRequests = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(maxQueued);
+        inFlightBatches = new Semaphore(maxInFlightBatches);
+        dispatchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        running = true;
+        collector = Thread.ofPlatform().daemon().name("gemini-micro-batcher").start(this::collectLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (collector != null) {
+            collector.interrupt();
+        }
+        if (dispatchExecutor != null) {
+            dispatchExecutor.shutdown();
+        }
+        // Nobody will take these any more; fail them rather than leave callers waiting
+        if (queue != null) {
+            List<Pending> abandoned = new ArrayList<>();
+            queue.drainTo(abandoned);
+            failAll(abandoned);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the request for the next batch and waits for its answer
+     */
+    public GenerateContentResponse generate(GenerateContentRequest request) {
+        if (!running) {
+            throw shuttingDown();
+        }
+        Pending pending = new Pending(request, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Batch queue is full");
+        }
+        // stop() may have drained the queue between the check and the offer
+        if (!running && queue.remove(pending)) {
+            throw shuttingDown();
+        }
+        try {
+            GenerateContentResponse response = pending.result.join();
+            // Charged here, on the caller's thread, where its client is known
+            usageLedger.record(router.defaultModel(), response);
+            return response;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        if (!enabled) {
+            return result;
+        }
+        long batchCount = batches.sum();
+        result.put("queued", queue.size());
+        result.put("batches", batchCount);
+        result.put("batchedRequests", batchedRequests.sum());
+        result.put("avgBatchSize", batchCount == 0 ? 0.0 : (double) batchedRequests.sum() / batchCount);
+        result.put("inFlightBatches", maxInFlightBatches - inFlightBatches.availablePermits());
+        return result;
+    }
+
+    private void collectLoop() {
+        long maxWaitNanos = maxWait.toNanos();
+        while (running) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Take whatever is already queued without waiting
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Bounds concurrent upstream batches; waiting here lets the
+                // next batch fill up instead of sending many small ones
+                inFlightBatches.acquire();
+                dispatchExecutor.execute(() -> dispatch(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The executor was shut down while this batch was being collected
+                inFlightBatches.release();
+                failAll(batch);
+                return;
+            }
+        }
+    }
+
+    private void dispatch(List<Pending> batch) {
+        try {
+            List<GenerateContentRequest> requests = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                requests.add(pending.request);
+            }
+            List<GenerateContentResponse> responses = batchClient.generate(requests);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(responses.get(i));
+            }
+            batches.increment();
+            batchedRequests.add(batch.size());
+        } catch (RuntimeException e) {
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        } finally {
+            inFlightBatches.release();
+        }
+    }
+
+    private static void failAll(List<Pending> pendings) {
+        for (Pending pending : pendings) {
+            pending.result.completeExceptionally(shuttingDown());
+        }
+    }
+
+    private static ResponseStatusException shuttingDown() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Batcher is shutting down");
+    }
+
+    private record Pending(GenerateContentRequest request, CompletableFuture<GenerateContentResponse> result) {
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.config.RoutingProperties;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.RequestOptions;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Picks the model for each request (gemini.routing.*, see RoutingProperties).
+ *
+ * 1. Tier: the X-Gemini-Tier header if given, else the first matching rule
+ * (endpoint, operation, prompt-token range), else the prompt length: short
+ * prompts go to "fast", heavy ones to "strong", the rest to "standard". A
+ * rule may name a model directly instead of a tier.
+ * 2. Model: among the tier's healthy candidates, the one with the lowest
+ * observed latency, after each has been tried once; a small share explores
+ * the others.
+ * 3. Canary: a configured fraction of a model's traffic goes to its canary.
+ * 4. Health: a model whose error rate or latency average crosses its limit
+ * is taken out for a cooldown; requests for it follow its fallback chain.
+ *
+ * With routing disabled every request goes to the default model, as before.
+ * Which key and endpoint serve the model is UpstreamPool's choice, made per
+ * attempt. Outcomes are reported back by the callers (recordOutcome) after
+ * each upstream attempt.
+ */
+@Service
+public class ModelRouter {
+
+    public static final String FAST = "fast";
+
+    public static final String STANDARD = "standard";
+
+    public static final String STRONG = "strong";
+
+    @Autowired
+    private RoutingProperties properties;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    private final Map<String, ModelHealth> health = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> routed = new ConcurrentHashMap<>();
+
+    private final LongAdder canaryRouted = new LongAdder();
+
+    private final LongAdder healthFailovers = new LongAdder();
+
+    private final LongAdder explored = new LongAdder();
+
+    /**
+     * The model picked for a request
+     */
+    public record Route(String model) {
+    }
+
+    @PostConstruct
+    void init() {
+        // Every configured model shows in stats() before its first request
+        Set<String> models = new LinkedHashSet<>();
+        models.add(properties.getDefaultModel());
+        properties.getTiers().values().forEach(models::addAll);
+        properties.getFallbacks().forEach((model, fallback) -> {
+            models.add(model);
+            models.add(fallback);
+        });
+        for (RoutingProperties.Rule rule : properties.getRules()) {
+            if (rule.getModel() != null) {
+                models.add(rule.getModel());
+            }
+        }
+        for (RoutingProperties.Canary canary : properties.getCanaries()) {
+            models.add(canary.getModel());
+            models.add(canary.getCanary());
+        }
+        models.forEach(this::routeFor);
+    }
+
+    public String defaultModel() {
+        return properties.getDefaultModel();
+    }
+
+    public Route defaultRoute() {
+        return routeFor(properties.getDefaultModel());
+    }
+
+    public Route routeFor(String model) {
+        return routes.computeIfAbsent(model, Route::new);
+    }
+
+    /**
+     * The route for one request of the given operation
+     */
+    public Route route(GeminiMetrics.Operation operation, GenerateContentRequest request) {
+        if (!properties.isEnabled()) {
+            return defaultRoute();
+        }
+        RequestOptions options = GeminiRequestContext.current();
+        String model = options.getTier() != null
+                ? pickFromTier(options.getTier())
+                : null;
+        if (model == null) {
+            long promptTokens = tokenEstimator.estimate(request);
+            RoutingProperties.Rule rule = matchRule(operation, options.getEndpoint(), promptTokens);
+            if (rule != null && rule.getModel() != null) {
+                model = rule.getModel();
+            } else {
+                String tier = rule != null && rule.getTier() != null ? rule.getTier() : tierFor(promptTokens);
+                model = pickFromTier(tier);
+            }
+        }
+        if (model == null) {
+            model = properties.getDefaultModel();
+        }
+        model = applyCanary(model);
+        String healthy = healthyOrFallback(model);
+        if (!healthy.equals(model)) {
+            healthFailovers.increment();
+        }
+        routed.computeIfAbsent(healthy, key -> new LongAdder()).increment();
+        return routeFor(healthy);
+    }
+
+    /**
+     * Where to retry a call that failed with a model error, or null
+     */
+    public Route fallbackFor(Route route, RuntimeException failure) {
+        if (!properties.isEnabled() || !properties.isFailoverOnError() || !isModelFailure(failure)
+                || Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        String fallback = properties.getFallbacks().get(route.model());
+        if (fallback == null || fallback.equals(route.model())) {
+            return null;
+        }
+        healthFailovers.increment();
+        return routeFor(healthyOrFallback(fallback));
+    }
+
+    /**
+     * Runs one upstream attempt against model and records its outcome
+     */
+    public <T> T observe(String model, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            recordOutcome(model, System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException e) {
+            // A hedge loser being cancelled says nothing about the model
+            if (!Thread.currentThread().isInterrupted()) {
+                recordOutcome(model, System.nanoTime() - start, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * One upstream attempt against model; failure is null on success
+     */
+    public void recordOutcome(String model, long nanos, Throwable failure) {
+        health.computeIfAbsent(model, key -> new ModelHealth())
+                .record(nanos, failure != null && isModelFailure(failure), properties.getHealth());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", properties.isEnabled());
+        result.put("defaultModel", properties.getDefaultModel());
+        Map<String, Object> models = new LinkedHashMap<>();
+        for (String model : routes.keySet()) {
+            ModelHealth modelHealth = health.get(model);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            LongAdder count = routed.get(model);
+            entry.put("routed", count != null ? count.sum() : 0);
+            entry.put("healthy", modelHealth == null || modelHealth.isHealthy());
+            entry.put("samples", modelHealth != null ? modelHealth.samples.sum() : 0);
+            entry.put("errorRate", modelHealth != null ? modelHealth.errorRate() : 0.0);
+            entry.put("avgLatencyMillis", modelHealth != null ? modelHealth.latencyNanos() / 1_000_000.0 : 0.0);
+            entry.put("ejections", modelHealth != null ? modelHealth.ejections.sum() : 0);
+            models.put(model, entry);
+        }
+        result.put("models", models);
+        result.put("canaryRouted", canaryRouted.sum());
+        result.put("failovers", healthFailovers.sum());
+        result.put("explored", explored.sum());
+        return result;
+    }
+
+    private RoutingProperties.Rule matchRule(GeminiMetrics.Operation operation, String endpoint, long promptTokens) {
+        for (RoutingProperties.Rule rule : properties.getRules()) {
+            if ((rule.getEndpoint() == null || rule.getEndpoint().equals(endpoint))
+                    && (rule.getOperation() == null || rule.getOperation().equals(operation.tag()))
+                    && (rule.getMinPromptTokens() == null || promptTokens >= rule.getMinPromptTokens())
+                    && (rule.getMaxPromptTokens() == null || promptTokens <= rule.getMaxPromptTokens())) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private String tierFor(long promptTokens) {
+        if (promptTokens <= properties.getShortPromptTokens()) {
+            return FAST;
+        }
+        return promptTokens >= properties.getHeavyPromptTokens() ? STRONG : STANDARD;
+    }
+
+    /*
+     * Healthy candidate with the lowest latency average; the first candidate
+     * if none is healthy. Averages only move for the model that is picked, so
+     * a candidate never observed is tried first, and explore-fraction of the
+     * traffic goes to a random healthy candidate to keep the others' averages
+     * current.
+     */
+    private String pickFromTier(String tier) {
+        List<String> candidates = properties.getTiers().get(tier);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        List<String> healthy = new ArrayList<>(candidates.size());
+        String best = null;
+        double bestLatency = Double.MAX_VALUE;
+        for (String candidate : candidates) {
+            ModelHealth modelHealth = health.get(candidate);
+            if (modelHealth == null || modelHealth.samples.sum() == 0) {
+                return candidate;
+            }
+            if (!modelHealth.isHealthy()) {
+                continue;
+            }
+            healthy.add(candidate);
+            if (modelHealth.latencyNanos() < bestLatency) {
+                best = candidate;
+                bestLatency = modelHealth.latencyNanos();
+            }
+        }
+        if (healthy.size() > 1 && ThreadLocalRandom.current().nextDouble() < properties.getExploreFraction()) {
+            explored.increment();
+            return healthy.get(ThreadLocalRandom.current().nextInt(healthy.size()));
+        }
+        return best != null ? best : candidates.get(0);
+    }
+
+    private String applyCanary(String model) {
+        for (RoutingProperties.Canary canary : properties.getCanaries()) {
+            if (model.equals(canary.getModel()) && ThreadLocalRandom.current().nextDouble() < canary.getWeight()) {
+                canaryRouted.increment();
+                return canary.getCanary();
+            }
+        }
+        return model;
+    }
+
+    // Follows the fallback chain past unhealthy models; the model itself when all are down
+    private String healthyOrFallback(String model) {
+        String current = model;
+        Set<String> visited = new LinkedHashSet<>();
+        while (current != null && visited.add(current)) {
+            ModelHealth modelHealth = health.get(current);
+            if (modelHealth == null || modelHealth.isHealthy()) {
+                return current;
+            }
+            current = properties.getFallbacks().get(current);
+        }
+        return model;
+    }
+
+    /*
+     * Errors that say something about the model rather than the request:
+     * 5xx, 429, I/O failures and the model's own open circuit breaker. Other
+     * 4xx are the caller's problem and would fail on any model. UpstreamPool
+     * uses the same test for keys.
+     */
+    static boolean isModelFailure(Throwable failure) {
+        if (failure instanceof HttpServerErrorException || failure instanceof HttpClientErrorException.TooManyRequests
+                || failure instanceof ResourceAccessException || failure instanceof WebClientRequestException
+                || failure instanceof CircuitOpenException) {
+            return true;
+        }
+        return failure instanceof WebClientResponseException response
+                && (response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429);
+    }
+
+    /*
+     * Moving averages of one model's error rate and latency. A model whose
+     * average crosses its limit (after minSamples attempts) is ejected for
+     * the cooldown; when it comes back its error average restarts at half the
+     * limit, so a few more failures eject it again quickly.
+     */
+    private static final class ModelHealth {
+        final LongAdder samples = new LongAdder();
+        final LongAdder ejections = new LongAdder();
+        final AtomicLong errorRateBits = new AtomicLong(Double.doubleToLongBits(0.0));
+        final AtomicLong latencyBits = new AtomicLong(Double.doubleToLongBits(0.0));
+        volatile long ejectedUntilNanos = System.nanoTime();
+        volatile boolean ejected;
+
+        void record(long nanos, boolean failed, RoutingProperties.Health limits) {
+            samples.increment();
+            double errorRate = update(errorRateBits, failed ? 1.0 : 0.0, limits.getAlpha(), false);
+            double latency = failed ? latencyNanos() : update(latencyBits, nanos, limits.getAlpha(), true);
+            if (!ejected && samples.sum() >= limits.getMinSamples()
+                    && (errorRate > limits.getMaxErrorRate() || latency > limits.getMaxLatency().toNanos())) {
+                ejected = true;
+                ejections.increment();
+                ejectedUntilNanos = System.nanoTime() + limits.getCooldown().toNanos();
+                errorRateBits.set(Double.doubleToLongBits(limits.getMaxErrorRate() / 2));
+                latencyBits.set(Double.doubleToLongBits(0.0));
+            }
+        }
+
+        boolean isHealthy() {
+            if (ejected && System.nanoTime() - ejectedUntilNanos >= 0) {
+                ejected = false;
+            }
+            return !ejected;
+        }
+
+        double errorRate() {
+            return Double.longBitsToDouble(errorRateBits.get());
+        }
+
+        double latencyNanos() {
+            return Double.longBitsToDouble(latencyBits.get());
+        }
+
+        // seed: the first sample replaces the initial zero instead of being averaged with it
+        private static double update(AtomicLong bits, double sample, double alpha, boolean seed) {
+            while (true) {
+                long current = bits.get();
+                double average = Double.longBitsToDouble(current);
+                double next = seed && average == 0.0 ? sample : average + alpha * (sample - average);
+                if (bits.compareAndSet(current, Double.doubleToLongBits(next))) {
+                    return next;
+                }
+            }
+        }
+    }
+}
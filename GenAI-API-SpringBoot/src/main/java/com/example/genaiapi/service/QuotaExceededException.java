@@ -0,0 +1,33 @@
+package com.example.genaiapi.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/*
+ * 429 raised locally when a request cannot get upstream quota in time. Spring
+ * MVC copies getHeaders() onto the response, so clients get a Retry-After
+ * hint just like they would from the Gemini API itself.
+ */
+public class QuotaExceededException extends ResponseStatusException {
+
+    private final Duration retryAfter;
+
+    public QuotaExceededException(String reason, Duration retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS, reason);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        return headers;
+    }
+}
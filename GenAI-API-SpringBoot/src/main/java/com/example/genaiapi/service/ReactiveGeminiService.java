@@ -0,0 +1,288 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Non-blocking twin of GeminiService.
+ *
+ * Every method returns immediately with a cold Mono; the upstream call only
+ * starts when the caller (usually Spring MVC's async return value handling)
+ * subscribes. While the model is generating, no thread is parked: the
+ * connection waits on a Reactor Netty event loop and the servlet thread has
+ * already gone back to Tomcat's pool.
+ *
+ * The stream* methods call streamGenerateContent?alt=sse instead, so the first
+ * tokens reach the caller as soon as the model emits them rather than after the
+ * whole completion is done.
+ *
+ * Both kinds of call take their permit from the same UpstreamRateLimiter as
+ * GeminiService, and are charged to the same UsageLedger, so the RPM/TPM view
+ * and the usage totals cover all traffic to the API. Waiting
+ * for quota blocks, so it happens on a virtual thread rather than on the
+ * event loop.
+ */
+@Service
+public class ReactiveGeminiService {
+
+    @Autowired
+    private WebClient geminiWebClient;
+
+    @Autowired
+    private ModelRouter router;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Autowired
+    private UpstreamRateLimiter rateLimiter;
+
+    @Autowired
+    private GeminiRequestBuilder requestBuilder;
+
+    @Autowired
+    private UsageLedger usageLedger;
+
+    /*
+     * How many parsed SSE chunks may be requested from the connection ahead of
+     * the client. Netty stops reading the socket once this many are buffered,
+     * which propagates a slow client's backpressure to the upstream TCP window.
+     */
+    @Value("${gemini.streaming.prefetch:16}")
+    private int streamPrefetch;
+
+    private static final ParameterizedTypeReference<ServerSentEvent<GenerateContentResponse>> SSE_CHUNK = new ParameterizedTypeReference<>() {
+    };
+
+    private final Scheduler quotaScheduler = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("gemini-reactive-quota-", 0).factory()),
+            "gemini-reactive-quota");
+
+    @PreDestroy
+    void stop() {
+        quotaScheduler.dispose();
+    }
+
+    /**
+     * Basic text generation
+     */
+    public Mono<GenerateContentResponse> generateText(String prompt) {
+        return makeRequest(GeminiMetrics.Operation.GENERATE_TEXT, requestBuilder.text(prompt));
+    }
+
+    /**
+     * Text generation with system instructions
+     */
+    public Mono<GenerateContentResponse> generateTextWithSystemInstruction(String prompt, String systemInstruction) {
+        return makeRequest(GeminiMetrics.Operation.GENERATE_TEXT_WITH_SYSTEM_INSTRUCTION,
+                requestBuilder.textWithSystemInstruction(prompt, systemInstruction));
+    }
+
+    /**
+     * Text generation with configuration parameters
+     */
+    public Mono<GenerateContentResponse> generateTextWithConfig(String prompt, Double temperature,
+            Integer maxTokens, Double topP, Integer topK) {
+        return makeRequest(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG,
+                requestBuilder.textWithConfig(prompt, temperature, maxTokens, topP, topK));
+    }
+
+    /**
+     * Structured JSON output generation
+     */
+    public Mono<GenerateContentResponse> generateStructuredJson(String prompt) {
+        return makeRequest(GeminiMetrics.Operation.GENERATE_STRUCTURED_JSON, requestBuilder.structuredJson(prompt));
+    }
+
+    /**
+     * Function calling example
+     */
+    public Mono<GenerateContentResponse> functionCalling(String prompt) {
+        return makeRequest(GeminiMetrics.Operation.FUNCTION_CALLING, requestBuilder.functionCalling(prompt));
+    }
+
+    /**
+     * Code execution example
+     */
+    public Mono<GenerateContentResponse> codeExecution(String prompt) {
+        return makeRequest(GeminiMetrics.Operation.CODE_EXECUTION, requestBuilder.codeExecution(prompt));
+    }
+
+    /**
+     * Multi-turn conversation
+     */
+    public Mono<GenerateContentResponse> multiTurnConversation(List<Map<String, String>> conversationHistory) {
+        return makeRequest(GeminiMetrics.Operation.MULTI_TURN_CONVERSATION,
+                requestBuilder.multiTurnConversation(conversationHistory));
+    }
+
+    /**
+     * Image analysis with inline base64 data
+     */
+    public Mono<GenerateContentResponse> analyzeImage(String prompt, String base64Image, String mimeType) {
+        return makeRequest(GeminiMetrics.Operation.ANALYZE_IMAGE,
+                requestBuilder.analyzeImage(prompt, base64Image, mimeType));
+    }
+
+    /**
+     * Streaming text generation
+     */
+    public Flux<GenerateContentResponse.Candidate> streamText(String prompt) {
+        return streamRequest(GeminiMetrics.Operation.GENERATE_TEXT, requestBuilder.text(prompt));
+    }
+
+    /**
+     * Streaming text generation with system instructions
+     */
+    public Flux<GenerateContentResponse.Candidate> streamTextWithSystemInstruction(String prompt,
+            String systemInstruction) {
+        return streamRequest(GeminiMetrics.Operation.GENERATE_TEXT_WITH_SYSTEM_INSTRUCTION,
+                requestBuilder.textWithSystemInstruction(prompt, systemInstruction));
+    }
+
+    /**
+     * Streaming text generation with configuration parameters
+     */
+    public Flux<GenerateContentResponse.Candidate> streamTextWithConfig(String prompt, Double temperature,
+            Integer maxTokens, Double topP, Integer topK) {
+        return streamRequest(GeminiMetrics.Operation.GENERATE_TEXT_WITH_CONFIG,
+                requestBuilder.textWithConfig(prompt, temperature, maxTokens, topP, topK));
+    }
+
+    /**
+     * Streaming structured JSON output generation
+     */
+    public Flux<GenerateContentResponse.Candidate> streamStructuredJson(String prompt) {
+        return streamRequest(GeminiMetrics.Operation.GENERATE_STRUCTURED_JSON, requestBuilder.structuredJson(prompt));
+    }
+
+    /**
+     * Streaming code execution
+     */
+    public Flux<GenerateContentResponse.Candidate> streamCodeExecution(String prompt) {
+        return streamRequest(GeminiMetrics.Operation.CODE_EXECUTION, requestBuilder.codeExecution(prompt));
+    }
+
+    /**
+     * Streaming multi-turn conversation
+     */
+    public Flux<GenerateContentResponse.Candidate> streamMultiTurnConversation(
+            List<Map<String, String>> conversationHistory) {
+        return streamRequest(GeminiMetrics.Operation.MULTI_TURN_CONVERSATION,
+                requestBuilder.multiTurnConversation(conversationHistory));
+    }
+
+    private Flux<GenerateContentResponse.Candidate> streamRequest(GeminiMetrics.Operation operation,
+            GenerateContentRequest request) {
+        ModelRouter.Route route = router.route(operation, request);
+        RequestOptions options = GeminiRequestContext.current();
+        // Each SSE "data:" line is a complete GenerateContentResponse holding only
+        // the text produced since the previous event, so it is decoded on its own
+        // as soon as the event terminator arrives and emitted as candidate deltas.
+        // The key is leased per subscription and held until the stream ends.
+        // The final chunk carries usageMetadata; the quota is settled and the
+        // usage charged with it once the stream completes, or the quota keeps
+        // the estimate if it never arrives.
+        return acquireQuota(request).flatMapMany(permit -> Flux.defer(() -> {
+            UpstreamPool.Lease lease = upstreams.acquire(request);
+            AtomicReference<GenerateContentResponse> lastUsage = new AtomicReference<>();
+            return geminiWebClient.post()
+                    .uri(lease.endpoints(route.model()).streamUri())
+                    .headers(lease.upstream()::authenticate)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToFlux(SSE_CHUNK)
+                    .limitRate(streamPrefetch)
+                    .mapNotNull(ServerSentEvent::data)
+                    .doOnNext(chunk -> {
+                        if (chunk.getUsageMetadata() != null) {
+                            lastUsage.set(chunk);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        rateLimiter.settle(permit, lastUsage.get());
+                        usageLedger.record(route.model(), lastUsage.get(), options);
+                        upstreams.succeeded(lease, lease.estimatedTokens());
+                    })
+                    .doOnCancel(() -> upstreams.abandoned(lease))
+                    .doOnError(e -> {
+                        rateLimiter.release(permit);
+                        upstreams.failed(lease, e);
+                    })
+                    .flatMapIterable(chunk -> chunk.getCandidates() != null
+                            ? chunk.getCandidates()
+                            : List.<GenerateContentResponse.Candidate>of());
+        }));
+    }
+
+    private Mono<GenerateContentResponse> makeRequest(GeminiMetrics.Operation operation,
+            GenerateContentRequest request) {
+        // Routed now, on the calling thread, where the request's options are set
+        ModelRouter.Route route = router.route(operation, request);
+        RequestOptions options = GeminiRequestContext.current();
+        // retrieve() maps 4xx/5xx to WebClientResponseException, the reactive
+        // counterpart of RestTemplate's HttpStatusCodeException
+        return acquireQuota(request).flatMap(permit -> Mono.defer(() -> {
+            UpstreamPool.Lease lease = upstreams.acquire(request);
+            long start = System.nanoTime();
+            return geminiWebClient.post()
+                    .uri(lease.endpoints(route.model()).generateContentUri())
+                    .headers(lease.upstream()::authenticate)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToMono(GenerateContentResponse.class)
+                    .doOnSuccess(response -> {
+                        rateLimiter.settle(permit, response);
+                        usageLedger.record(route.model(), response, options);
+                        upstreams.succeeded(lease, response);
+                        router.recordOutcome(route.model(), System.nanoTime() - start, null);
+                    })
+                    .doOnCancel(() -> upstreams.abandoned(lease))
+                    .doOnError(e -> {
+                        rateLimiter.release(permit);
+                        upstreams.failed(lease, e);
+                        router.recordOutcome(route.model(), System.nanoTime() - start, e);
+                    });
+        }));
+    }
+
+    /*
+     * Takes the call's permit from the shared upstream quota. The request's
+     * options (priority, max queue wait) are captured on the subscribing
+     * thread and carried to the virtual thread that may wait in the queue.
+     */
+    private Mono<UpstreamRateLimiter.Permit> acquireQuota(GenerateContentRequest request) {
+        if (!rateLimiter.isEnabled()) {
+            return Mono.fromCallable(() -> rateLimiter.acquire(request));
+        }
+        RequestOptions options = GeminiRequestContext.current();
+        return Mono.fromCallable(() -> {
+            GeminiRequestContext.set(options);
+            try {
+                return rateLimiter.acquire(request);
+            } finally {
+                GeminiRequestContext.clear();
+            }
+        }).subscribeOn(quotaScheduler);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Single-flight deduplication of identical in-flight upstream calls.
+ *
+ * The first caller for a canonical request (the "leader") publishes a
+ * CompletableFuture with putIfAbsent and makes the upstream call; callers that
+ * arrive while it is running find that future and wait on it instead of
+ * sending their own request. The entry is removed as soon as the call settles,
+ * so this never serves stale results; it only collapses bursts.
+ *
+ * No lock is held around the upstream call: the only synchronisation is the
+ * ConcurrentHashMap bin CAS on insert and remove.
+ */
+@Component
+public class RequestCoalescer {
+
+    @Autowired
+    private RequestHasher requestHasher;
+
+    @Value("${gemini.coalescing.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentHashMap<String, CompletableFuture<GenerateContentResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+
+    private final LongAdder followers = new LongAdder();
+
+    public GenerateContentResponse execute(String model, GenerateContentRequest request,
+            Supplier<GenerateContentResponse> upstream) {
+        if (!enabled || hasInlineData(request)) {
+            return upstream.get();
+        }
+
+        String key = requestHasher.hash(model, request);
+        CompletableFuture<GenerateContentResponse> call = new CompletableFuture<>();
+        CompletableFuture<GenerateContentResponse> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            followers.increment();
+            return await(existing);
+        }
+
+        leaders.increment();
+        try {
+            GenerateContentResponse response = upstream.get();
+            call.complete(response);
+            return response;
+        } catch (Throwable t) {
+            // Errors too: a follower left waiting on an incomplete call would hang forever
+            call.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("inFlight", inFlight.size());
+        result.put("upstreamCalls", leaders.sum());
+        result.put("coalescedCalls", followers.sum());
+        return result;
+    }
+
+    /*
+     * Identical image uploads arriving concurrently are rare, and hashing a
+     * multi-megabyte base64 payload costs more than it could save.
+     */
+    private static boolean hasInlineData(GenerateContentRequest request) {
+        if (request.getContents() == null) {
+            return false;
+        }
+        for (GenerateContentRequest.Content content : request.getContents()) {
+            if (content.getParts() == null) {
+                continue;
+            }
+            for (GenerateContentRequest.Part part : content.getParts()) {
+                if (part.getInlineData() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Followers see the leader's exception as if they had made the call themselves
+    private static GenerateContentResponse await(CompletableFuture<GenerateContentResponse> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.RequestTemplate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The fixed-schema operations (structured JSON, function calling, code
+ * execution) send the same generation config or tools on every call. They are
+ * built and serialized once here, with the ObjectMapper RestTemplate writes
+ * request bodies with, so per-request work is only the prompt.
+ */
+@Component
+public class RequestTemplates {
+
+    private final RequestTemplate structuredJson;
+
+    private final RequestTemplate functionCalling;
+
+    private final RequestTemplate codeExecution;
+
+    @Autowired
+    public RequestTemplates(RestTemplate restTemplate) {
+        this(restTemplate.getMessageConverters().stream()
+                .filter(MappingJackson2HttpMessageConverter.class::isInstance)
+                .map(converter -> ((MappingJackson2HttpMessageConverter) converter).getObjectMapper())
+                .findFirst()
+                .orElseGet(ObjectMapper::new));
+    }
+
+    public RequestTemplates(ObjectMapper objectMapper) {
+        this.structuredJson = RequestTemplate.compile(objectMapper, recipeSchemaConfig(), null, null);
+        this.functionCalling = RequestTemplate.compile(objectMapper, null, null, List.of(weatherTool()));
+        this.codeExecution = RequestTemplate.compile(objectMapper, null, null, List.of(codeExecutionTool()));
+    }
+
+    public RequestTemplate structuredJson() {
+        return structuredJson;
+    }
+
+    public RequestTemplate functionCalling() {
+        return functionCalling;
+    }
+
+    public RequestTemplate codeExecution() {
+        return codeExecution;
+    }
+
+    /*
+     * An array of objects, each with a 'recipeName' (string) and 'ingredients'
+     * (array of strings). responseMimeType "application/json" is mandatory for
+     * structured output.
+     */
+    private static GenerateContentRequest.GenerationConfig recipeSchemaConfig() {
+        Map<String, Object> schema = Map.of(
+                "type", "ARRAY",
+                "items", Map.of(
+                        "type", "OBJECT",
+                        "properties", Map.of(
+                                "recipeName", Map.of("type", "STRING"),
+                                "ingredients", Map.of(
+                                        "type", "ARRAY",
+                                        "items", Map.of("type", "STRING"))),
+                        "propertyOrdering", List.of("recipeName", "ingredients")));
+
+        GenerateContentRequest.GenerationConfig config = new GenerateContentRequest.GenerationConfig();
+        config.setResponseMimeType("application/json");
+        config.setResponseSchema(schema);
+        return config;
+    }
+
+    // get_current_weather, with its parameter schema in OpenAPI 3.0 format
+    private static GenerateContentRequest.Tool weatherTool() {
+        Map<String, Object> functionParams = Map.of(
+                "type", "object",
+                "properties", Map.of(
+                        "location", Map.of(
+                                "type", "string",
+                                "description", "The city and state, e.g. San Francisco, CA"),
+                        "unit", Map.of(
+                                "type", "string",
+                                "enum", List.of("celsius", "fahrenheit"),
+                                "description", "Temperature unit")),
+                "required", List.of("location"));
+
+        GenerateContentRequest.FunctionDeclaration function = new GenerateContentRequest.FunctionDeclaration(
+                "get_current_weather",
+                "Get the current weather in a given location",
+                functionParams);
+
+        GenerateContentRequest.Tool tool = new GenerateContentRequest.Tool();
+        tool.setFunctionDeclarations(List.of(function));
+        return tool;
+    }
+
+    private static GenerateContentRequest.Tool codeExecutionTool() {
+        GenerateContentRequest.Tool tool = new GenerateContentRequest.Tool();
+        tool.setCodeExecution(Map.of());
+        return tool;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Exact-match cache for generateContent responses.
+ *
+ * Only requests whose answer is reproducible are eligible: temperature 0, or
+ * callers that explicitly opt in with "X-Gemini-Cache: cacheable". Any caller
+ * can skip the cache for one call with "X-Gemini-Cache: bypass".
+ *
+ * Entries are keyed by RequestHasher (model + canonical request JSON), expire
+ * gemini.cache.ttl after being written and are bounded either by total weight
+ * (approximate bytes of response text, gemini.cache.max-weight-bytes) or, when
+ * that is 0, by entry count (gemini.cache.max-entries).
+ */
+@Service
+public class ResponseCache {
+
+    // Fixed per-entry cost (key, map node, response object graph) used by the weigher
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    @Autowired
+    private RequestHasher requestHasher;
+
+    private final boolean enabled;
+
+    private final Cache<String, GenerateContentResponse> cache;
+
+    private final LongAdder bypassed = new LongAdder();
+
+    private final LongAdder ineligible = new LongAdder();
+
+    public ResponseCache(
+            @Value("${gemini.cache.enabled:true}") boolean enabled,
+            @Value("${gemini.cache.max-entries:10000}") long maxEntries,
+            @Value("${gemini.cache.max-weight-bytes:67108864}") long maxWeightBytes,
+            @Value("${gemini.cache.ttl:10m}") Duration ttl) {
+        this.enabled = enabled;
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .recordStats();
+        if (maxWeightBytes > 0) {
+            this.cache = builder
+                    .maximumWeight(maxWeightBytes)
+                    .weigher((String key, GenerateContentResponse response) -> weigh(response))
+                    .build();
+        } else {
+            this.cache = builder.maximumSize(maxEntries).build();
+        }
+    }
+
+    /**
+     * Returns the cached response for an eligible request, or calls upstream
+     * and caches the result
+     */
+    public GenerateContentResponse getOrLoad(String model, GenerateContentRequest request,
+            Supplier<GenerateContentResponse> upstream) {
+        RequestOptions.CacheMode mode = GeminiRequestContext.current().getCacheMode();
+        if (!enabled || mode == RequestOptions.CacheMode.BYPASS) {
+            bypassed.increment();
+            return upstream.get();
+        }
+        if (mode != RequestOptions.CacheMode.CACHEABLE && !isDeterministic(request)) {
+            ineligible.increment();
+            return upstream.get();
+        }
+
+        String key = requestHasher.hash(model, request);
+        GenerateContentResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        GenerateContentResponse response = upstream.get();
+        if (response != null && response.getCandidates() != null && !response.getCandidates().isEmpty()) {
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("evictionWeight", stats.evictionWeight());
+        result.put("bypassed", bypassed.sum());
+        result.put("ineligible", ineligible.sum());
+        return result;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    Cache<String, GenerateContentResponse> nativeCache() {
+        return cache;
+    }
+
+    private static boolean isDeterministic(GenerateContentRequest request) {
+        GenerateContentRequest.GenerationConfig config = request.getGenerationConfig();
+        return config != null && config.getTemperature() != null && config.getTemperature() == 0.0;
+    }
+
+    private static int weigh(GenerateContentResponse response) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        if (response.getCandidates() != null) {
+            for (GenerateContentResponse.Candidate candidate : response.getCandidates()) {
+                if (candidate.getContent() == null || candidate.getContent().getParts() == null) {
+                    continue;
+                }
+                for (GenerateContentResponse.Part part : candidate.getContent().getParts()) {
+                    if (part.getText() != null) {
+                        bytes += 2L * part.getText().length();
+                    }
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/*
+ * Optional paraphrase-tolerant cache for generateText (gemini.semantic-cache.enabled).
+ *
+ * The prompt is embedded, the nearest earlier prompt is looked up in an
+ * in-memory HNSW index, and its response is returned when the cosine
+ * similarity reaches gemini.semantic-cache.similarity-threshold. On a miss the
+ * upstream response is stored under the embedding computed for the lookup, so
+ * each prompt is embedded exactly once.
+ *
+ * Entries remember the model that answered. A lookup only matches entries of
+ * the model the request was routed to, so a prompt routed to a stronger tier
+ * never gets a paraphrase answer cached from a faster model.
+ *
+ * Memory is fixed by gemini.semantic-cache.capacity: when the index is full the
+ * least recently matched tenth of the entries is evicted, and the next inserts
+ * reuse their slots in place. The graph is never rebuilt, so no lookup waits
+ * behind a full rebuild.
+ */
+@Service
+public class SemanticResponseCache {
+
+    private final boolean enabled;
+
+    private final Embedder embedder;
+
+    private final double similarityThreshold;
+
+    private final int efSearch;
+
+    private final HnswIndex<Entry> index;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    private record Entry(String model, GenerateContentResponse response) {
+    }
+
+    public SemanticResponseCache(
+            Embedder embedder,
+            @Value("${gemini.semantic-cache.enabled:false}") boolean enabled,
+            @Value("${gemini.semantic-cache.similarity-threshold:0.92}") double similarityThreshold,
+            @Value("${gemini.semantic-cache.capacity:10000}") int capacity,
+            @Value("${gemini.semantic-cache.hnsw.m:16}") int m,
+            @Value("${gemini.semantic-cache.hnsw.ef-construction:100}") int efConstruction,
+            @Value("${gemini.semantic-cache.hnsw.ef-search:64}") int efSearch) {
+        this.embedder = embedder;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.efSearch = efSearch;
+        // Allocating the full index up front is the point: it is the memory bound
+        this.index = enabled ? new HnswIndex<>(embedder.dimensions(), capacity, m, efConstruction) : null;
+    }
+
+    /**
+     * Returns model's response to a sufficiently similar earlier prompt, or
+     * calls upstream and remembers the answer for this prompt
+     */
+    public GenerateContentResponse getOrLoad(String model, String prompt, Supplier<GenerateContentResponse> upstream) {
+        if (!enabled || prompt == null
+                || GeminiRequestContext.current().getCacheMode() == RequestOptions.CacheMode.BYPASS) {
+            return upstream.get();
+        }
+
+        long start = System.nanoTime();
+        float[] embedding = embedder.embed(prompt);
+        HnswIndex.Match<Entry> match;
+        lock.readLock().lock();
+        try {
+            match = index.searchNearest(embedding, efSearch, start, entry -> entry.model().equals(model));
+        } finally {
+            lock.readLock().unlock();
+        }
+        lookupNanos.add(System.nanoTime() - start);
+        lookups.increment();
+
+        if (match != null && match.similarity() >= similarityThreshold) {
+            hits.increment();
+            return match.value().response();
+        }
+        misses.increment();
+
+        GenerateContentResponse response = upstream.get();
+        if (response != null && response.getCandidates() != null && !response.getCandidates().isEmpty()) {
+            store(embedding, new Entry(model, response));
+        }
+        return response;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        if (!enabled) {
+            return result;
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookupCount = lookups.sum();
+        result.put("size", index.size());
+        result.put("capacity", index.capacity());
+        result.put("footprintBytes", index.footprintBytes());
+        result.put("hits", hitCount);
+        result.put("misses", missCount);
+        result.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        result.put("evictions", evictions.sum());
+        result.put("avgLookupMicros", lookupCount == 0 ? 0.0 : lookupNanos.sum() / 1_000.0 / lookupCount);
+        result.put("similarityThreshold", similarityThreshold);
+        return result;
+    }
+
+    private void store(float[] embedding, Entry entry) {
+        lock.writeLock().lock();
+        try {
+            if (index.isFull()) {
+                int victims = Math.max(1, index.capacity() / 10);
+                int before = index.size();
+                index.evictLeastRecentlyUsed(victims);
+                evictions.add(before - index.size());
+            }
+            index.add(embedding, entry, System.nanoTime());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.SessionInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Conversations whose history stays on the server: the client creates a
+ * session once and then posts only each new user turn, instead of resending
+ * the whole (ever growing) transcript to /multi-turn-conversation.
+ *
+ * A turn holds the session lock from reading the history until the answer
+ * is stored, so concurrent posts to one session are answered in order and
+ * each sees the previous exchange. The user turn is stored only together
+ * with a usable answer: a failed call leaves the history untouched, and the
+ * client can simply resend.
+ *
+ * Each session's history is capped at gemini.sessions.max-history-chars;
+ * beyond it the oldest exchanges are dropped.
+ */
+@Service
+public class SessionService {
+
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private GeminiService geminiService;
+
+    @Autowired
+    private GeminiRequestBuilder requestBuilder;
+
+    @Value("${gemini.sessions.max-history-chars:100000}")
+    private long maxHistoryChars;
+
+    public SessionInfo create() {
+        return info(sessionStore.create());
+    }
+
+    public SessionInfo info(String id) {
+        return info(find(id));
+    }
+
+    public boolean delete(String id) {
+        return sessionStore.delete(id);
+    }
+
+    public GenerateContentResponse sendMessage(String id, String text) {
+        if (text == null || text.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "text is required");
+        }
+        ConversationSession session = find(id);
+        GenerateContentRequest.Content userTurn = requestBuilder.userTurn(text);
+        session.lock();
+        try {
+            GenerateContentResponse response = geminiService.continueConversation(session.historyWith(userTurn));
+            GenerateContentRequest.Content modelTurn = modelTurn(response);
+            if (modelTurn != null) {
+                session.append(userTurn, modelTurn, maxHistoryChars);
+                sessionStore.update(session);
+            }
+            return response;
+        } finally {
+            session.unlock();
+        }
+    }
+
+    private ConversationSession find(String id) {
+        return sessionStore.find(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown session " + id));
+    }
+
+    // Text of the first candidate; null when it was blocked or carried no text
+    private static GenerateContentRequest.Content modelTurn(GenerateContentResponse response) {
+        if (response == null || response.getCandidates() == null || response.getCandidates().isEmpty()) {
+            return null;
+        }
+        GenerateContentResponse.Content content = response.getCandidates().get(0).getContent();
+        if (content == null || content.getParts() == null) {
+            return null;
+        }
+        List<GenerateContentRequest.Part> parts = new ArrayList<>(1);
+        for (GenerateContentResponse.Part part : content.getParts()) {
+            if (part.getText() != null) {
+                parts.add(new GenerateContentRequest.Part(part.getText()));
+            }
+        }
+        return parts.isEmpty() ? null : new GenerateContentRequest.Content("model", parts);
+    }
+
+    private static SessionInfo info(ConversationSession session) {
+        return new SessionInfo(session.getId(), session.getCreatedAt(), session.getLastUsedAt(),
+                session.getTurns(), session.getTrimmedTurns(), session.getCharacters(),
+                session.approximateBytes());
+    }
+}
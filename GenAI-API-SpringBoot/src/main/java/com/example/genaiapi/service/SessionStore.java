@@ -0,0 +1,26 @@
+package com.example.genaiapi.service;
+
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Where conversation sessions live. InMemorySessionStore is the default
+ * (gemini.sessions.store=memory); another implementation can be plugged in
+ * as a bean selected by a different gemini.sessions.store value.
+ */
+public interface SessionStore {
+
+    ConversationSession create();
+
+    Optional<ConversationSession> find(String id);
+
+    /**
+     * Called after a session's history changed, so the store can re-weigh
+     * or persist it
+     */
+    void update(ConversationSession session);
+
+    boolean delete(String id);
+
+    Map<String, Object> stats();
+}
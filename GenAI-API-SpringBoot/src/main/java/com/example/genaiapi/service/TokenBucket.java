@@ -0,0 +1,95 @@
+package com.example.genaiapi.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * Lock-free token bucket, implemented as GCRA (generic cell rate algorithm).
+ *
+ * Instead of a token count plus a refill timestamp, the whole state is a single
+ * "theoretical arrival time" (TAT) in System.nanoTime() units: the instant at
+ * which the bucket would be full again. Taking n tokens pushes TAT forward by
+ * n emission intervals; the request fits if TAT stays within one burst window
+ * of now. One AtomicLong and a CAS loop, no locks and no refill thread.
+ */
+class TokenBucket {
+
+    private final double intervalNanos;
+
+    private final long burstNanos;
+
+    private final long capacity;
+
+    private final AtomicLong theoreticalArrival;
+
+    private final LongSupplier clock;
+
+    TokenBucket(long perMinute, long capacity) {
+        this(perMinute, capacity, System::nanoTime);
+    }
+
+    // clock stands in for System.nanoTime(), so tests can drive time
+    TokenBucket(long perMinute, long capacity, LongSupplier clock) {
+        this.intervalNanos = 60_000_000_000.0 / perMinute;
+        this.capacity = capacity;
+        this.burstNanos = (long) (capacity * intervalNanos);
+        this.clock = clock;
+        this.theoreticalArrival = new AtomicLong(clock.getAsLong() - burstNanos);
+    }
+
+    /**
+     * Takes the tokens if they fit; otherwise takes nothing and returns how
+     * many nanoseconds to wait before they would fit
+     */
+    long tryAcquire(long tokens) {
+        long cost = (long) (Math.min(tokens, capacity) * intervalNanos);
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = theoreticalArrival.get();
+            long newTat = Math.max(tat, now - burstNanos) + cost;
+            long overshoot = newTat - now;
+            if (overshoot > 0) {
+                return overshoot;
+            }
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Corrects an earlier acquisition: positive adds cost, negative refunds
+     */
+    void adjust(long tokens) {
+        if (tokens == 0) {
+            return;
+        }
+        long delta = (long) (tokens * intervalNanos);
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = theoreticalArrival.get();
+            long newTat = Math.max(Math.max(tat, now - burstNanos) + delta, now - burstNanos);
+            if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds until the tokens would fit, without taking them
+     */
+    long nanosUntilAvailable(long tokens) {
+        long cost = (long) (Math.min(tokens, capacity) * intervalNanos);
+        long now = clock.getAsLong();
+        return Math.max(0, Math.max(theoreticalArrival.get(), now - burstNanos) + cost - now);
+    }
+
+    /**
+     * Tokens that could be taken right now
+     */
+    long available() {
+        long now = clock.getAsLong();
+        long headroom = now - Math.max(theoreticalArrival.get(), now - burstNanos);
+        return (long) (headroom / intervalNanos);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.genaiapi.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ * Bounds the number of concurrent upstream calls when request handlers run on
+ * virtual threads. With platform threads the Tomcat pool already acts as that
+ * bound, so the limiter is a pass-through unless virtual threads are enabled.
+ *
+ * Semaphore parks a waiting virtual thread without pinning its carrier, so
+ * thousands of callers can queue here cheaply.
+ */
+@Component
+public class UpstreamConcurrencyLimiter {
+
+    private final Semaphore permits;
+
+    private final long acquireTimeoutNanos;
+
+    public UpstreamConcurrencyLimiter(
+            @Value("${gemini.virtual-threads.enabled:false}") boolean virtualThreadsEnabled,
+            @Value("${gemini.upstream.max-concurrent-requests:256}") int maxConcurrentRequests,
+            @Value("${gemini.upstream.acquire-timeout:30s}") Duration acquireTimeout) {
+        this.permits = virtualThreadsEnabled ? new Semaphore(maxConcurrentRequests, true) : null;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    /**
+     * Runs the upstream call once a permit is available
+     */
+    public <T> T call(Supplier<T> upstreamCall) {
+        if (permits == null) {
+            return upstreamCall.get();
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many concurrent upstream requests");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting for upstream");
+        }
+        try {
+            return upstreamCall.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Permits currently free, or -1 when the limiter is disabled
+     */
+    public int availablePermits() {
+        return permits == null ? -1 : permits.availablePermits();
+    }
+
+    /**
+     * Callers currently parked waiting for a permit
+     */
+    public int queueLength() {
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+}
@@ -0,0 +1,645 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.config.GeminiConfig;
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.UpstreamDefinition;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Pool of upstream API keys and endpoints (gemini.upstreams.*), so throughput
+ * is not capped at a single key's quota.
+ *
+ * Without gemini.upstreams.file the pool has one member built from
+ * gemini.api.key and gemini.api.base-url, and everything behaves as before.
+ * The file is a JSON array of UpstreamDefinition; it is re-read when it
+ * changes (checked every gemini.upstreams.reload-interval) or on POST
+ * /api/admin/upstreams/reload, without a restart. A member whose name and
+ * settings survive a reload keeps its counters, quota and ejection state;
+ * calls in flight finish on the member they started on.
+ *
+ * Every upstream attempt leases one member:
+ * - least-outstanding (default): fewest calls in flight per unit of weight
+ * - weighted: random, in proportion to weight
+ * Members out of their own RPM/TPM quota are passed over; as in
+ * UpstreamRateLimiter the token estimate is corrected with the real usage
+ * afterwards. A member that answers 429 is ejected for its Retry-After (or
+ * gemini.upstreams.ejection-cooldown); one that fails
+ * gemini.upstreams.max-consecutive-failures times in a row with 5xx or I/O
+ * errors is ejected for the cooldown. When every member is ejected or out of
+ * quota the least bad one is used anyway: the pool never fails a call itself.
+ * A key failure another member could take over from is the pool's to handle,
+ * so UpstreamResilience does not charge it to the model's circuit breaker
+ * (see absorbed); one bad key does not open the circuit for the whole pool.
+ *
+ * Uploaded files and cachedContents belong to the project of the key that
+ * created them, so they are created with the primary (first) member and the
+ * requests that reference them are pinned to it.
+ */
+@Service
+public class UpstreamPool {
+
+    public static final String LEAST_OUTSTANDING = "least-outstanding";
+
+    public static final String WEIGHTED = "weighted";
+
+    private static final TypeReference<List<UpstreamDefinition>> DEFINITIONS = new TypeReference<>() {
+    };
+
+    @Autowired
+    private GeminiConfig geminiConfig;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private UpstreamRateLimiter rateLimiter;
+
+    // JSON array of UpstreamDefinition; empty means the single gemini.api.* upstream
+    @Value("${gemini.upstreams.file:}")
+    private String file;
+
+    @Value("${gemini.upstreams.reload-interval:10s}")
+    private Duration reloadInterval;
+
+    @Value("${gemini.upstreams.balancing:" + LEAST_OUTSTANDING + "}")
+    private String balancing;
+
+    @Value("${gemini.upstreams.ejection-cooldown:30s}")
+    private Duration ejectionCooldown;
+
+    @Value("${gemini.upstreams.max-consecutive-failures:3}")
+    private int maxConsecutiveFailures;
+
+    // Same burst allowance as the global quota buckets
+    @Value("${gemini.rate-limit.burst-fraction:0.1}")
+    private double burstFraction;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Replaced as a whole on reload; index 0 is the primary
+    private volatile Upstream[] members = new Upstream[0];
+
+    // Only estimate prompt tokens when some member tracks a TPM quota
+    private volatile boolean tracksTokens;
+
+    private volatile long loadedModified;
+
+    private ScheduledExecutorService reloader;
+
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder pinned = new LongAdder();
+    private final AtomicReference<String> lastReloadError = new AtomicReference<>();
+
+    // Failures handed back to callers that another member can take over from; weak, by identity
+    private final Set<Throwable> absorbed = Collections.newSetFromMap(
+            Collections.synchronizedMap(new WeakHashMap<>()));
+
+    /**
+     * One member taken for one upstream attempt, to be settled afterwards
+     */
+    public record Lease(Upstream upstream, long estimatedTokens) {
+
+        public Endpoints endpoints(String model) {
+            return upstream.endpoints(model);
+        }
+    }
+
+    /**
+     * A model's upstream URLs on one member, built once
+     */
+    public record Endpoints(String generateContentUrl, URI generateContentUri, URI streamUri) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (file.isBlank()) {
+            UpstreamDefinition single = resolve(new UpstreamDefinition(), 0);
+            single.setName("default");
+            members = new Upstream[] { new Upstream(single, burstFraction) };
+            return;
+        }
+        // A broken file at startup fails the startup; later it only keeps the previous pool
+        reload();
+        reloader = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("gemini-upstream-pool-reloader").factory());
+        reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadInterval.toMillis(),
+                reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    /**
+     * Re-reads gemini.upstreams.file and swaps the pool in
+     */
+    public synchronized void reload() {
+        if (file.isBlank()) {
+            throw new IllegalArgumentException("gemini.upstreams.file is not set");
+        }
+        Path path = Path.of(file);
+        long modified;
+        List<UpstreamDefinition> definitions;
+        try {
+            modified = Files.getLastModifiedTime(path).toMillis();
+            definitions = objectMapper.readValue(path.toFile(), DEFINITIONS);
+        } catch (IOException e) {
+            throw rejectReload("Cannot read " + file + ": " + e.getMessage());
+        }
+        if (definitions == null || definitions.isEmpty()) {
+            throw rejectReload(file + " defines no upstreams");
+        }
+
+        Map<String, Upstream> previous = new HashMap<>();
+        for (Upstream member : members) {
+            previous.put(member.name, member);
+        }
+        Set<String> names = new HashSet<>();
+        Upstream[] next = new Upstream[definitions.size()];
+        boolean tokens = false;
+        for (int i = 0; i < next.length; i++) {
+            UpstreamDefinition definition;
+            try {
+                definition = resolve(definitions.get(i), i);
+            } catch (IllegalArgumentException e) {
+                throw rejectReload("Upstream " + i + ": " + e.getMessage());
+            }
+            if (!names.add(definition.getName())) {
+                throw rejectReload("Duplicate upstream name " + definition.getName());
+            }
+            if (definition.getApiKey().isBlank() || definition.getWeight() <= 0) {
+                throw rejectReload("Upstream " + definition.getName() + " needs an apiKey and a positive weight");
+            }
+            Upstream kept = previous.get(definition.getName());
+            next[i] = kept != null && kept.definition.equals(definition)
+                    ? kept
+                    : new Upstream(definition, burstFraction);
+            tokens |= definition.getTokensPerMinute() != null;
+        }
+        members = next;
+        tracksTokens = tokens;
+        loadedModified = modified;
+        reloads.increment();
+        lastReloadError.set(null);
+    }
+
+    /**
+     * The member that owns uploaded files and cachedContents
+     */
+    public Upstream primary() {
+        return members[0];
+    }
+
+    /**
+     * Leases a member for one generateContent attempt
+     */
+    public Lease acquire(GenerateContentRequest request) {
+        long tokens = tracksTokens ? rateLimiter.estimateTokens(request) : 0;
+        if (referencesResources(request)) {
+            pinned.increment();
+            return lease(primary(), 1, tokens, true);
+        }
+        return acquire(1, tokens);
+    }
+
+    public Lease acquire(int requests, long estimatedTokens) {
+        Upstream[] current = members;
+        if (current.length == 1) {
+            return lease(current[0], requests, estimatedTokens, true);
+        }
+        long now = System.nanoTime();
+        boolean[] passedOver = new boolean[current.length];
+        for (int attempt = 0; attempt < current.length; attempt++) {
+            int index = WEIGHTED.equalsIgnoreCase(balancing)
+                    ? pickWeighted(current, passedOver, now)
+                    : pickLeastOutstanding(current, passedOver, now);
+            if (index < 0) {
+                break;
+            }
+            Lease lease = lease(current[index], requests, estimatedTokens, false);
+            if (lease != null) {
+                return lease;
+            }
+            passedOver[index] = true;
+        }
+        // Every member is ejected or out of quota
+        overflows.increment();
+        return lease(leastBad(current, now), requests, estimatedTokens, true);
+    }
+
+    /**
+     * Settles a lease whose call went through, with the tokens upstream reported
+     */
+    public void succeeded(Lease lease, GenerateContentResponse response) {
+        Integer total = response != null && response.getUsageMetadata() != null
+                ? response.getUsageMetadata().getTotalTokenCount()
+                : null;
+        succeeded(lease, total != null ? total : lease.estimatedTokens());
+    }
+
+    public void succeeded(Lease lease, long actualTokens) {
+        Upstream upstream = lease.upstream();
+        upstream.outstanding.decrementAndGet();
+        upstream.consecutiveFailures.set(0);
+        if (upstream.tokenBucket != null) {
+            upstream.tokenBucket.adjust(actualTokens - lease.estimatedTokens());
+        }
+    }
+
+    /**
+     * Settles a lease whose call was cancelled by this side (a hedge loser, a
+     * client that went away): the member's health is left as it was, and the
+     * estimate stays charged since the call may have reached upstream
+     */
+    public void abandoned(Lease lease) {
+        lease.upstream().outstanding.decrementAndGet();
+    }
+
+    /**
+     * Settles a lease whose call failed; 429 and repeated 5xx / I/O failures eject the member
+     */
+    public void failed(Lease lease, Throwable failure) {
+        Upstream upstream = lease.upstream();
+        upstream.outstanding.decrementAndGet();
+        upstream.failures.increment();
+        if (upstream.tokenBucket != null) {
+            upstream.tokenBucket.adjust(-lease.estimatedTokens());
+        }
+        if (isTooManyRequests(failure)) {
+            Duration retryAfter = retryAfter(failure);
+            upstream.eject(retryAfter != null ? retryAfter : ejectionCooldown);
+        } else if (ModelRouter.isModelFailure(failure)
+                && upstream.consecutiveFailures.incrementAndGet() >= maxConsecutiveFailures) {
+            upstream.consecutiveFailures.set(0);
+            upstream.eject(ejectionCooldown);
+        }
+        if (ModelRouter.isModelFailure(failure) && hasAlternative(upstream)) {
+            absorbed.add(failure);
+        }
+    }
+
+    /**
+     * Whether failure came from one member while others were available; such
+     * a failure is handled here, by ejection, rather than by a circuit breaker
+     */
+    public boolean absorbed(Throwable failure) {
+        return absorbed.remove(failure);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("source", file.isBlank() ? "gemini.api" : file);
+        result.put("balancing", balancing);
+        result.put("reloads", reloads.sum());
+        result.put("lastReloadError", lastReloadError.get());
+        result.put("overflows", overflows.sum());
+        result.put("pinnedToPrimary", pinned.sum());
+        Map<String, Object> upstreams = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (Upstream upstream : members) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("baseUrl", upstream.baseUrl);
+            entry.put("key", mask(upstream.apiKey));
+            entry.put("weight", upstream.weight);
+            entry.put("outstanding", upstream.outstanding.get());
+            entry.put("requests", upstream.requests.sum());
+            entry.put("failures", upstream.failures.sum());
+            entry.put("ejections", upstream.ejections.sum());
+            entry.put("ejected", !upstream.isAvailable(now));
+            entry.put("availableRequests", upstream.requestBucket != null ? upstream.requestBucket.available() : null);
+            entry.put("availableTokens", upstream.tokenBucket != null ? upstream.tokenBucket.available() : null);
+            upstreams.put(upstream.name, entry);
+        }
+        result.put("upstreams", upstreams);
+        return result;
+    }
+
+    private void reloadIfChanged() {
+        try {
+            if (Files.getLastModifiedTime(Path.of(file)).toMillis() != loadedModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            lastReloadError.set("Cannot read " + file + ": " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Already recorded; the previous pool stays in place
+        }
+    }
+
+    private boolean hasAlternative(Upstream upstream) {
+        long now = System.nanoTime();
+        for (Upstream member : members) {
+            if (member != upstream && member.isAvailable(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private IllegalArgumentException rejectReload(String message) {
+        lastReloadError.set(message);
+        return new IllegalArgumentException(message);
+    }
+
+    // A copy of definition with the gemini.api.* defaults and placeholders filled in
+    private UpstreamDefinition resolve(UpstreamDefinition definition, int index) {
+        return new UpstreamDefinition(
+                definition.getName() != null ? definition.getName() : "upstream-" + index,
+                definition.getApiKey() != null
+                        ? environment.resolveRequiredPlaceholders(definition.getApiKey())
+                        : geminiConfig.getApiKey(),
+                definition.getBaseUrl() != null ? definition.getBaseUrl() : geminiConfig.getBaseUrl(),
+                definition.getUploadBaseUrl() != null ? definition.getUploadBaseUrl() : geminiConfig.getUploadBaseUrl(),
+                definition.getWeight() != null ? definition.getWeight() : 1.0,
+                definition.getRequestsPerMinute(),
+                definition.getTokensPerMinute());
+    }
+
+    /*
+     * Takes the member's quota and counts the call in flight. Without force,
+     * returns null (and takes nothing) when the quota does not fit; with it,
+     * the quota is charged anyway.
+     */
+    private static Lease lease(Upstream upstream, int requests, long tokens, boolean force) {
+        if (!upstream.tryTake(requests, tokens)) {
+            if (!force) {
+                return null;
+            }
+            upstream.forceTake(requests, tokens);
+        }
+        upstream.outstanding.incrementAndGet();
+        upstream.requests.increment();
+        return new Lease(upstream, tokens);
+    }
+
+    // Fewest calls in flight per unit of weight; the scan starts at a random member so ties spread
+    private static int pickLeastOutstanding(Upstream[] current, boolean[] passedOver, long now) {
+        int start = ThreadLocalRandom.current().nextInt(current.length);
+        int best = -1;
+        double bestLoad = Double.MAX_VALUE;
+        for (int i = 0; i < current.length; i++) {
+            int index = (start + i) % current.length;
+            Upstream upstream = current[index];
+            if (passedOver[index] || !upstream.isAvailable(now)) {
+                continue;
+            }
+            double load = (upstream.outstanding.get() + 1) / upstream.weight;
+            if (load < bestLoad) {
+                best = index;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private static int pickWeighted(Upstream[] current, boolean[] passedOver, long now) {
+        double total = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (!passedOver[i] && current[i].isAvailable(now)) {
+                total += current[i].weight;
+            }
+        }
+        if (total == 0) {
+            return -1;
+        }
+        double point = ThreadLocalRandom.current().nextDouble(total);
+        int last = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (!passedOver[i] && current[i].isAvailable(now)) {
+                point -= current[i].weight;
+                last = i;
+                if (point < 0) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+
+    // A member that is not ejected (its quota is exhausted), else the one back soonest
+    private static Upstream leastBad(Upstream[] current, long now) {
+        Upstream best = null;
+        for (Upstream upstream : current) {
+            if (upstream.isAvailable(now)) {
+                if (best == null || !best.isAvailable(now)
+                        || upstream.outstanding.get() / upstream.weight < best.outstanding.get() / best.weight) {
+                    best = upstream;
+                }
+            } else if (best == null || !best.isAvailable(now) && upstream.ejectedUntilNanos - best.ejectedUntilNanos < 0) {
+                best = upstream;
+            }
+        }
+        return best;
+    }
+
+    // Files and cachedContents only resolve for the key that created them
+    private static boolean referencesResources(GenerateContentRequest request) {
+        if (request.getCachedContent() != null) {
+            return true;
+        }
+        if (request.getContents() != null) {
+            for (GenerateContentRequest.Content content : request.getContents()) {
+                if (content.getParts() == null) {
+                    continue;
+                }
+                for (GenerateContentRequest.Part part : content.getParts()) {
+                    if (part.getFileData() != null) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTooManyRequests(Throwable failure) {
+        return failure instanceof HttpClientErrorException.TooManyRequests
+                || failure instanceof WebClientResponseException response && response.getStatusCode().value() == 429;
+    }
+
+    private static Duration retryAfter(Throwable failure) {
+        HttpHeaders headers = failure instanceof HttpStatusCodeException status ? status.getResponseHeaders()
+                : failure instanceof WebClientResponseException response ? response.getHeaders()
+                : null;
+        String value = headers != null ? headers.getFirst(HttpHeaders.RETRY_AFTER) : null;
+        if (value != null) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                // HTTP-date form: use the default cooldown
+            }
+        }
+        return null;
+    }
+
+    private static String mask(String apiKey) {
+        return apiKey == null || apiKey.length() <= 4 ? "****" : "****" + apiKey.substring(apiKey.length() - 4);
+    }
+
+    /*
+     * One API key on one endpoint. Its per-model URLs are built on first use
+     * and kept, so the hot path does no URL building. The key never goes into
+     * a URL: URLs end up in exception messages, logs and traces, so calls
+     * carry it in the x-goog-api-key header instead (see headers()).
+     */
+    public static final class Upstream {
+        static final String API_KEY_HEADER = "x-goog-api-key";
+
+        private final UpstreamDefinition definition;
+        private final String name;
+        private final String apiKey;
+        private final String baseUrl;
+        private final String uploadBaseUrl;
+        private final double weight;
+        private final TokenBucket requestBucket;
+        private final TokenBucket tokenBucket;
+        private final Map<String, Endpoints> endpoints = new ConcurrentHashMap<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private volatile long ejectedUntilNanos = System.nanoTime();
+        private volatile boolean ejected;
+
+        Upstream(UpstreamDefinition definition, double burstFraction) {
+            this.definition = definition;
+            this.name = definition.getName();
+            this.apiKey = definition.getApiKey();
+            this.baseUrl = definition.getBaseUrl();
+            this.uploadBaseUrl = definition.getUploadBaseUrl();
+            this.weight = definition.getWeight();
+            this.requestBucket = bucket(definition.getRequestsPerMinute(), burstFraction);
+            this.tokenBucket = bucket(definition.getTokensPerMinute(), burstFraction);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Endpoints endpoints(String model) {
+            return endpoints.computeIfAbsent(model, this::buildEndpoints);
+        }
+
+        /**
+         * {base-url}{path}, for the calls outside generateContent
+         */
+        public UriComponentsBuilder url(String path) {
+            return UriComponentsBuilder.fromUriString(baseUrl)
+                    .path(path);
+        }
+
+        public UriComponentsBuilder uploadUrl(String path) {
+            return UriComponentsBuilder.fromUriString(uploadBaseUrl)
+                    .path(path);
+        }
+
+        /**
+         * Fresh headers that authenticate a call with this member's key
+         */
+        public HttpHeaders headers() {
+            return authenticate(new HttpHeaders());
+        }
+
+        public HttpHeaders authenticate(HttpHeaders headers) {
+            headers.set(API_KEY_HEADER, apiKey);
+            return headers;
+        }
+
+        boolean isAvailable(long now) {
+            if (ejected && now - ejectedUntilNanos >= 0) {
+                ejected = false;
+            }
+            return !ejected;
+        }
+
+        void eject(Duration cooldown) {
+            ejectedUntilNanos = System.nanoTime() + cooldown.toNanos();
+            ejected = true;
+            ejections.increment();
+        }
+
+        // Both buckets or neither, as in UpstreamRateLimiter
+        boolean tryTake(int requests, long tokens) {
+            if (requestBucket != null && requestBucket.tryAcquire(requests) > 0) {
+                return false;
+            }
+            if (tokenBucket != null && tokenBucket.tryAcquire(tokens) > 0) {
+                if (requestBucket != null) {
+                    requestBucket.adjust(-requests);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        void forceTake(int requests, long tokens) {
+            if (requestBucket != null) {
+                requestBucket.adjust(requests);
+            }
+            if (tokenBucket != null) {
+                tokenBucket.adjust(tokens);
+            }
+        }
+
+        private Endpoints buildEndpoints(String model) {
+            return new Endpoints(
+                    buildUrl(model, "generateContent").toUriString(),
+                    buildUrl(model, "generateContent").build().toUri(),
+                    buildUrl(model, "streamGenerateContent").queryParam("alt", "sse").build().toUri());
+        }
+
+        private UriComponentsBuilder buildUrl(String model, String endpoint) {
+            return UriComponentsBuilder.fromUriString(baseUrl)
+                    .path("/models/")
+                    .path(model)
+                    .path(":")
+                    .path(endpoint);
+        }
+
+        private static TokenBucket bucket(Long perMinute, double burstFraction) {
+            return perMinute != null && perMinute > 0
+                    ? new TokenBucket(perMinute, Math.max(1, (long) (perMinute * burstFraction)))
+                    : null;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/*
+ * Client-side view of the upstream RPM/TPM quota (gemini.rate-limit.enabled).
+ *
+ * Two lock-free TokenBuckets track requests per minute and tokens per minute.
+ * Before a call the prompt's tokens are estimated (TokenEstimator, plus an
+ * allowance for the answer); after the call the estimate is
+ * corrected with the real usageMetadata.totalTokenCount, so the TPM bucket
+ * tracks what upstream actually charged.
+ *
+ * When quota is available and nobody is waiting, a caller takes it directly
+ * on its own thread. Otherwise it joins a priority queue ordered by
+ * X-Gemini-Priority, then by deadline, then by arrival, and a scheduler thread
+ * releases waiters in that order as quota refills. A waiter whose deadline
+ * (X-Gemini-Max-Wait-Ms or gemini.rate-limit.default-max-wait) passes is
+ * rejected with 429 and a Retry-After hint instead of being sent upstream to
+ * collect a real 429.
+ *
+ * GeminiService (batch included) and ReactiveGeminiService (reactive and
+ * streaming endpoints) both take their permits here, so the buckets see every
+ * call that reaches the API.
+ */
+@Service
+public class UpstreamRateLimiter {
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    @Value("${gemini.rate-limit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gemini.rate-limit.requests-per-minute:1000}")
+    private long requestsPerMinute;
+
+    @Value("${gemini.rate-limit.tokens-per-minute:1000000}")
+    private long tokensPerMinute;
+
+    // Bucket capacity as a fraction of the per-minute quota (burst allowance)
+    @Value("${gemini.rate-limit.burst-fraction:0.1}")
+    private double burstFraction;
+
+    @Value("${gemini.rate-limit.default-max-wait:30s}")
+    private Duration defaultMaxWait;
+
+    @Value("${gemini.rate-limit.estimated-output-tokens:256}")
+    private int estimatedOutputTokens;
+
+    // System.nanoTime() unless a test drives time itself
+    LongSupplier clock = System::nanoTime;
+
+    private TokenBucket requestBucket;
+
+    private TokenBucket tokenBucket;
+
+    private final PriorityBlockingQueue<Ticket> waiting = new PriorityBlockingQueue<>(64,
+            Comparator.comparing((Ticket ticket) -> ticket.priority)
+                    .thenComparingLong(ticket -> ticket.deadlineNanos)
+                    .thenComparingLong(ticket -> ticket.sequence));
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Thread scheduler;
+
+    private volatile boolean running;
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder estimatedTokens = new LongAdder();
+    private final LongAdder actualTokens = new LongAdder();
+
+    /**
+     * What was taken from the buckets for one call, to be settled afterwards
+     */
+    public record Permit(long estimatedTokens) {
+    }
+
+    private static final Permit UNLIMITED = new Permit(0);
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        requestBucket = new TokenBucket(requestsPerMinute, Math.max(1, (long) (requestsPerMinute * burstFraction)),
+                clock);
+        tokenBucket = new TokenBucket(tokensPerMinute, Math.max(1, (long) (tokensPerMinute * burstFraction)), clock);
+        running = true;
+        scheduler = Thread.ofPlatform().daemon().name("gemini-rate-limit-scheduler").start(this::scheduleLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Blocks until the request fits the quota (or its deadline passes)
+     */
+    public Permit acquire(GenerateContentRequest request) {
+        return acquire(1, estimateTokens(request));
+    }
+
+    public Permit acquire(int requests, long tokens) {
+        if (!enabled) {
+            return UNLIMITED;
+        }
+        estimatedTokens.add(tokens);
+
+        // Fast path: nobody is queued and both buckets have room
+        if (waiting.isEmpty() && tryTake(requests, tokens) == 0) {
+            granted.increment();
+            return new Permit(tokens);
+        }
+
+        RequestOptions options = GeminiRequestContext.current();
+        Duration maxWait = options.getMaxQueueWait() != null ? options.getMaxQueueWait() : defaultMaxWait;
+        long enqueuedAt = clock.getAsLong();
+        Ticket ticket = new Ticket(options.getPriority(), enqueuedAt + maxWait.toNanos(),
+                sequence.incrementAndGet(), requests, tokens);
+        queued.increment();
+        waiting.add(ticket);
+        LockSupport.unpark(scheduler);
+
+        try {
+            ticket.granted.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // The scheduler may have granted us at the last moment; keep it if so
+            if (ticket.granted.cancel(false) || ticket.granted.isCompletedExceptionally()) {
+                waiting.remove(ticket);
+                throw rejection(ticket);
+            }
+        } catch (ExecutionException e) {
+            throw rejection(ticket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Already granted: give back both the request slot and the tokens
+            if (!ticket.granted.cancel(false)) {
+                requestBucket.adjust(-requests);
+                release(new Permit(tokens));
+            }
+            waiting.remove(ticket);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting for quota");
+        }
+
+        long waited = clock.getAsLong() - enqueuedAt;
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        granted.increment();
+        return new Permit(tokens);
+    }
+
+    /**
+     * Replaces the estimate with the tokens upstream actually reported
+     */
+    public void settle(Permit permit, GenerateContentResponse response) {
+        Integer total = response != null && response.getUsageMetadata() != null
+                ? response.getUsageMetadata().getTotalTokenCount()
+                : null;
+        if (total != null) {
+            settle(permit, total);
+        }
+    }
+
+    public void settle(Permit permit, long actualTotalTokens) {
+        if (!enabled || permit == UNLIMITED) {
+            return;
+        }
+        actualTokens.add(actualTotalTokens);
+        tokenBucket.adjust(actualTotalTokens - permit.estimatedTokens());
+    }
+
+    /**
+     * Gives back the estimated tokens of a call that never reached upstream
+     */
+    public void release(Permit permit) {
+        if (!enabled || permit == UNLIMITED) {
+            return;
+        }
+        tokenBucket.adjust(-permit.estimatedTokens());
+    }
+
+    public long estimateTokens(GenerateContentRequest request) {
+        Integer maxOutput = request.getGenerationConfig() != null
+                ? request.getGenerationConfig().getMaxOutputTokens()
+                : null;
+        long output = maxOutput != null ? Math.min(maxOutput, estimatedOutputTokens) : estimatedOutputTokens;
+        return tokenEstimator.estimate(request) + output;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        if (!enabled) {
+            return result;
+        }
+        long queuedCount = queued.sum();
+        result.put("queueDepth", waiting.size());
+        result.put("granted", granted.sum());
+        result.put("queued", queuedCount);
+        result.put("rejected", rejected.sum());
+        result.put("avgQueueWaitMillis", queuedCount == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / queuedCount);
+        result.put("maxQueueWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+        result.put("availableRequests", requestBucket.available());
+        result.put("availableTokens", tokenBucket.available());
+        result.put("estimatedTokens", estimatedTokens.sum());
+        result.put("actualTokens", actualTokens.sum());
+        return result;
+    }
+
+    private void scheduleLoop() {
+        while (running) {
+            Ticket head = waiting.peek();
+            if (head == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                continue;
+            }
+            if (head.granted.isDone()) {
+                // Cancelled by its caller after a timeout
+                waiting.remove(head);
+                continue;
+            }
+            long now = clock.getAsLong();
+            if (now >= head.deadlineNanos) {
+                waiting.remove(head);
+                head.granted.completeExceptionally(new TimeoutException());
+                continue;
+            }
+            long waitNanos = tryTake(head.requests, head.tokens);
+            if (waitNanos == 0) {
+                waiting.remove(head);
+                if (!head.granted.complete(null)) {
+                    // Caller gave up in the meantime: return what we took for it
+                    requestBucket.adjust(-head.requests);
+                    tokenBucket.adjust(-head.tokens);
+                }
+                continue;
+            }
+            // Sleep until quota refills, but wake for new arrivals and deadlines
+            LockSupport.parkNanos(Math.min(waitNanos, head.deadlineNanos - now));
+        }
+    }
+
+    // Both buckets or neither: a request that fits RPM but not TPM gives its request back
+    private long tryTake(int requests, long tokens) {
+        long requestWait = requestBucket.tryAcquire(requests);
+        if (requestWait > 0) {
+            return requestWait;
+        }
+        long tokenWait = tokenBucket.tryAcquire(tokens);
+        if (tokenWait > 0) {
+            requestBucket.adjust(-requests);
+            return tokenWait;
+        }
+        return 0;
+    }
+
+    private QuotaExceededException rejection(Ticket ticket) {
+        rejected.increment();
+        long retryAfterNanos = Math.max(requestBucket.nanosUntilAvailable(ticket.requests),
+                tokenBucket.nanosUntilAvailable(ticket.tokens));
+        return new QuotaExceededException("Upstream quota exhausted; request waited longer than its deadline",
+                Duration.ofNanos(retryAfterNanos));
+    }
+
+    private static final class Ticket {
+        final RequestOptions.Priority priority;
+        final long deadlineNanos;
+        final long sequence;
+        final int requests;
+        final long tokens;
+        final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        Ticket(RequestOptions.Priority priority, long deadlineNanos, long sequence, int requests, long tokens) {
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+            this.requests = requests;
+            this.tokens = tokens;
+        }
+    }
+}
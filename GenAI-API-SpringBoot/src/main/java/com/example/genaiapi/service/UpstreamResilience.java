@@ -0,0 +1,409 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.RequestOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Retry, hedging and circuit-breaker policies around one upstream call.
+ *
+ * Retries: 429, 500, 502, 503, 504 and I/O errors are retried up to
+ * gemini.resilience.retry.max-attempts times with "full jitter" exponential
+ * backoff (a random delay between zero and initial * 2^n, capped), so callers
+ * that failed together do not come back together. A Retry-After from upstream
+ * is a lower bound on the delay; one longer than max-retry-after is not worth
+ * blocking a request thread for, so the error goes straight back to the client.
+ *
+ * Hedging (off by default, it spends extra quota): when an attempt has not
+ * answered within the observed p95 (hedging.percentile) of recent calls, a
+ * second identical attempt is started and whichever answers first wins. The
+ * loser's virtual thread is interrupted, which closes its socket. Hedges are
+ * capped at max-ratio of all hedgeable calls so a slow upstream is not hit
+ * with twice the load.
+ *
+ * Circuit breaker: 5xx, I/O errors and calls slower than slow-call-duration
+ * count as failures over a sliding window of calls; past the threshold the
+ * breaker opens and calls fail immediately with 503 + Retry-After instead of
+ * waiting on a degraded upstream. 4xx answers mean upstream is healthy and
+ * count as successes. Failures of one API key that UpstreamPool can route
+ * around are left to its ejection. There is one breaker per scope (the model, or "files"
+ * for uploads), so one degraded model does not cut off the others and
+ * ModelRouter can still fail over to them.
+ *
+ * Every attempt, including retries and hedges, runs the whole supplier, so it
+ * takes its own rate-limit permit and concurrency slot.
+ */
+@Service
+public class UpstreamResilience {
+
+    @Autowired
+    private UpstreamTracing tracing;
+
+    @Autowired
+    private UpstreamPool upstreams;
+
+    @Value("${gemini.resilience.retry.enabled:true}")
+    private boolean retryEnabled;
+
+    @Value("${gemini.resilience.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${gemini.resilience.retry.initial-backoff:200ms}")
+    private Duration initialBackoff;
+
+    @Value("${gemini.resilience.retry.max-backoff:5s}")
+    private Duration maxBackoff;
+
+    @Value("${gemini.resilience.retry.max-retry-after:20s}")
+    private Duration maxRetryAfter;
+
+    @Value("${gemini.resilience.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    // Latency percentile after which a hedge is sent
+    @Value("${gemini.resilience.hedging.percentile:0.95}")
+    private double hedgingPercentile;
+
+    @Value("${gemini.resilience.hedging.min-delay:50ms}")
+    private Duration hedgingMinDelay;
+
+    // No hedging until this many latencies have been observed
+    @Value("${gemini.resilience.hedging.min-samples:100}")
+    private int hedgingMinSamples;
+
+    @Value("${gemini.resilience.hedging.max-ratio:0.1}")
+    private double hedgingMaxRatio;
+
+    @Value("${gemini.resilience.circuit-breaker.enabled:true}")
+    private boolean breakerEnabled;
+
+    @Value("${gemini.resilience.circuit-breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${gemini.resilience.circuit-breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${gemini.resilience.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+
+    @Value("${gemini.resilience.circuit-breaker.open-duration:30s}")
+    private Duration breakerOpenDuration;
+
+    @Value("${gemini.resilience.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    @Value("${gemini.resilience.circuit-breaker.slow-call-duration:60s}")
+    private Duration slowCallDuration;
+
+    // Scope (model) -> its breaker, created on first use
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private LatencyTracker latencies;
+
+    private ExecutorService hedgeExecutor;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder retryAfterHonoured = new LongAdder();
+    private final LongAdder retryAfterTooLong = new LongAdder();
+    private final LongAdder hedgeableCalls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder hedgesOverBudget = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        if (hedgingEnabled) {
+            latencies = new LatencyTracker(1024, hedgingPercentile, 64);
+            hedgeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("gemini-hedge-", 0).factory());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the call under the retry and scope's breaker policies; hedgeable
+     * calls may also be raced against a second attempt
+     */
+    public <T> T execute(String scope, Supplier<T> call, boolean hedgeable) {
+        calls.increment();
+        CircuitBreaker breaker = breakerEnabled
+                ? breakers.computeIfAbsent(scope, key -> new CircuitBreaker(breakerWindowSize, breakerMinimumCalls,
+                        breakerFailureRateThreshold, breakerOpenDuration.toNanos(), breakerHalfOpenCalls))
+                : null;
+        boolean hedge = hedgeable && hedgingEnabled;
+        if (hedge) {
+            hedgeableCalls.increment();
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                T result = hedge ? hedged(scope, breaker, call) : attempt(scope, breaker, call);
+                if (attempt > 1) {
+                    recovered.increment();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                Duration delay = retryDelay(e, attempt);
+                if (delay == null) {
+                    if (attempt > 1) {
+                        exhausted.increment();
+                    }
+                    throw e;
+                }
+                retries.increment();
+                sleep(delay);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> retry = new LinkedHashMap<>();
+        retry.put("enabled", retryEnabled);
+        retry.put("maxAttempts", maxAttempts);
+        retry.put("retries", retries.sum());
+        retry.put("recoveredCalls", recovered.sum());
+        retry.put("exhaustedCalls", exhausted.sum());
+        retry.put("retryAfterHonoured", retryAfterHonoured.sum());
+        retry.put("retryAfterTooLong", retryAfterTooLong.sum());
+
+        Map<String, Object> hedging = new LinkedHashMap<>();
+        hedging.put("enabled", hedgingEnabled);
+        if (hedgingEnabled) {
+            long delay = latencies.percentileNanos(hedgingMinSamples);
+            hedging.put("currentDelayMillis", delay < 0 ? null : Math.max(delay, hedgingMinDelay.toNanos()) / 1_000_000.0);
+            hedging.put("hedgeableCalls", hedgeableCalls.sum());
+            hedging.put("hedges", hedges.sum());
+            hedging.put("hedgeWins", hedgeWins.sum());
+            hedging.put("hedgesOverBudget", hedgesOverBudget.sum());
+        }
+
+        Map<String, Object> circuitBreaker = new LinkedHashMap<>();
+        circuitBreaker.put("enabled", breakerEnabled);
+        if (breakerEnabled) {
+            circuitBreaker.put("shortCircuited", shortCircuited.sum());
+            circuitBreaker.put("slowCalls", slowCalls.sum());
+            Map<String, Object> scopes = new LinkedHashMap<>();
+            breakers.forEach((scope, breaker) -> {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("state", breaker.state().name());
+                entry.put("failureRate", breaker.failureRate());
+                entry.put("timesOpened", breaker.transitionsToOpen());
+                scopes.put(scope, entry);
+            });
+            circuitBreaker.put("scopes", scopes);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("calls", calls.sum());
+        result.put("retry", retry);
+        result.put("hedging", hedging);
+        result.put("circuitBreaker", circuitBreaker);
+        return result;
+    }
+
+    private <T> T attempt(String scope, CircuitBreaker breaker, Supplier<T> call) {
+        if (breaker != null && !breaker.tryAcquire()) {
+            shortCircuited.increment();
+            throw new CircuitOpenException("Upstream circuit breaker for " + scope + " is open",
+                    Duration.ofNanos(breaker.remainingOpenNanos()));
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            if (breaker != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // A hedge loser being cancelled says nothing about upstream
+                    breaker.onIgnored();
+                } else if (upstreams.absorbed(e)) {
+                    // One key failing while others can serve: the pool ejects it
+                    breaker.onIgnored();
+                } else if (isUpstreamFault(e)) {
+                    breaker.onFailure();
+                } else if (e instanceof HttpStatusCodeException) {
+                    breaker.onSuccess();
+                } else {
+                    breaker.onIgnored();
+                }
+            }
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (latencies != null) {
+            latencies.record(elapsed);
+        }
+        if (breaker != null) {
+            if (elapsed >= slowCallDuration.toNanos()) {
+                slowCalls.increment();
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The first attempt runs on a virtual thread while the caller waits up to
+     * the hedging delay; if it has not answered by then (and the hedge budget
+     * allows) a second attempt is started and the first success wins. The
+     * caller's RequestOptions are copied onto both threads so priority and
+     * deadlines still apply to the rate limiter, and its current span so both
+     * attempts join the caller's trace.
+     */
+    private <T> T hedged(String scope, CircuitBreaker breaker, Supplier<T> call) {
+        long delay = latencies.percentileNanos(hedgingMinSamples);
+        if (delay < 0) {
+            return attempt(scope, breaker, call);
+        }
+        delay = Math.max(delay, hedgingMinDelay.toNanos());
+
+        RequestOptions options = GeminiRequestContext.current();
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        Future<?> primary = hedgeExecutor.submit(tracing.wrap(() -> race(scope, breaker, call, options, winner, running, false)));
+        Future<?> secondary = null;
+        try {
+            try {
+                return winner.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // The primary is in the tail: hedge if the budget allows
+            }
+            if (hedges.sum() + 1 <= hedgingMaxRatio * hedgeableCalls.sum()) {
+                hedges.increment();
+                running.incrementAndGet();
+                secondary = hedgeExecutor.submit(tracing.wrap(() -> race(scope, breaker, call, options, winner, running, true)));
+            } else {
+                hedgesOverBudget.increment();
+            }
+            return winner.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting for upstream");
+        } finally {
+            primary.cancel(true);
+            if (secondary != null) {
+                secondary.cancel(true);
+            }
+        }
+    }
+
+    // The first success completes the race; the last failure does if nobody succeeded
+    private <T> void race(String scope, CircuitBreaker breaker, Supplier<T> call, RequestOptions options,
+            CompletableFuture<T> winner, AtomicInteger running, boolean isHedge) {
+        GeminiRequestContext.set(options);
+        try {
+            T result = attempt(scope, breaker, call);
+            if (winner.complete(result) && isHedge) {
+                hedgeWins.increment();
+            }
+        } catch (RuntimeException e) {
+            if (running.decrementAndGet() == 0) {
+                winner.completeExceptionally(e);
+            }
+        } finally {
+            GeminiRequestContext.clear();
+        }
+    }
+
+    /*
+     * How long to wait before attempt + 1, or null when the error must go back
+     * to the caller as is.
+     */
+    private Duration retryDelay(RuntimeException e, int attempt) {
+        if (!retryEnabled || attempt >= maxAttempts || !isRetryable(e)) {
+            return null;
+        }
+        long ceiling = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() << Math.min(attempt - 1, 30));
+        Duration backoff = Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1));
+
+        Duration retryAfter = retryAfter(e);
+        if (retryAfter == null) {
+            return backoff;
+        }
+        if (retryAfter.compareTo(maxRetryAfter) > 0) {
+            retryAfterTooLong.increment();
+            return null;
+        }
+        retryAfterHonoured.increment();
+        return retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+    }
+
+    private static boolean isRetryable(RuntimeException e) {
+        if (e instanceof HttpStatusCodeException statusError) {
+            int status = statusError.getStatusCode().value();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return e instanceof ResourceAccessException;
+    }
+
+    private static boolean isUpstreamFault(RuntimeException e) {
+        return e instanceof HttpServerErrorException || e instanceof ResourceAccessException;
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date
+    private static Duration retryAfter(RuntimeException e) {
+        if (!(e instanceof HttpStatusCodeException statusError) || statusError.getResponseHeaders() == null) {
+            return null;
+        }
+        String value = statusError.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                Duration until = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (DateTimeParseException notDate) {
+                return null;
+            }
+        }
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.genaiapi.service;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/*
+ * Spans for one upstream attempt and its phases, on top of Micrometer
+ * Tracing (bridged to OpenTelemetry by the actuator auto-configuration, which
+ * also continues the caller's W3C traceparent on the incoming request):
+ *
+ * gemini.upstream one makeRequest attempt (retries and hedges get their own)
+ * http.connection.acquire waiting for a pooled connection
+ * http.connect TCP connect of a new connection
+ * tls.handshake TLS handshake of a new connection
+ * http.request.write JSON serialization, streamed onto the socket
+ * http.response.wait time to the first byte of the response
+ * http.response.read response body transfer and JSON parsing
+ *
+ * The phase spans are created by the HttpClient plumbing in config
+ * (TracingConnectionManager, UpstreamTracingInterceptor). They are only
+ * started when the current trace is sampled: for the rest isRecording() is a
+ * ThreadLocal read and a flag check, so with a low sampling probability the
+ * tracing cost at full load is close to nothing.
+ */
+@Component
+public class UpstreamTracing {
+
+    private final Tracer tracer;
+
+    private final Propagator propagator;
+
+    public UpstreamTracing(Tracer tracer, Propagator propagator) {
+        this.tracer = tracer;
+        this.propagator = propagator;
+    }
+
+    /**
+     * True when the current thread is inside a sampled span
+     */
+    public boolean isRecording() {
+        Span current = tracer.currentSpan();
+        return current != null && Boolean.TRUE.equals(current.context().sampled());
+    }
+
+    /**
+     * Runs one upstream attempt in a gemini.upstream span, so the phase spans
+     * created below it nest under the attempt
+     */
+    public <T> T traceUpstream(String model, Supplier<T> call) {
+        if (!isRecording()) {
+            return call.get();
+        }
+        Span span = tracer.nextSpan().name("gemini.upstream").tag("gemini.model", model).start();
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            return call.get();
+        } catch (HttpStatusCodeException e) {
+            span.tag("http.status_code", Integer.toString(e.getStatusCode().value()));
+            span.error(e);
+            throw e;
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Starts a child of the current span; the caller must end it
+     */
+    public Span startPhase(String name) {
+        return tracer.nextSpan().name(name).start();
+    }
+
+    /**
+     * Makes the span current for a nested phase
+     */
+    public Tracer.SpanInScope inScope(Span span) {
+        return tracer.withSpan(span);
+    }
+
+    /**
+     * Writes the current trace context (traceparent) onto an outgoing request
+     */
+    public void inject(BiConsumer<String, String> headerSetter) {
+        Span current = tracer.currentSpan();
+        if (current != null) {
+            propagator.inject(current.context(), headerSetter, (setter, key, value) -> setter.accept(key, value));
+        }
+    }
+
+    /**
+     * Carries the caller's current span onto another thread (hedged attempts)
+     */
+    public Runnable wrap(Runnable task) {
+        Span parent = tracer.currentSpan();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            try (Tracer.SpanInScope ignored = tracer.withSpan(parent)) {
+                task.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentResponse;
+import com.example.genaiapi.model.RequestOptions;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Token usage per API client (X-Api-Client), endpoint and model, taken from
+ * the usageMetadata of every upstream answer. Off unless gemini.usage.enabled
+ * is set, since it writes a file under gemini.usage.path.
+ *
+ * Recording is a ConcurrentHashMap lookup plus four LongAdder increments, so
+ * concurrent callers never contend on a lock. Every flush-interval a
+ * background thread appends what changed since the previous flush to an
+ * NDJSON file, one line per key, and never rewrites it; on startup the file
+ * is replayed so totals survive restarts. /api/admin/usage aggregates the
+ * totals by any of the three dimensions, with an estimated cost from
+ * per-model prices.
+ *
+ * Only calls that reached upstream are counted: cache hits cost no tokens,
+ * and a request coalesced onto an identical in-flight call is charged to the
+ * caller whose call was sent. A streamed answer is charged once, with the
+ * usageMetadata of its final chunk. Endpoints are handler patterns, so path
+ * variables such as session ids do not multiply keys. Keys are capped at
+ * max-keys; beyond that new client/endpoint pairs are folded into one fixed
+ * ("other", "other", model) key per model.
+ */
+@Service
+public class UsageLedger {
+
+    private static final String OVERFLOW = "other";
+
+    @Value("${gemini.usage.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gemini.usage.path:data/usage-ledger.ndjson}")
+    private Path path;
+
+    @Value("${gemini.usage.flush-interval:60s}")
+    private Duration flushInterval;
+
+    @Value("${gemini.usage.max-keys:10000}")
+    private int maxKeys;
+
+    // USD per million prompt / candidate tokens, by model
+    @Value("#{${gemini.usage.input-price-per-million:{'gemini-2.0-flash': 0.10}}}")
+    private Map<String, Double> inputPrices;
+
+    @Value("#{${gemini.usage.output-price-per-million:{'gemini-2.0-flash': 0.40}}}")
+    private Map<String, Double> outputPrices;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Key, Counters> entries = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    private final LongAdder flushFailures = new LongAdder();
+
+    private volatile String lastFlushError;
+
+    private volatile Instant lastFlush;
+
+    private record Key(String client, String endpoint, String model) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        replay();
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("gemini-usage-flush").factory());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushQuietly();
+        }
+    }
+
+    /**
+     * Charges the answer's token usage to the current request's client and
+     * endpoint
+     */
+    public void record(String model, GenerateContentResponse response) {
+        record(model, response, GeminiRequestContext.current());
+    }
+
+    /**
+     * Charges the answer's token usage to the given request's client and
+     * endpoint, for callbacks that run off the request thread
+     */
+    public void record(String model, GenerateContentResponse response, RequestOptions options) {
+        if (!enabled || response == null || response.getUsageMetadata() == null) {
+            return;
+        }
+        GenerateContentResponse.UsageMetadata usage = response.getUsageMetadata();
+        Counters counters = counters(new Key(options.getClientId(), options.getEndpoint(), model));
+        counters.requests.increment();
+        counters.promptTokens.add(value(usage.getPromptTokenCount()));
+        counters.candidatesTokens.add(value(usage.getCandidatesTokenCount()));
+        counters.totalTokens.add(value(usage.getTotalTokenCount()));
+    }
+
+    /**
+     * Totals grouped by some of client, endpoint and model, heaviest first
+     */
+    public Map<String, Object> query(List<String> groupBy, int limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        if (!enabled) {
+            return result;
+        }
+        Map<List<String>, long[]> groups = new HashMap<>();
+        Map<List<String>, Double> costs = new HashMap<>();
+        long[] overall = new long[4];
+        double overallCost = 0;
+        for (Map.Entry<Key, Counters> entry : entries.entrySet()) {
+            Key key = entry.getKey();
+            long[] sums = entry.getValue().sums();
+            double cost = cost(key.model(), sums);
+            List<String> group = new ArrayList<>(groupBy.size());
+            for (String dimension : groupBy) {
+                group.add(switch (dimension) {
+                    case "client" -> key.client();
+                    case "endpoint" -> key.endpoint();
+                    case "model" -> key.model();
+                    default -> throw new IllegalArgumentException("Unknown usage dimension: " + dimension);
+                });
+            }
+            long[] totals = groups.computeIfAbsent(group, g -> new long[4]);
+            for (int i = 0; i < 4; i++) {
+                totals[i] += sums[i];
+                overall[i] += sums[i];
+            }
+            costs.merge(group, cost, Double::sum);
+            overallCost += cost;
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        groups.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<List<String>, long[]> e) -> e.getValue()[3]).reversed())
+                .limit(limit)
+                .forEach(e -> {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 0; i < groupBy.size(); i++) {
+                        row.put(groupBy.get(i), e.getKey().get(i));
+                    }
+                    putTotals(row, e.getValue(), costs.get(e.getKey()));
+                    rows.add(row);
+                });
+        Map<String, Object> totals = new LinkedHashMap<>();
+        putTotals(totals, overall, overallCost);
+        result.put("path", path.toString());
+        result.put("lastFlush", lastFlush != null ? lastFlush.toString() : null);
+        result.put("flushFailures", flushFailures.sum());
+        result.put("lastFlushError", lastFlushError);
+        result.put("groupBy", groupBy);
+        result.put("totals", totals);
+        result.put("groups", groups.size());
+        result.put("rows", rows);
+        return result;
+    }
+
+    private Counters counters(Key key) {
+        Counters counters = entries.get(key);
+        if (counters != null) {
+            return counters;
+        }
+        if (entries.size() >= maxKeys) {
+            key = new Key(OVERFLOW, OVERFLOW, key.model());
+        }
+        return entries.computeIfAbsent(key, k -> new Counters());
+    }
+
+    private double cost(String model, long[] sums) {
+        return sums[1] / 1e6 * inputPrices.getOrDefault(model, 0.0)
+                + sums[2] / 1e6 * outputPrices.getOrDefault(model, 0.0);
+    }
+
+    private static void putTotals(Map<String, Object> row, long[] sums, double cost) {
+        row.put("requests", sums[0]);
+        row.put("promptTokens", sums[1]);
+        row.put("candidatesTokens", sums[2]);
+        row.put("totalTokens", sums[3]);
+        row.put("estimatedCostUsd", cost);
+    }
+
+    private static long value(Integer count) {
+        return count != null ? count : 0;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            // Nothing is lost: the flushed marks did not move, so the next flush retries
+            flushFailures.increment();
+            lastFlushError = e.toString();
+        }
+    }
+
+    // Only the flusher thread (or shutdown, after it stopped) gets here
+    private synchronized void flush() throws IOException {
+        String timestamp = Instant.now().toString();
+        StringBuilder lines = new StringBuilder();
+        List<Runnable> commits = new ArrayList<>();
+        for (Map.Entry<Key, Counters> entry : entries.entrySet()) {
+            Counters counters = entry.getValue();
+            long[] sums = counters.sums();
+            long[] delta = new long[4];
+            boolean changed = false;
+            for (int i = 0; i < 4; i++) {
+                delta[i] = sums[i] - counters.flushed[i];
+                changed |= delta[i] != 0;
+            }
+            if (!changed) {
+                continue;
+            }
+            Key key = entry.getKey();
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("timestamp", timestamp);
+            line.put("client", key.client());
+            line.put("endpoint", key.endpoint());
+            line.put("model", key.model());
+            line.put("requests", delta[0]);
+            line.put("promptTokens", delta[1]);
+            line.put("candidatesTokens", delta[2]);
+            line.put("totalTokens", delta[3]);
+            lines.append(objectMapper.writeValueAsString(line)).append('\n');
+            commits.add(() -> System.arraycopy(sums, 0, counters.flushed, 0, 4));
+        }
+        if (commits.isEmpty()) {
+            lastFlush = Instant.now();
+            return;
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(lines.toString());
+        }
+        // Only advance the flushed marks once the lines are on disk
+        commits.forEach(Runnable::run);
+        lastFlush = Instant.now();
+    }
+
+    private void replay() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = objectMapper.readTree(line);
+                Counters counters = counters(new Key(node.path("client").asText(), node.path("endpoint").asText(),
+                        node.path("model").asText()));
+                long[] delta = { node.path("requests").asLong(), node.path("promptTokens").asLong(),
+                        node.path("candidatesTokens").asLong(), node.path("totalTokens").asLong() };
+                counters.requests.add(delta[0]);
+                counters.promptTokens.add(delta[1]);
+                counters.candidatesTokens.add(delta[2]);
+                counters.totalTokens.add(delta[3]);
+                for (int i = 0; i < 4; i++) {
+                    counters.flushed[i] += delta[i];
+                }
+                lines++;
+            }
+        } catch (IOException | RuntimeException e) {
+            lastFlushError = "Replay stopped after " + lines + " lines: " + e;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder requests = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder candidatesTokens = new LongAdder();
+        final LongAdder totalTokens = new LongAdder();
+        // Already written to the ledger file; touched by the flusher only
+        final long[] flushed = new long[4];
+
+        long[] sums() {
+            return new long[] { requests.sum(), promptTokens.sum(), candidatesTokens.sum(), totalTokens.sum() };
+        }
+    }
+}
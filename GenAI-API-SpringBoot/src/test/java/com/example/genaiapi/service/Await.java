@@ -0,0 +1,26 @@
+package com.example.genaiapi.service;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.fail;
+
+/*
+ * Polls for a state reached on another thread (a queued waiter, a settled
+ * call), failing the test after five seconds.
+ */
+final class Await {
+
+    private Await() {
+    }
+
+    static void until(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not reached within 5s");
+            }
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+    }
+}
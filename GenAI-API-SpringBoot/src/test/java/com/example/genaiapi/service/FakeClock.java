@@ -0,0 +1,23 @@
+package com.example.genaiapi.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * Stands in for System.nanoTime(): time only moves when a test advances it.
+ */
+class FakeClock implements LongSupplier {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+    @Override
+    public long getAsLong() {
+        return now.get();
+    }
+
+    void advance(Duration duration) {
+        now.addAndGet(duration.toNanos());
+    }
+}
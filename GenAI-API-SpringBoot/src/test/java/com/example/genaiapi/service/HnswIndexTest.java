@@ -0,0 +1,129 @@
+package com.example.genaiapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 16;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void findsEveryStoredVector() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 500, 16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vectors.add(randomUnitVector());
+            index.add(vectors.get(i), i, i);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            HnswIndex.Match<Integer> match = index.searchNearest(vectors.get(i), 64, 1000, value -> true);
+            assertThat(match.value()).isEqualTo(i);
+            assertThat(match.similarity()).isCloseTo(1.0f, within(1e-4f));
+        }
+    }
+
+    @Test
+    void onlyReturnsAcceptedValues() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 10, 4, 20);
+        float[] vector = randomUnitVector();
+        index.add(vector, 1, 0);
+        index.add(randomUnitVector(), 2, 0);
+
+        assertThat(index.searchNearest(vector, 10, 1, value -> value == 2).value()).isEqualTo(2);
+        assertThat(index.searchNearest(vector, 10, 1, value -> value == 3)).isNull();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyMatchedEntriesFirst() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 10, 4, 20);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            vectors.add(randomUnitVector());
+            index.add(vectors.get(i), i, i);
+        }
+        // Matching entry 0 makes it the most recently used
+        index.searchNearest(vectors.get(0), 10, 100, value -> value == 0);
+
+        index.evictLeastRecentlyUsed(2);
+
+        assertThat(index.size()).isEqualTo(8);
+        assertThat(index.tombstones()).isEqualTo(2);
+        assertThat(index.searchNearest(vectors.get(0), 10, 101, value -> value == 0)).isNotNull();
+        assertThat(index.searchNearest(vectors.get(1), 10, 101, value -> value == 1)).isNull();
+        assertThat(index.searchNearest(vectors.get(2), 10, 101, value -> value == 2)).isNull();
+    }
+
+    @Test
+    void reusesEvictedSlotsInsteadOfGrowing() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 100, 8, 50);
+        int next = 0;
+        while (!index.isFull()) {
+            index.add(randomUnitVector(), next, next);
+            next++;
+        }
+        long footprint = index.footprintBytes();
+
+        index.evictLeastRecentlyUsed(10);
+        assertThat(index.isFull()).isFalse();
+        while (!index.isFull()) {
+            index.add(randomUnitVector(), next, next);
+            next++;
+        }
+
+        // The entry point may have been a victim; its slot is kept until another node takes over
+        assertThat(index.size()).isBetween(99, 100);
+        assertThat(index.size() + index.tombstones()).isEqualTo(100);
+        assertThat(index.footprintBytes()).isEqualTo(footprint);
+        float[] vector = randomUnitVector();
+        assertThatThrownBy(() -> index.add(vector, -1, 0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void keepsFindingRecentEntriesThroughRepeatedReuse() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 300, 16, 100);
+        Deque<float[]> recent = new ArrayDeque<>();
+        // Ten times the capacity, so every slot is reused several times over
+        for (int i = 0; i < 3000; i++) {
+            if (index.isFull()) {
+                index.evictLeastRecentlyUsed(30);
+            }
+            float[] vector = randomUnitVector();
+            index.add(vector, i, i);
+            recent.addFirst(vector);
+            if (recent.size() > 200) {
+                recent.removeLast();
+            }
+        }
+
+        int expected = 2999;
+        for (float[] vector : recent) {
+            HnswIndex.Match<Integer> match = index.searchNearest(vector, 64, 10_000, value -> true);
+            assertThat(match.value()).isEqualTo(expected--);
+        }
+    }
+
+    private float[] randomUnitVector() {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MicroBatcherTest {
+
+    private final MicroBatcher batcher = new MicroBatcher();
+
+    private final GeminiBatchClient batchClient = mock(GeminiBatchClient.class);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ModelRouter router = mock(ModelRouter.class);
+        when(router.defaultModel()).thenReturn("gemini-2.0-flash");
+        ReflectionTestUtils.setField(batcher, "batchClient", batchClient);
+        ReflectionTestUtils.setField(batcher, "usageLedger", new UsageLedger());
+        ReflectionTestUtils.setField(batcher, "router", router);
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        ReflectionTestUtils.setField(batcher, "maxQueued", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        batcher.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void answersEachCallerFromItsPositionInTheBatch() throws Exception {
+        start(4, Duration.ofSeconds(5), 1);
+        when(batchClient.generate(anyList())).thenAnswer(invocation -> {
+            List<GenerateContentRequest> requests = invocation.getArgument(0);
+            List<GenerateContentResponse> responses = new ArrayList<>();
+            for (GenerateContentRequest request : requests) {
+                responses.add(responseFor(request));
+            }
+            return responses;
+        });
+
+        List<GenerateContentRequest> requests = new ArrayList<>();
+        List<CompletableFuture<GenerateContentResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            GenerateContentRequest request = request("prompt " + i);
+            requests.add(request);
+            calls.add(generate(request));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            GenerateContentResponse response = calls.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(response.getCandidates().get(0).getFinishReason()).isEqualTo("prompt " + i);
+        }
+        verify(batchClient, times(1)).generate(anyList());
+        assertThat(batcher.stats().get("avgBatchSize")).isEqualTo(4.0);
+    }
+
+    @Test
+    void aFailedBatchFailsEveryCallerInIt() {
+        start(2, Duration.ofSeconds(5), 1);
+        ResponseStatusException failure = new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Batch failed");
+        when(batchClient.generate(anyList())).thenThrow(failure);
+
+        CompletableFuture<GenerateContentResponse> first = generate(request("a"));
+        CompletableFuture<GenerateContentResponse> second = generate(request("b"));
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCause(failure);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCause(failure);
+    }
+
+    /*
+     * One batch is stuck upstream and holds the only in-flight slot, so the
+     * collector is blocked holding the second request and the third is still
+     * queued. stop() must fail both with 503; the batch already sent finishes.
+     */
+    @Test
+    void stopFailsCollectedAndQueuedCallersWith503() throws Exception {
+        start(1, Duration.ofMillis(1), 1);
+        CountDownLatch sent = new CountDownLatch(1);
+        when(batchClient.generate(anyList())).thenAnswer(invocation -> {
+            sent.countDown();
+            release.await();
+            List<GenerateContentRequest> requests = invocation.getArgument(0);
+            return List.of(responseFor(requests.get(0)));
+        });
+        CompletableFuture<GenerateContentResponse> inFlight = generate(request("sent"));
+        sent.await();
+        CompletableFuture<GenerateContentResponse> collected = generate(request("collected"));
+        CompletableFuture<GenerateContentResponse> queued = generate(request("queued"));
+        Await.until(() -> batcher.stats().get("queued").equals(1));
+
+        batcher.stop();
+
+        assertServiceUnavailable(collected);
+        assertServiceUnavailable(queued);
+        release.countDown();
+        assertThat(inFlight.get(5, TimeUnit.SECONDS).getCandidates().get(0).getFinishReason()).isEqualTo("sent");
+    }
+
+    @Test
+    void refusesNewCallsOnceStopped() {
+        start(1, Duration.ofMillis(1), 1);
+        batcher.stop();
+
+        assertThatThrownBy(() -> batcher.generate(request("late")))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private void start(int maxBatchSize, Duration maxWait, int maxInFlightBatches) {
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", maxBatchSize);
+        ReflectionTestUtils.setField(batcher, "maxWait", maxWait);
+        ReflectionTestUtils.setField(batcher, "maxInFlightBatches", maxInFlightBatches);
+        batcher.start();
+    }
+
+    private CompletableFuture<GenerateContentResponse> generate(GenerateContentRequest request) {
+        return CompletableFuture.supplyAsync(() -> batcher.generate(request), executor);
+    }
+
+    private static void assertServiceUnavailable(CompletableFuture<GenerateContentResponse> call) {
+        assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS))
+                .cause()
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    private static GenerateContentRequest request(String prompt) {
+        return new GenerateContentRequest(List.of(new GenerateContentRequest.Content("user",
+                List.of(new GenerateContentRequest.Part(prompt, null, null)))));
+    }
+
+    // Tags the answer with its prompt so callers can tell whose answer they got
+    private static GenerateContentResponse responseFor(GenerateContentRequest request) {
+        GenerateContentResponse.Candidate candidate = new GenerateContentResponse.Candidate();
+        candidate.setFinishReason(request.getContents().get(0).getParts().get(0).getText());
+        return new GenerateContentResponse(List.of(candidate), null);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.GenerateContentRequest;
+import com.example.genaiapi.model.GenerateContentResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final CountDownLatch leaderStarted = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(coalescer, "requestHasher", new RequestHasher());
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void identicalConcurrentCallsShareOneUpstreamCall() throws Exception {
+        GenerateContentResponse response = new GenerateContentResponse();
+        CompletableFuture<GenerateContentResponse> leader = call(blockingUpstream(() -> response));
+        leaderStarted.await();
+        CompletableFuture<GenerateContentResponse> follower = call(blockingUpstream(() -> response));
+        Await.until(() -> coalescer.stats().get("coalescedCalls").equals(1L));
+
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isSameAs(response);
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(response);
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(coalescer.stats().get("inFlight")).isEqualTo(0);
+    }
+
+    @Test
+    void followersGetTheLeadersException() throws Exception {
+        IllegalStateException failure = new IllegalStateException("upstream failed");
+
+        assertThat(causeSeenByFollower(failure)).isSameAs(failure);
+    }
+
+    @Test
+    void followersGetTheLeadersErrorInsteadOfHanging() throws Exception {
+        StackOverflowError failure = new StackOverflowError();
+
+        assertThat(causeSeenByFollower(failure)).isSameAs(failure);
+        assertThat(coalescer.stats().get("inFlight")).isEqualTo(0);
+    }
+
+    @Test
+    void settledCallsAreNotReused() {
+        coalescer.execute("gemini-2.0-flash", request(), countingUpstream());
+        coalescer.execute("gemini-2.0-flash", request(), countingUpstream());
+
+        assertThat(upstreamCalls).hasValue(2);
+        assertThat(coalescer.stats().get("coalescedCalls")).isEqualTo(0L);
+    }
+
+    @Test
+    void differentModelsAreNotCoalesced() throws Exception {
+        CompletableFuture<GenerateContentResponse> first = call(blockingUpstream(GenerateContentResponse::new));
+        leaderStarted.await();
+        CompletableFuture<GenerateContentResponse> second = CompletableFuture.supplyAsync(
+                () -> coalescer.execute("gemini-2.5-pro", request(), countingUpstream()), executor);
+
+        assertThat(second.get(5, TimeUnit.SECONDS)).isNotNull();
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    // The leader blocks until the follower has joined, then throws failure
+    private Throwable causeSeenByFollower(Throwable failure) throws Exception {
+        CompletableFuture<GenerateContentResponse> leader = call(blockingUpstream(() -> {
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) failure;
+        }));
+        leaderStarted.await();
+        CompletableFuture<GenerateContentResponse> follower = call(blockingUpstream(GenerateContentResponse::new));
+        Await.until(() -> coalescer.stats().get("coalescedCalls").equals(1L));
+
+        release.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCause(failure);
+        try {
+            follower.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(upstreamCalls).hasValue(1);
+            return e.getCause();
+        }
+        throw new AssertionError("Follower completed normally");
+    }
+
+    private CompletableFuture<GenerateContentResponse> call(Supplier<GenerateContentResponse> upstream) {
+        return CompletableFuture.supplyAsync(() -> coalescer.execute("gemini-2.0-flash", request(), upstream),
+                executor);
+    }
+
+    private Supplier<GenerateContentResponse> blockingUpstream(Supplier<GenerateContentResponse> answer) {
+        return () -> {
+            upstreamCalls.incrementAndGet();
+            leaderStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return answer.get();
+        };
+    }
+
+    private Supplier<GenerateContentResponse> countingUpstream() {
+        return () -> {
+            upstreamCalls.incrementAndGet();
+            return new GenerateContentResponse();
+        };
+    }
+
+    private static GenerateContentRequest request() {
+        return new GenerateContentRequest(List.of(new GenerateContentRequest.Content("user",
+                List.of(new GenerateContentRequest.Part("What is the capital of France?", null, null)))));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.genaiapi.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final FakeClock clock = new FakeClock();
+
+    // One token per second, bursts of five
+    private final TokenBucket bucket = new TokenBucket(60, 5, clock);
+
+    @Test
+    void grantsTheBurstThenReportsTheWait() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(1)).isZero();
+        }
+
+        assertThat(bucket.tryAcquire(1)).isEqualTo(SECOND);
+        assertThat(bucket.tryAcquire(2)).isEqualTo(2 * SECOND);
+        assertThat(bucket.available()).isZero();
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        bucket.tryAcquire(5);
+
+        clock.advance(Duration.ofSeconds(2));
+
+        assertThat(bucket.available()).isEqualTo(2);
+        assertThat(bucket.tryAcquire(2)).isZero();
+        assertThat(bucket.tryAcquire(1)).isEqualTo(SECOND);
+    }
+
+    @Test
+    void neverHoldsMoreThanItsCapacity() {
+        clock.advance(Duration.ofHours(1));
+
+        assertThat(bucket.available()).isEqualTo(5);
+    }
+
+    @Test
+    void refundsAreCappedAtTheCapacity() {
+        bucket.tryAcquire(5);
+
+        bucket.adjust(-2);
+        assertThat(bucket.available()).isEqualTo(2);
+
+        bucket.adjust(-10);
+        assertThat(bucket.available()).isEqualTo(5);
+    }
+
+    @Test
+    void extraCostPushesTheNextGrantBack() {
+        bucket.adjust(7);
+
+        // Two tokens in debt
+        assertThat(bucket.available()).isEqualTo(-2);
+        assertThat(bucket.nanosUntilAvailable(1)).isEqualTo(3 * SECOND);
+    }
+
+    @Test
+    void oversizedRequestsCostAtMostTheCapacity() {
+        assertThat(bucket.tryAcquire(100)).isZero();
+
+        clock.advance(Duration.ofSeconds(5));
+
+        assertThat(bucket.available()).isEqualTo(5);
+    }
+
+    @Test
+    void nanosUntilAvailableTakesNothing() {
+        bucket.tryAcquire(5);
+
+        assertThat(bucket.nanosUntilAvailable(1)).isEqualTo(SECOND);
+        assertThat(bucket.nanosUntilAvailable(1)).isEqualTo(SECOND);
+
+        clock.advance(Duration.ofSeconds(1));
+        assertThat(bucket.tryAcquire(1)).isZero();
+    }
+}
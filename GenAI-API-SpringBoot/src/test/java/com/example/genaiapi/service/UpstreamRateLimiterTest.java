@@ -0,0 +1,175 @@
+package com.example.genaiapi.service;
+
+import com.example.genaiapi.model.RequestOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UpstreamRateLimiterTest {
+
+    private final FakeClock clock = new FakeClock();
+
+    private UpstreamRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new UpstreamRateLimiter();
+        ReflectionTestUtils.setField(limiter, "tokenEstimator", new TokenEstimator());
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        // One request every 6s and one token every 6ms, bursts of 5 and 5000
+        ReflectionTestUtils.setField(limiter, "requestsPerMinute", 10L);
+        ReflectionTestUtils.setField(limiter, "tokensPerMinute", 10_000L);
+        ReflectionTestUtils.setField(limiter, "burstFraction", 0.5);
+        ReflectionTestUtils.setField(limiter, "defaultMaxWait", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(limiter, "estimatedOutputTokens", 256);
+        limiter.clock = clock;
+        limiter.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        limiter.stop();
+        GeminiRequestContext.clear();
+    }
+
+    @Test
+    void grantsWithinTheBurstWithoutQueueing() {
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(1, 100);
+        }
+
+        assertThat(stat("granted")).isEqualTo(5L);
+        assertThat(stat("queued")).isEqualTo(0L);
+        assertThat(stat("availableRequests")).isEqualTo(0L);
+        assertThat(stat("availableTokens")).isEqualTo(4500L);
+    }
+
+    @Test
+    void releasesAQueuedCallerOnceQuotaRefills() throws Exception {
+        drainRequests();
+        CompletableFuture<UpstreamRateLimiter.Permit> waiter = CompletableFuture.supplyAsync(
+                () -> limiter.acquire(1, 100));
+        Await.until(() -> stat("queueDepth").equals(1));
+        assertThat(waiter).isNotDone();
+
+        clock.advance(Duration.ofSeconds(6));
+        wakeScheduler();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS).estimatedTokens()).isEqualTo(100);
+        assertThat(stat("queued")).isEqualTo(1L);
+        assertThat(stat("availableRequests")).isEqualTo(0L);
+    }
+
+    @Test
+    void rejectsAQueuedCallerAtItsDeadlineWithARetryAfterHint() {
+        drainRequests();
+        GeminiRequestContext.set(RequestOptions.builder().maxQueueWait(Duration.ofMillis(50)).build());
+
+        assertThatThrownBy(() -> limiter.acquire(1, 100))
+                .isInstanceOfSatisfying(QuotaExceededException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                    assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(6));
+                });
+        assertThat(stat("queueDepth")).isEqualTo(0);
+        assertThat(stat("rejected")).isEqualTo(1L);
+    }
+
+    @Test
+    void anInterruptedWaiterGetsA503AndTakesNothing() throws Exception {
+        drainRequests();
+        AtomicReference<Object> outcome = new AtomicReference<>();
+        Thread waiter = Thread.ofPlatform().start(() -> outcome.set(acquireOrError()));
+        Await.until(() -> stat("queueDepth").equals(1));
+
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertThat(outcome.get()).isInstanceOfSatisfying(Outcome.class, failed -> {
+            assertThat(failed.error().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(failed.interrupted()).isTrue();
+        });
+        assertThat(stat("queueDepth")).isEqualTo(0);
+        clock.advance(Duration.ofSeconds(6));
+        assertThat(stat("availableRequests")).isEqualTo(1L);
+    }
+
+    /*
+     * Races the scheduler's grant against the waiter's interrupt, so some rounds
+     * hit the window where the ticket was already granted when the waiter gave
+     * up. Whoever loses must hand the request slot back: a waiter that got no
+     * permit leaves exactly the one refilled slot behind.
+     */
+    @Test
+    void aGrantRacingAnInterruptNeverLosesTheRequestSlot() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            drainRequests();
+            AtomicReference<Object> outcome = new AtomicReference<>();
+            Thread waiter = Thread.ofPlatform().start(() -> outcome.set(acquireOrError()));
+            Await.until(() -> stat("queueDepth").equals(1));
+
+            clock.advance(Duration.ofSeconds(6));
+            wakeScheduler();
+            long spinUntil = System.nanoTime() + ThreadLocalRandom.current().nextLong(200_000);
+            while (System.nanoTime() < spinUntil) {
+                Thread.onSpinWait();
+            }
+            waiter.interrupt();
+            waiter.join(5000);
+
+            long expected = outcome.get() instanceof UpstreamRateLimiter.Permit ? 0 : 1;
+            Await.until(() -> stat("queueDepth").equals(0) && stat("availableRequests").equals(expected));
+        }
+    }
+
+    @Test
+    void settleAndReleaseCorrectTheTokenEstimate() {
+        UpstreamRateLimiter.Permit permit = limiter.acquire(1, 1000);
+        assertThat(stat("availableTokens")).isEqualTo(4000L);
+
+        limiter.settle(permit, 3000);
+        assertThat(stat("availableTokens")).isEqualTo(2000L);
+        assertThat(stat("actualTokens")).isEqualTo(3000L);
+
+        limiter.release(limiter.acquire(1, 500));
+        assertThat(stat("availableTokens")).isEqualTo(2000L);
+    }
+
+    private record Outcome(ResponseStatusException error, boolean interrupted) {
+    }
+
+    private Object acquireOrError() {
+        try {
+            return limiter.acquire(1, 1);
+        } catch (ResponseStatusException e) {
+            return new Outcome(e, Thread.currentThread().isInterrupted());
+        }
+    }
+
+    private void drainRequests() {
+        while ((long) stat("availableRequests") > 0) {
+            limiter.acquire(1, 1);
+        }
+    }
+
+    // The scheduler sleeps on the real clock until quota would refill
+    private void wakeScheduler() {
+        LockSupport.unpark((Thread) ReflectionTestUtils.getField(limiter, "scheduler"));
+    }
+
+    private Object stat(String name) {
+        return limiter.stats().get(name);
+    }
+}
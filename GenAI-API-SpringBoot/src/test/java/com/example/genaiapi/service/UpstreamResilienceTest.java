@@ -0,0 +1,143 @@
+package com.example.genaiapi.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class UpstreamResilienceTest {
+
+    private static final String SCOPE = "gemini-2.0-flash";
+
+    private final UpstreamResilience resilience = new UpstreamResilience();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(resilience, "tracing", mock(UpstreamTracing.class));
+        ReflectionTestUtils.setField(resilience, "upstreams", mock(UpstreamPool.class));
+        ReflectionTestUtils.setField(resilience, "retryEnabled", true);
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 3);
+        ReflectionTestUtils.setField(resilience, "initialBackoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(resilience, "maxBackoff", Duration.ofMillis(5));
+        ReflectionTestUtils.setField(resilience, "maxRetryAfter", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(resilience, "hedgingEnabled", false);
+        ReflectionTestUtils.setField(resilience, "breakerEnabled", true);
+        ReflectionTestUtils.setField(resilience, "breakerWindowSize", 10);
+        ReflectionTestUtils.setField(resilience, "breakerMinimumCalls", 4);
+        ReflectionTestUtils.setField(resilience, "breakerFailureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(resilience, "breakerOpenDuration", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(resilience, "breakerHalfOpenCalls", 1);
+        ReflectionTestUtils.setField(resilience, "slowCallDuration", Duration.ofSeconds(60));
+        resilience.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        resilience.stop();
+        Thread.interrupted();
+    }
+
+    @Test
+    void retriesServerErrorsUntilTheCallSucceeds() {
+        String result = resilience.execute(SCOPE, failing(2, () -> new HttpServerErrorException(
+                HttpStatus.SERVICE_UNAVAILABLE)), false);
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls).hasValue(3);
+        assertThat(retryStats().get("recoveredCalls")).isEqualTo(1L);
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        assertThatThrownBy(() -> resilience.execute(SCOPE, failing(5, () -> new ResourceAccessException("reset")),
+                false)).isInstanceOf(ResourceAccessException.class);
+
+        assertThat(calls).hasValue(3);
+        assertThat(retryStats().get("exhaustedCalls")).isEqualTo(1L);
+    }
+
+    @Test
+    void clientErrorsAreNotRetriedAndCountAsHealthy() {
+        assertThatThrownBy(() -> resilience.execute(SCOPE,
+                failing(1, () -> new HttpClientErrorException(HttpStatus.BAD_REQUEST)), false))
+                .isInstanceOf(HttpClientErrorException.class);
+
+        assertThat(calls).hasValue(1);
+        assertThat(breakerStats().get("failureRate")).isEqualTo(0.0);
+    }
+
+    @Test
+    void anOpenBreakerFailsFastWithoutCallingUpstream() {
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> resilience.execute(SCOPE,
+                    failing(1, () -> new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)), false))
+                    .isInstanceOf(HttpServerErrorException.class);
+            calls.set(0);
+        }
+
+        assertThatThrownBy(() -> resilience.execute(SCOPE, failing(0, null), false))
+                .isInstanceOfSatisfying(CircuitOpenException.class, e -> assertThat(e.getRetryAfter())
+                        .isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30)));
+        assertThat(calls).hasValue(0);
+        assertThat(breakerStats().get("state")).isEqualTo("OPEN");
+        // Other scopes have breakers of their own
+        assertThat(resilience.execute("gemini-2.5-pro", failing(0, null), false)).isEqualTo("ok");
+    }
+
+    /*
+     * A hedge loser or a cancelled request ends with its thread interrupted and
+     * an I/O error; that says nothing about upstream and must not open the
+     * breaker.
+     */
+    @Test
+    void interruptedAttemptsDoNotCountAgainstTheBreaker() {
+        ReflectionTestUtils.setField(resilience, "maxAttempts", 1);
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> resilience.execute(SCOPE, () -> {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Socket closed");
+            }, false)).isInstanceOf(ResourceAccessException.class);
+            assertThat(Thread.interrupted()).isTrue();
+        }
+
+        assertThat(breakerStats().get("state")).isEqualTo("CLOSED");
+        assertThat(breakerStats().get("failureRate")).isEqualTo(0.0);
+    }
+
+    // Throws failure's exception the first failures times, then answers "ok"
+    private Supplier<String> failing(int failures, Supplier<RuntimeException> failure) {
+        return () -> {
+            if (calls.incrementAndGet() <= failures) {
+                throw failure.get();
+            }
+            return "ok";
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> retryStats() {
+        return (Map<String, Object>) resilience.stats().get("retry");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> breakerStats() {
+        Map<String, Object> circuitBreaker = (Map<String, Object>) resilience.stats().get("circuitBreaker");
+        return (Map<String, Object>) ((Map<String, Object>) circuitBreaker.get("scopes")).get(SCOPE);
+    }
+}